@@ -0,0 +1,103 @@
+//package hw1;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/*
+ * Translate a file of expressions in one JVM:
+ *
+ *   java Batch <file> [delimiter] [-eval v0 v1 ...]
+ *
+ * Expressions are separated by newlines, or by the given delimiter (which lets
+ * one expression span several lines). They are translated in parallel on the
+ * common fork-join pool, and the results are printed in input order exactly
+ * as Parse would print them, each with its own error line number.
+ *
+ * With -eval each expression is also evaluated, against its own copy of the
+ * $ environment, through Jit: the same expression coming up again and again
+ * is compiled once it has been evaluated jit.threshold times.
+ */
+public class Batch {
+
+	public static void main(String[] args) throws IOException {
+		int evalIndex = Arrays.asList(args).indexOf("-eval");
+		int[] env = evalIndex >= 0 ? Parse.parseEnv(args, evalIndex + 1) : null;
+		int positional = evalIndex >= 0 ? evalIndex : args.length;
+
+		if (positional < 1 || (positional > 1 && args[1].isEmpty())) {
+			System.out.println("Usage: java Batch <file> [delimiter] [-eval v0 v1 ...]");
+			System.exit(1);
+		}
+
+		byte[] src = Files.readAllBytes(Paths.get(args[0]));
+		byte[] delimiter = (positional > 1 ? args[1] : "\n").getBytes(StandardCharsets.UTF_8);
+
+		ArrayList<int[]> ranges = split(src, delimiter);
+		String[] results = new String[ranges.size()];
+
+		IntStream.range(0, results.length).parallel().forEach(i -> {
+			int[] range = ranges.get(i);
+			results[i] = translate(src, range[0], range[1] - range[0], env);
+		});
+
+		Writer out = new BufferedWriter(new OutputStreamWriter(System.out), Lex.BLOCK_SIZE);
+		for (String result : results)
+			out.write(result);
+		out.flush();
+	}
+
+	static String translate(byte[] src, int offset, int length, int[] env) {
+		StringBuilder outStr = new StringBuilder();
+		Parser parser = new Parser(new Lexer(src, offset, length), outStr);
+
+		if (!parser.translate())
+			return String.format("Parse error in line %d\n", parser.errorLine);
+
+		String postfix = outStr.toString();
+		outStr.append("\nExpression parsed successfully\n");
+
+		if (env != null)
+			outStr.append(Parse.value(postfix, env.clone())).append('\n');
+
+		return outStr.toString();
+	}
+
+	// Return the {start, end} offsets of the expressions in src
+	private static ArrayList<int[]> split(byte[] src, byte[] delimiter) {
+		ArrayList<int[]> ranges = new ArrayList<int[]>();
+		int start = 0;
+		int i = 0;
+
+		while (i + delimiter.length <= src.length) {
+			if (matches(src, i, delimiter)) {
+				ranges.add(new int[] {start, i});
+				i += delimiter.length;
+				start = i;
+			} else {
+				i++;
+			}
+		}
+
+		// A trailing delimiter does not start another expression
+		if (start < src.length)
+			ranges.add(new int[] {start, src.length});
+
+		return ranges;
+	}
+
+	private static boolean matches(byte[] src, int offset, byte[] delimiter) {
+		for (int j = 0; j < delimiter.length; j++) {
+			if (src[offset + j] != delimiter[j])
+				return false;
+		}
+		return true;
+	}
+}
@@ -0,0 +1,318 @@
+//package hw1;
+
+import java.io.ByteArrayInputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Random;
+
+/*
+ * Lexer and parser throughput on synthetic inputs:
+ *
+ *   java Bench [megabytes] [workload ...]
+ *
+ * Each workload is a stream of valid expressions of one shape (see WORKLOADS).
+ * The lexers are timed on the whole stream, and Parser on each expression
+ * separately. Every line reports the best of five runs after warming up, and
+ * the bytes the benchmark thread allocated per token during those runs.
+ *
+ * The eval workload instead evaluates a few expressions over and over, each
+ * twice jit.threshold times a run, by the Bytecode interpreter and through
+ * Jit, which compiles every one of them during the first warm-up run.
+ */
+public class Bench {
+
+	static final String[] WORKLOADS = { "flat", "deep", "incr", "comments", "whitespace", "mixed", "eval" };
+
+	// Where evaluated values go, so that evaluating is not optimized away
+	static volatile int sink;
+
+	interface Run {
+		void run() throws Exception;
+	}
+
+	private static com.sun.management.ThreadMXBean threads =
+			(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	public static void main(String[] args) throws Exception {
+		int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+		String[] workloads = WORKLOADS;
+		if (args.length > 1) {
+			workloads = new String[args.length - 1];
+			System.arraycopy(args, 1, workloads, 0, workloads.length);
+		}
+
+		Lex.init();
+
+		for (String workload : workloads) {
+			Random r = new Random(132);
+			if (workload.equals("eval")) {
+				evaluate(r, 64);
+				continue;
+			}
+
+			ArrayList<int[]> ranges = new ArrayList<int[]>();
+			byte[] input = generate(workload, megabytes << 20, r, ranges);
+			int tokens = Lex.lexDense(new ByteArrayInputStream(input)).size() - 1;
+
+			System.out.printf("%s: %d expressions, %d tokens, %.1f MB\n", workload,
+					ranges.size(), tokens, input.length / 1e6);
+
+			measure("Lex.lex", tokens, 0, () -> Lex.lex(new ByteArrayInputStream(input)));
+			measure("Lex.lexDense", tokens, 0, () -> Lex.lexDense(new ByteArrayInputStream(input)));
+			measure("Lex.lexGenerated", tokens, 0, () -> Lex.lexGenerated(new ByteArrayInputStream(input)));
+			measure("Lexer.next", tokens, 0, () -> {
+				Lexer lexer = new Lexer(input, 0, input.length);
+				while (lexer.next().type != Lex.TokenType.EOF)
+					;
+			});
+			measure("Lexer.nextPacked", tokens, 0, () -> {
+				Lexer lexer = new Lexer(input, 0, input.length);
+				while (Lex.Packed.type(lexer.nextPacked()) != Lex.TokenType.EOF)
+					;
+			});
+			measure("Parser", tokens, ranges.size(), () -> {
+				for (int[] range : ranges) {
+					StringBuilder out = new StringBuilder();
+					if (!new Parser(new Lexer(input, range[0], range[1] - range[0]), out).translate())
+						throw new IllegalStateException("Generated expression does not parse");
+				}
+			});
+			System.out.println();
+		}
+	}
+
+	// count expressions of the incr shape, which use $, ++ and -- on both values
+	// and $, evaluated against one environment; the $ indices are fixed, so an
+	// expression that reaches outside the environment once is replaced
+	static void evaluate(Random r, int count) throws Exception {
+		int rounds = 2 * Jit.threshold;
+		int[] env = new int[16];
+		String[] postfix = new String[count];
+		int tokens = 0;
+
+		for (int i = 0; i < count; ) {
+			StringBuilder sb = new StringBuilder();
+			incr(sb, r, 8);
+			byte[] input = sb.toString().getBytes();
+
+			StringBuilder out = new StringBuilder();
+			if (!new Parser(new Lexer(input, 0, input.length), out).translate())
+				throw new IllegalStateException("Generated expression does not parse");
+
+			try {
+				Bytecode.compile(out.toString()).evaluate(env.clone());
+			} catch (ArrayIndexOutOfBoundsException e) {
+				continue;
+			}
+
+			postfix[i++] = out.toString();
+			tokens += Lex.lexDense(new ByteArrayInputStream(input)).size() - 1;
+		}
+
+		System.out.printf("eval: %d expressions, %d evaluations each a run, jit.threshold %d\n",
+				count, rounds, Jit.threshold);
+
+		Evaluator[] interpreted = new Evaluator[count];
+		Evaluator[] tiered = new Evaluator[count];
+		for (int i = 0; i < count; i++) {
+			interpreted[i] = Bytecode.compile(postfix[i]);
+			tiered[i] = Jit.get(postfix[i]);
+		}
+
+		measure("Bytecode", tokens * rounds, count * rounds, () -> evaluate(interpreted, rounds, env));
+		measure("Jit", tokens * rounds, count * rounds, () -> evaluate(tiered, rounds, env));
+		System.out.println();
+	}
+
+	private static void evaluate(Evaluator[] evaluators, int rounds, int[] env) {
+		int value = 0;
+		for (Evaluator e : evaluators) {
+			for (int k = 0; k < rounds; k++)
+				value += e.evaluate(env);
+		}
+		sink = value;
+	}
+
+	static void measure(String name, int tokens, int expressions, Run run) throws Exception {
+		// Warm up, then time the best of a few runs
+		for (int i = 0; i < 3; i++) {
+			Lex.reset();
+			run.run();
+		}
+
+		long id = Thread.currentThread().getId();
+		long allocated = threads.getThreadAllocatedBytes(id);
+		long best = Long.MAX_VALUE;
+
+		for (int i = 0; i < 5; i++) {
+			Lex.reset();
+			long start = System.nanoTime();
+			run.run();
+			best = Math.min(best, System.nanoTime() - start);
+		}
+
+		allocated = threads.getThreadAllocatedBytes(id) - allocated;
+
+		System.out.printf("  %-18s %8.1f Mtokens/s", name, tokens / (best / 1e3));
+		if (expressions > 0)
+			System.out.printf(" %8.1f Kexpr/s", expressions / (best / 1e6));
+		else
+			System.out.printf(" %16s", "");
+		System.out.printf(" %8.1f B/token\n", allocated / 5.0 / tokens);
+	}
+
+	/*
+	 * Input generation
+	 */
+
+	// Newline separated expressions of the given shape, with the {start, end} of each one added to ranges
+	static byte[] generate(String workload, int size, Random r, ArrayList<int[]> ranges) {
+		StringBuilder sb = new StringBuilder(size + 4096);
+
+		while (sb.length() < size) {
+			int start = sb.length();
+
+			switch (workload) {
+				case "flat":
+					flat(sb, r, 256);
+					break;
+
+				case "deep":
+					deep(sb, r, 512);
+					break;
+
+				case "incr":
+					incr(sb, r, 32);
+					break;
+
+				case "comments":
+					comments(sb, r, 16);
+					break;
+
+				case "whitespace":
+					whitespace(sb, r, 128);
+					break;
+
+				case "mixed":
+					mixed(sb, r, 6);
+					break;
+
+				default:
+					throw new IllegalArgumentException("Unknown workload " + workload);
+			}
+
+			ranges.add(new int[] {start, sb.length()});
+			sb.append('\n');
+		}
+
+		return sb.toString().getBytes();
+	}
+
+	// 1 + 2 - 3 + ...
+	static void flat(StringBuilder sb, Random r, int terms) {
+		sb.append(r.nextInt(10));
+		for (int i = 1; i < terms; i++)
+			sb.append(r.nextBoolean() ? " + " : " - ").append(r.nextInt(10));
+	}
+
+	// ((((1 + 2) - 3) ...
+	static void deep(StringBuilder sb, Random r, int depth) {
+		for (int i = 0; i < depth; i++)
+			sb.append('(');
+		sb.append(r.nextInt(10));
+		for (int i = 0; i < depth; i++)
+			sb.append(r.nextBoolean() ? " + " : " - ").append(r.nextInt(10)).append(')');
+	}
+
+	// ++ -- $ ++ 1 -- ++ + ...
+	static void incr(StringBuilder sb, Random r, int terms) {
+		for (int i = 0; i < terms; i++) {
+			if (i > 0)
+				sb.append(r.nextBoolean() ? " + " : " - ");
+			for (int j = r.nextInt(4); j > 0; j--)
+				sb.append(r.nextBoolean() ? "++ " : "-- ");
+			sb.append("$ ");
+			for (int j = r.nextInt(4); j > 0; j--)
+				sb.append(r.nextBoolean() ? "++ " : "-- ");
+			sb.append(r.nextInt(10));
+			for (int j = r.nextInt(4); j > 0; j--)
+				sb.append(r.nextBoolean() ? " ++" : " --");
+		}
+	}
+
+	// Short expressions buried in long # comments
+	static void comments(StringBuilder sb, Random r, int terms) {
+		for (int i = 0; i < terms; i++) {
+			if (i > 0)
+				sb.append(r.nextBoolean() ? " + " : " - ");
+			sb.append(r.nextInt(10)).append(" # ");
+			for (int j = 20 + r.nextInt(100); j > 0; j--)
+				sb.append((char) (' ' + r.nextInt(95)));
+			sb.append('\n');
+		}
+	}
+
+	// Tokens separated by random runs of blanks, tabs, carriage returns and newlines
+	static void whitespace(StringBuilder sb, Random r, int terms) {
+		String blanks = " \t\r\n\f";
+
+		for (int i = 0; i < terms; i++) {
+			if (i > 0) {
+				space(sb, r, blanks);
+				sb.append(r.nextBoolean() ? '+' : '-');
+			}
+			space(sb, r, blanks);
+			sb.append(r.nextInt(10));
+		}
+	}
+
+	private static void space(StringBuilder sb, Random r, String blanks) {
+		for (int j = 1 + r.nextInt(8); j > 0; j--)
+			sb.append(blanks.charAt(r.nextInt(blanks.length())));
+	}
+
+	// Random expression trees using every production
+	static void mixed(StringBuilder sb, Random r, int depth) {
+		int choice = depth == 0 ? 0 : r.nextInt(7);
+
+		switch (choice) {
+			case 0:
+				sb.append(r.nextInt(100));
+				break;
+
+			case 1:
+				sb.append('(');
+				mixed(sb, r, depth - 1);
+				sb.append(')');
+				break;
+
+			case 2:
+				mixed(sb, r, depth - 1);
+				sb.append(r.nextBoolean() ? " + " : " - ");
+				mixed(sb, r, depth - 1);
+				break;
+
+			case 3:
+				mixed(sb, r, depth - 1);
+				sb.append(' ');
+				mixed(sb, r, depth - 1);
+				break;
+
+			case 4:
+				sb.append(r.nextBoolean() ? "++ " : "-- ");
+				mixed(sb, r, depth - 1);
+				break;
+
+			case 5:
+				sb.append("$ ");
+				mixed(sb, r, depth - 1);
+				break;
+
+			case 6:
+				sb.append('(');
+				mixed(sb, r, depth - 1);
+				sb.append(r.nextBoolean() ? ") ++ # note\n" : ") --\t");
+				break;
+		}
+	}
+}
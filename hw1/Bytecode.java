@@ -0,0 +1,217 @@
+//package hw1;
+
+import java.util.Arrays;
+
+/*
+ * Compiles the postfix form printed by Parse into a flat int[] program and
+ * runs it on a small stack machine, so an expression can be evaluated many
+ * times against different $ environments without lexing or parsing it again.
+ *
+ * Values are ints. $ reads env[i] for the index i on top of the stack, and an
+ * increment or decrement applied directly to a $ also writes env[i] back.
+ * Applied to any other value, ++_ and --_ just add or subtract one and _++ and
+ * _-- leave it unchanged. _ is the awk-style concatenation of the two decimal
+ * strings, read back as a number.
+ */
+public class Bytecode implements Evaluator {
+
+	// Opcodes; only PUSH takes an operand, the literal that follows it
+	static final int PUSH = 0;
+	static final int ADD = 1;
+	static final int SUB = 2;
+	static final int CONCAT = 3;
+	static final int LOAD = 4;					// $
+	static final int INCR = 5;					// ++_ on a value
+	static final int DECR = 6;					// --_ on a value
+	static final int PRE_INCR_FIELD = 7;		// ++_ on $
+	static final int PRE_DECR_FIELD = 8;		// --_ on $
+	static final int POST_INCR_FIELD = 9;		// _++ on $
+	static final int POST_DECR_FIELD = 10;		// _-- on $
+
+	int[] code;
+	int maxStack;
+
+	private int[] stack;
+
+	private Bytecode(int[] code, int maxStack) {
+		this.code = code;
+		this.maxStack = maxStack;
+		this.stack = new int[maxStack];
+	}
+
+	// Compile a space separated postfix string such as "1 $ ++_ 2 +"
+	public static Bytecode compile(String postfix) {
+		int[] code = new int[16];
+		int size = 0;
+		int depth = 0;
+		int maxStack = 0;
+
+		// Index of the last instruction if it was a LOAD, so an increment can be fused with it
+		int lastLoad = -1;
+
+		int i = 0;
+		int n = postfix.length();
+
+		while (i < n) {
+			int end = postfix.indexOf(' ', i);
+			if (end < 0)
+				end = n;
+
+			String token = postfix.substring(i, end);
+			i = end + 1;
+
+			if (token.isEmpty())
+				continue;
+
+			if (code.length < size + 2)
+				code = Arrays.copyOf(code, code.length * 2);
+
+			int load = lastLoad;
+			lastLoad = -1;
+
+			switch (token) {
+				case "+":
+					code[size++] = ADD;
+					depth--;
+					break;
+
+				case "-":
+					code[size++] = SUB;
+					depth--;
+					break;
+
+				case "_":
+					code[size++] = CONCAT;
+					depth--;
+					break;
+
+				case "$":
+					lastLoad = size;
+					code[size++] = LOAD;
+					break;
+
+				case "++_":
+					if (load >= 0)
+						code[load] = PRE_INCR_FIELD;
+					else
+						code[size++] = INCR;
+					break;
+
+				case "--_":
+					if (load >= 0)
+						code[load] = PRE_DECR_FIELD;
+					else
+						code[size++] = DECR;
+					break;
+
+				case "_++":
+					// A post increment of a plain value does not change it
+					if (load >= 0)
+						code[load] = POST_INCR_FIELD;
+					break;
+
+				case "_--":
+					if (load >= 0)
+						code[load] = POST_DECR_FIELD;
+					break;
+
+				default:
+					code[size++] = PUSH;
+					code[size++] = Integer.parseInt(token);
+					depth++;
+					maxStack = Math.max(maxStack, depth);
+			}
+
+			if (depth < 1)
+				throw new IllegalArgumentException("Malformed postfix expression: " + postfix);
+		}
+
+		if (depth != 1)
+			throw new IllegalArgumentException("Malformed postfix expression: " + postfix);
+
+		return new Bytecode(Arrays.copyOf(code, size), maxStack);
+	}
+
+	// Evaluate against env; not thread-safe, see evaluate(int[], int[])
+	public int evaluate(int[] env) {
+		return evaluate(env, stack);
+	}
+
+	// Evaluate using the caller's operand stack, which must hold at least maxStack ints
+	public int evaluate(int[] env, int[] stack) {
+		int[] code = this.code;
+		int sp = 0;
+		int pc = 0;
+		int i;
+
+		while (pc < code.length) {
+			switch (code[pc++]) {
+				case PUSH:
+					stack[sp++] = code[pc++];
+					break;
+
+				case ADD:
+					sp--;
+					stack[sp - 1] += stack[sp];
+					break;
+
+				case SUB:
+					sp--;
+					stack[sp - 1] -= stack[sp];
+					break;
+
+				case CONCAT:
+					sp--;
+					stack[sp - 1] = concat(stack[sp - 1], stack[sp]);
+					break;
+
+				case LOAD:
+					stack[sp - 1] = env[stack[sp - 1]];
+					break;
+
+				case INCR:
+					stack[sp - 1]++;
+					break;
+
+				case DECR:
+					stack[sp - 1]--;
+					break;
+
+				case PRE_INCR_FIELD:
+					i = stack[sp - 1];
+					stack[sp - 1] = ++env[i];
+					break;
+
+				case PRE_DECR_FIELD:
+					i = stack[sp - 1];
+					stack[sp - 1] = --env[i];
+					break;
+
+				case POST_INCR_FIELD:
+					i = stack[sp - 1];
+					stack[sp - 1] = env[i]++;
+					break;
+
+				case POST_DECR_FIELD:
+					i = stack[sp - 1];
+					stack[sp - 1] = env[i]--;
+					break;
+			}
+		}
+
+		return stack[0];
+	}
+
+	// Numeric value of the decimal strings of a and b written next to each other
+	static int concat(int a, int b) {
+		// In "a-b" only a is a numeric prefix
+		if (b < 0)
+			return a;
+
+		long scale = 10;
+		while (scale <= b)
+			scale *= 10;
+
+		return (int) (a < 0 ? a * scale - b : a * scale + b);
+	}
+}
@@ -0,0 +1,8 @@
+//package hw1;
+
+/*
+ * A compiled expression that can be evaluated against a $ environment
+ */
+public interface Evaluator {
+	int evaluate(int[] env);
+}
@@ -0,0 +1,235 @@
+//package hw1;
+
+import java.util.Arrays;
+
+/*
+ * Constant folding on the expression tree: receives the postfix tokens in the
+ * order the E-productions print them, builds the tree bottom-up and folds
+ * every +, - and _ whose operands are both constants, using the same int
+ * arithmetic as Bytecode. x + 0, 0 + x and x - 0 are simplified to x
+ * only when x has no $ or increment anywhere in it: a _++ applied to
+ * ($ 1 + 0) must not update $1.
+ *
+ * Nothing is folded through a $ or an increment: a subtree containing one is
+ * kept as it is, so every side effect happens exactly as before.
+ *
+ * The tree is kept in parallel int arrays and walked with explicit stacks, so
+ * deeply nested expressions do not overflow the Java stack.
+ */
+public class Fold {
+
+	// Node kinds
+	private static final int NUM = 0;
+	private static final int ADD = 1;
+	private static final int SUB = 2;
+	private static final int CONCAT = 3;
+	private static final int LOAD = 4;			// $
+	private static final int PRE_INCR = 5;		// ++_
+	private static final int PRE_DECR = 6;		// --_
+	private static final int POST_INCR = 7;		// _++
+	private static final int POST_DECR = 8;		// _--
+
+	private static final String[] OPERATORS = { null, "+", "-", "_", "$", "++_", "--_", "_++", "_--" };
+
+	// Node i is kind[i] applied to left[i] (and right[i] for binary nodes), or the literal value[i]
+	private int[] kind = new int[64];
+	private int[] left = new int[64];
+	private int[] right = new int[64];
+	private int[] value = new int[64];
+	private int size = 0;
+
+	// Whether node i has no $ or increment in its subtree, and whether it is a constant folding made
+	private boolean[] pure = new boolean[64];
+	private boolean[] folded = new boolean[64];
+
+	// Roots of the subtrees that are still waiting for their parent
+	private int[] operands = new int[64];
+	private int depth = 0;
+
+	int nodesIn = 0;
+	int nodesOut = 0;
+
+	// Input nodes that are not in the output as they were: folded, rewritten or dropped
+	int nodesFolded = 0;
+
+	// Fold a space separated postfix string such as "1 2 + $ 3 -"
+	public static String fold(String postfix) {
+		Fold fold = new Fold();
+
+		for (String token : postfix.split(" ")) {
+			if (!token.isEmpty())
+				fold.add(token);
+		}
+
+		return fold.toPostfix();
+	}
+
+	// Add the next postfix token
+	public void add(String token) {
+		nodesIn++;
+
+		switch (token) {
+			case "+":
+				binary(ADD);
+				break;
+
+			case "-":
+				binary(SUB);
+				break;
+
+			case "_":
+				binary(CONCAT);
+				break;
+
+			case "$":
+				unary(LOAD);
+				break;
+
+			case "++_":
+				unary(PRE_INCR);
+				break;
+
+			case "--_":
+				unary(PRE_DECR);
+				break;
+
+			case "_++":
+				unary(POST_INCR);
+				break;
+
+			case "_--":
+				unary(POST_DECR);
+				break;
+
+			default:
+				push(node(NUM, -1, -1, Integer.parseInt(token)));
+		}
+	}
+
+	private void binary(int op) {
+		if (depth < 2)
+			throw new IllegalArgumentException("Malformed postfix expression");
+
+		int b = operands[--depth];
+		int a = operands[--depth];
+
+		if (kind[a] == NUM && kind[b] == NUM) {
+			int v = op == ADD ? value[a] + value[b] : (op == SUB ? value[a] - value[b] : Bytecode.concat(value[a], value[b]));
+
+			// A negative literal is written as 0 - n, which has no n for MIN_VALUE
+			if (v != Integer.MIN_VALUE) {
+				value[a] = v;
+				folded[a] = true;
+				push(a);
+				return;
+			}
+		}
+
+		if (isZero(b) && (op == ADD || op == SUB) && pure[a]) {
+			push(a);
+			return;
+		}
+
+		if (isZero(a) && op == ADD && pure[b]) {
+			push(b);
+			return;
+		}
+
+		int n = node(op, a, b, 0);
+		pure[n] = pure[a] && pure[b];
+		push(n);
+	}
+
+	private void unary(int op) {
+		if (depth < 1)
+			throw new IllegalArgumentException("Malformed postfix expression");
+
+		push(node(op, operands[--depth], -1, 0));
+	}
+
+	private boolean isZero(int n) {
+		return kind[n] == NUM && value[n] == 0;
+	}
+
+	private int node(int k, int l, int r, int v) {
+		if (size == kind.length) {
+			kind = Arrays.copyOf(kind, size * 2);
+			left = Arrays.copyOf(left, size * 2);
+			right = Arrays.copyOf(right, size * 2);
+			value = Arrays.copyOf(value, size * 2);
+			pure = Arrays.copyOf(pure, size * 2);
+			folded = Arrays.copyOf(folded, size * 2);
+		}
+
+		kind[size] = k;
+		left[size] = l;
+		right[size] = r;
+		value[size] = v;
+		pure[size] = (k == NUM);
+		folded[size] = false;
+		return size++;
+	}
+
+	private void push(int n) {
+		if (depth == operands.length)
+			operands = Arrays.copyOf(operands, depth * 2);
+		operands[depth++] = n;
+	}
+
+	// Postfix form of the folded tree; nodesOut is the number of tokens in it
+	public String toPostfix() {
+		if (depth != 1)
+			throw new IllegalArgumentException("Malformed postfix expression");
+
+		StringBuilder out = new StringBuilder();
+		nodesOut = 0;
+
+		// Every node written as it was read takes one input node off nodesFolded
+		nodesFolded = nodesIn;
+
+		// Post-order walk; ~n marks a node whose children have already been written
+		int[] stack = new int[16];
+		int sp = 0;
+		stack[sp++] = operands[0];
+
+		while (sp > 0) {
+			int n = stack[--sp];
+
+			if (n < 0) {
+				write(out, OPERATORS[kind[~n]]);
+				nodesFolded--;
+				continue;
+			}
+
+			if (kind[n] == NUM) {
+				if (!folded[n])
+					nodesFolded--;
+
+				if (value[n] < 0) {
+					write(out, "0");
+					write(out, Integer.toString(-value[n]));
+					write(out, "-");
+				} else {
+					write(out, Integer.toString(value[n]));
+				}
+				continue;
+			}
+
+			if (sp + 3 > stack.length)
+				stack = Arrays.copyOf(stack, stack.length * 2);
+
+			stack[sp++] = ~n;
+			if (right[n] >= 0)
+				stack[sp++] = right[n];
+			stack[sp++] = left[n];
+		}
+
+		return out.toString();
+	}
+
+	private void write(StringBuilder out, String token) {
+		if (nodesOut++ > 0)
+			out.append(' ');
+		out.append(token);
+	}
+}
@@ -0,0 +1,317 @@
+//package hw1;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Second tier for hot expressions: translates a Bytecode program into a JVM
+ * class implementing Evaluator and loads it as a hidden class, so HotSpot can
+ * inline and optimize it like handwritten code.
+ *
+ * Jit.get(postfix) returns a cached evaluator for the postfix text. It starts
+ * in the Bytecode interpreter and is promoted to a compiled class once it has
+ * been evaluated threshold times (-Djit.threshold, 10000 by default).
+ */
+public class Jit {
+
+	static int threshold = Integer.getInteger("jit.threshold", 10000);
+
+	private static ConcurrentHashMap<String, Tiered> cache = new ConcurrentHashMap<String, Tiered>();
+
+	// Operand stacks for the interpreter, one per thread, grown to the deepest program seen
+	private static ThreadLocal<int[]> stacks = ThreadLocal.withInitial(() -> new int[64]);
+
+	public static Evaluator get(String postfix) {
+		return cache.computeIfAbsent(postfix, p -> new Tiered(Bytecode.compile(p)));
+	}
+
+	static class Tiered implements Evaluator {
+		private Bytecode bytecode;
+		private volatile Evaluator compiled = null;
+		private int invocations = 0;
+
+		Tiered(Bytecode bytecode) {
+			this.bytecode = bytecode;
+		}
+
+		public int evaluate(int[] env) {
+			Evaluator c = compiled;
+			if (c != null)
+				return c.evaluate(env);
+
+			// The count is only a heuristic: a racing update may be lost, but
+			// every call past the threshold tries to promote, so none is missed
+			if (++invocations >= threshold)
+				promote();
+
+			return interpret(bytecode, env);
+		}
+
+		private synchronized void promote() {
+			if (compiled != null)
+				return;
+
+			Evaluator e = compile(bytecode);
+
+			// Programs that do not fit in one JVM method stay interpreted
+			compiled = (e != null) ? e : (env -> interpret(bytecode, env));
+		}
+	}
+
+	private static int interpret(Bytecode bytecode, int[] env) {
+		int[] stack = stacks.get();
+		if (stack.length < bytecode.maxStack) {
+			stack = new int[Math.max(bytecode.maxStack, stack.length * 2)];
+			stacks.set(stack);
+		}
+		return bytecode.evaluate(env, stack);
+	}
+
+	/*
+	 * Class file generation
+	 */
+
+	// Constant pool tags
+	private static final int UTF8 = 1;
+	private static final int INTEGER = 3;
+	private static final int CLASS = 7;
+	private static final int METHODREF = 10;
+	private static final int NAME_AND_TYPE = 12;
+
+	// JVM opcodes
+	private static final int ICONST_0 = 0x03;
+	private static final int BIPUSH = 0x10;
+	private static final int SIPUSH = 0x11;
+	private static final int LDC_W = 0x13;
+	private static final int ALOAD_0 = 0x2a;
+	private static final int ALOAD_1 = 0x2b;
+	private static final int IALOAD = 0x2e;
+	private static final int IASTORE = 0x4f;
+	private static final int DUP_X2 = 0x5b;
+	private static final int DUP2 = 0x5c;
+	private static final int SWAP = 0x5f;
+	private static final int IADD = 0x60;
+	private static final int ISUB = 0x64;
+	private static final int IRETURN = 0xac;
+	private static final int RETURN = 0xb1;
+	private static final int INVOKESPECIAL = 0xb7;
+	private static final int INVOKESTATIC = 0xb8;
+
+	private static final int MAX_CODE_LENGTH = 65535;
+
+	// Return a new instance of a hidden class computing the same value as bytecode, or null if it is too large
+	static Evaluator compile(Bytecode bytecode) {
+		try {
+			byte[] classFile = new Jit().generate(bytecode);
+			if (classFile == null)
+				return null;
+
+			Class<?> c = MethodHandles.lookup().defineHiddenClass(classFile, true).lookupClass();
+			return (Evaluator) c.getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException | IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private ByteArrayOutputStream pool = new ByteArrayOutputStream();
+	private DataOutputStream poolOut = new DataOutputStream(pool);
+	private int poolCount = 1;
+	private HashMap<Integer, Integer> intConstants = new HashMap<Integer, Integer>();
+
+	private byte[] generate(Bytecode bytecode) throws IOException {
+		int thisClass = classConstant("JitExpression");
+		int superClass = classConstant("java/lang/Object");
+		int evaluator = classConstant("Evaluator");
+		int objectInit = methodConstant(superClass, "<init>", "()V");
+		int concat = methodConstant(classConstant("Bytecode"), "concat", "(II)I");
+		int initName = utf8Constant("<init>");
+		int initType = utf8Constant("()V");
+		int evaluateName = utf8Constant("evaluate");
+		int evaluateType = utf8Constant("([I)I");
+		int codeName = utf8Constant("Code");
+
+		// Body of evaluate(int[] env), with env in local 1
+		ByteArrayOutputStream code = new ByteArrayOutputStream();
+		int[] program = bytecode.code;
+		int pc = 0;
+
+		while (pc < program.length) {
+			switch (program[pc++]) {
+				case Bytecode.PUSH:
+					pushInt(code, program[pc++]);
+					break;
+
+				case Bytecode.ADD:
+					code.write(IADD);
+					break;
+
+				case Bytecode.SUB:
+					code.write(ISUB);
+					break;
+
+				case Bytecode.CONCAT:
+					code.write(INVOKESTATIC);
+					writeShort(code, concat);
+					break;
+
+				case Bytecode.LOAD:
+					// i -> env[i]
+					code.write(ALOAD_1);
+					code.write(SWAP);
+					code.write(IALOAD);
+					break;
+
+				case Bytecode.INCR:
+					pushInt(code, 1);
+					code.write(IADD);
+					break;
+
+				case Bytecode.DECR:
+					pushInt(code, 1);
+					code.write(ISUB);
+					break;
+
+				case Bytecode.PRE_INCR_FIELD:
+				case Bytecode.PRE_DECR_FIELD:
+					// i -> env i env[i]+-1 -> env[i]+-1 env i env[i]+-1 -> env[i]+-1
+					loadField(code);
+					pushInt(code, 1);
+					code.write(program[pc - 1] == Bytecode.PRE_INCR_FIELD ? IADD : ISUB);
+					code.write(DUP_X2);
+					code.write(IASTORE);
+					break;
+
+				case Bytecode.POST_INCR_FIELD:
+				case Bytecode.POST_DECR_FIELD:
+					// i -> env i env[i] -> env[i] env i env[i] -> env[i] env i env[i]+-1 -> env[i]
+					loadField(code);
+					code.write(DUP_X2);
+					pushInt(code, 1);
+					code.write(program[pc - 1] == Bytecode.POST_INCR_FIELD ? IADD : ISUB);
+					code.write(IASTORE);
+					break;
+			}
+		}
+
+		code.write(IRETURN);
+
+		if (code.size() > MAX_CODE_LENGTH || poolCount > 0xffff)
+			return null;
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+
+		out.writeInt(0xcafebabe);
+		out.writeShort(0);
+		out.writeShort(61);
+		out.writeShort(poolCount);
+		pool.writeTo(out);
+
+		out.writeShort(0x0031);	// public final super
+		out.writeShort(thisClass);
+		out.writeShort(superClass);
+		out.writeShort(1);
+		out.writeShort(evaluator);
+		out.writeShort(0);			// fields
+		out.writeShort(2);			// methods
+
+		// public <init>() { super(); }
+		byte[] init = { (byte) ALOAD_0, (byte) INVOKESPECIAL, (byte) (objectInit >> 8), (byte) objectInit, (byte) RETURN };
+		writeMethod(out, initName, initType, codeName, 1, 1, init);
+
+		// A field update needs up to four more slots than the values the program itself
+		// pushes: i becomes env[i] env i env[i] before the 1 of a postfix ++ or --
+		writeMethod(out, evaluateName, evaluateType, codeName, bytecode.maxStack + 4, 2, code.toByteArray());
+
+		out.writeShort(0);			// attributes
+		out.flush();
+
+		return bytes.toByteArray();
+	}
+
+	// i -> env i env[i]
+	private void loadField(ByteArrayOutputStream code) {
+		code.write(ALOAD_1);
+		code.write(SWAP);
+		code.write(DUP2);
+		code.write(IALOAD);
+	}
+
+	private void pushInt(ByteArrayOutputStream code, int value) throws IOException {
+		if (value >= -1 && value <= 5) {
+			code.write(ICONST_0 + value);
+		} else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+			code.write(BIPUSH);
+			code.write(value);
+		} else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+			code.write(SIPUSH);
+			writeShort(code, value);
+		} else {
+			code.write(LDC_W);
+			writeShort(code, intConstant(value));
+		}
+	}
+
+	private void writeMethod(DataOutputStream out, int name, int type, int codeName, int maxStack, int maxLocals, byte[] code) throws IOException {
+		out.writeShort(0x0001);	// public
+		out.writeShort(name);
+		out.writeShort(type);
+		out.writeShort(1);
+
+		out.writeShort(codeName);
+		out.writeInt(12 + code.length);
+		out.writeShort(maxStack);
+		out.writeShort(maxLocals);
+		out.writeInt(code.length);
+		out.write(code);
+		out.writeShort(0);			// exception table
+		out.writeShort(0);			// attributes
+	}
+
+	private static void writeShort(ByteArrayOutputStream out, int value) {
+		out.write(value >> 8);
+		out.write(value);
+	}
+
+	private int utf8Constant(String s) throws IOException {
+		poolOut.writeByte(UTF8);
+		poolOut.writeUTF(s);
+		return poolCount++;
+	}
+
+	private int classConstant(String name) throws IOException {
+		int nameIndex = utf8Constant(name);
+		poolOut.writeByte(CLASS);
+		poolOut.writeShort(nameIndex);
+		return poolCount++;
+	}
+
+	private int methodConstant(int owner, String name, String type) throws IOException {
+		int nameIndex = utf8Constant(name);
+		int typeIndex = utf8Constant(type);
+		poolOut.writeByte(NAME_AND_TYPE);
+		poolOut.writeShort(nameIndex);
+		poolOut.writeShort(typeIndex);
+		int nameAndType = poolCount++;
+
+		poolOut.writeByte(METHODREF);
+		poolOut.writeShort(owner);
+		poolOut.writeShort(nameAndType);
+		return poolCount++;
+	}
+
+	private int intConstant(int value) throws IOException {
+		Integer index = intConstants.get(value);
+		if (index != null)
+			return index;
+
+		poolOut.writeByte(INTEGER);
+		poolOut.writeInt(value);
+		intConstants.put(value, poolCount);
+		return poolCount++;
+	}
+}
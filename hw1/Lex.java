@@ -14,6 +14,17 @@ public class Lex {
 		NUM, BINOP, INCROP, LVALUE, LPAREN, RPAREN, EOF
 	}
 	
+	// Thrown by the pull-based Lexer, which cannot use checked exceptions
+	public static class LexError extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+		
+		int linenumber;
+		
+		LexError(int linenumber) {
+			this.linenumber = linenumber;
+		}
+	}
+	
 	public static class Token {
 		TokenType type;
 		String value;
@@ -24,8 +35,94 @@ public class Lex {
 			this.value = value;
 			this.linenumber = linenumber;
 		}
+		
+		long pack() {
+			return Packed.pack(type, type == TokenType.EOF ? '\0' : value.charAt(0), linenumber);
+		}
 	}
 	
+	/*
+	 * A token packed into a long, so it can be passed around without allocating:
+	 * bits 0-7 hold the TokenType ordinal, bits 8-23 the first character of the
+	 * value ('+' or '-' for ++ and --, 0 for EOF) and the high 32 bits the line
+	 */
+	static class Packed {
+		static final long NONE = -1;
+		
+		// Type and value of the tokens the parser matches on, without a line
+		static final long PLUS = pack(TokenType.BINOP, '+', 0);
+		static final long MINUS = pack(TokenType.BINOP, '-', 0);
+		static final long INCR = pack(TokenType.INCROP, '+', 0);
+		static final long DECR = pack(TokenType.INCROP, '-', 0);
+		static final long OPEN = pack(TokenType.LPAREN, '(', 0);
+		static final long CLOSE = pack(TokenType.RPAREN, ')', 0);
+		static final long DOLLAR = pack(TokenType.LVALUE, '$', 0);
+		static final long EOF = pack(TokenType.EOF, '\0', 0);
+		
+		private static final TokenType[] TYPES = TokenType.values();
+		private static final String[] DIGITS = { "0", "1", "2", "3", "4", "5", "6", "7", "8", "9" };
+		
+		static long pack(TokenType type, char value, int line) {
+			return ((long) line << 32) | (value << 8) | type.ordinal();
+		}
+		
+		static TokenType type(long t) {
+			return TYPES[(int) t & 0xff];
+		}
+		
+		static char value(long t) {
+			return (char) (t >>> 8);
+		}
+		
+		static int line(long t) {
+			return (int) (t >>> 32);
+		}
+		
+		// Same type and value, whatever the line
+		static boolean same(long t, long expected) {
+			return (int) t == (int) expected;
+		}
+		
+		// The value of a NUM token, without allocating
+		static String digits(long t) {
+			return DIGITS[value(t) - '0'];
+		}
+		
+		static Token unpack(long t) {
+			TokenType type = type(t);
+			char c = value(t);
+			String value;
+			
+			if (type == TokenType.EOF)
+				value = "EOF";
+			else if (type == TokenType.INCROP)
+				value = (c == '+') ? "++" : "--";
+			else if (type == TokenType.NUM)
+				value = digits(t);
+			else
+				value = Character.toString(c);
+			
+			return new Token(type, value, line(t));
+		}
+		
+		// Packed form of getTokenForClass, or NONE
+		static long forClass(int cls, int line) {
+			if (cls >= OTHER)
+				return NONE;
+			
+			char c = inputs[cls];
+			if (c >= '0' && c <= '9')
+				return pack(TokenType.NUM, c, line);
+			else if (c == '(')
+				return pack(TokenType.LPAREN, c, line);
+			else if (c == ')')
+				return pack(TokenType.RPAREN, c, line);
+			else if (c == '$')
+				return pack(TokenType.LVALUE, c, line);
+			return NONE;
+		}
+	}
+
 	static char[] inputs = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', '+', '-', '(', ')', '#', '$', ' ', '\n'};
 	
 	// NFA Transitions
@@ -42,6 +139,39 @@ public class Lex {
 	
 	static HashMap<State, HashMap<Character, State>> transitionTable = new HashMap<State, HashMap<Character, State>>();
 	
+	// Dense form of the transitions for lexDense: rows are State ordinals, columns are
+	// character classes (the index into inputs, or OTHER), and -1 marks an invalid transition
+	static final int OTHER = inputs.length;
+	static final int BLOCK_SIZE = 1 << 16;
+	static int[][] denseTransitions = new int[State.values().length][inputs.length + 1];
+	static byte[] charClasses = new byte[256];
+	static String[] inputStrings = new String[inputs.length];
+	
+	// The same language described to LexGen: maximal munch gives ++ and -- priority over + and -.
+	// Only -gen uses the tables, so they are built the first time lexGenerated runs
+	static class Generated {
+		static final LexGen.Tables tables = new LexGen()
+			.token("NUM", "[0-9]")
+			.token("INCROP", "\\+\\+|--")
+			.token("BINOP", "\\+|-")
+			.token("LPAREN", "\\(")
+			.token("RPAREN", "\\)")
+			.token("LVALUE", "\\$")
+			.skip("WS", "[\\t\\x0b\\f\\r\\x1c-\\x1f ]")
+			.skip("NEWLINE", "\\n")
+			.skip("COMMENT", "#[^\\n]*")
+			.build();
+	}
+	
+	static final TokenType[] generatedTypes = {
+		TokenType.NUM, TokenType.INCROP, TokenType.BINOP, TokenType.LPAREN, TokenType.RPAREN, TokenType.LVALUE
+	};
+	
+	static void reset() {
+		currentState = State.A;
+		linenumber = 1;
+	}
+	
 	static void init() {
 		// Initialize the transition table (hash map) so we can access the row by the State and the column by the input
 		for (int i = 0; i < State.values().length; i++) {
@@ -52,6 +182,39 @@ public class Lex {
 			
 			transitionTable.put(State.values()[i], row);
 		}
+		
+		initDense();
+	}
+	
+	static void initDense() {
+		// Map every byte to its column; whitespace other than \n behaves like a space
+		for (int b = 0; b < charClasses.length; b++) {
+			if (Character.isWhitespace(b) && b != '\n')
+				charClasses[b] = (byte) indexOf(' ');
+			else
+				charClasses[b] = (byte) OTHER;
+		}
+		
+		for (int j = 0; j < inputs.length; j++) {
+			charClasses[inputs[j]] = (byte) j;
+			inputStrings[j] = Character.toString(inputs[j]);
+		}
+		
+		for (int i = 0; i < State.values().length; i++) {
+			for (int j = 0; j < inputs.length; j++)
+				denseTransitions[i][j] = transitions[i][j].ordinal();
+			
+			// Unknown characters are only allowed inside a comment
+			denseTransitions[i][OTHER] = (i == State.D.ordinal()) ? State.D.ordinal() : -1;
+		}
+	}
+	
+	private static int indexOf(char c) {
+		for (int j = 0; j < inputs.length; j++) {
+			if (inputs[j] == c)
+				return j;
+		}
+		return OTHER;
 	}
 	
 	// Construct tokens from the input stream
@@ -129,6 +292,149 @@ public class Lex {
 		return tokens;
 	}
 	
+	// Same as lex, but driven by the dense tables and reading the input in blocks
+	static ArrayList<Token> lexDense(InputStream in) throws Exception {
+		ArrayList<Token> tokens = new ArrayList<Token>();
+		
+		final int A = State.A.ordinal(), B = State.B.ordinal(), C = State.C.ordinal(), D = State.D.ordinal();
+		
+		byte[] buf = new byte[BLOCK_SIZE];
+		int state = currentState.ordinal();
+		int line = linenumber;
+		int n;
+		
+		while ((n = in.read(buf, 0, buf.length)) != -1) {
+			int i = 0;
+			
+			while (i < n) {
+				
+				// Skip the rest of a comment in bulk, the \n is handled below
+				if (state == D) {
+					while (i < n && buf[i] != '\n')
+						i++;
+					
+					if (i == n)
+						break;
+				}
+				
+				int c = buf[i++] & 0xff;
+				int cls = charClasses[c];
+				
+				// Update line number
+				if (c == '\n')
+					line++;
+				
+				if (state == A) {
+					
+					addTokenForClass(tokens, cls, line);
+					
+				} else if (state == B) {
+					
+					if (c == '+') {
+						tokens.add(new Token(TokenType.INCROP, "++", line));
+					} else {
+						// The previous character must be a +
+						tokens.add(new Token(TokenType.BINOP, "+", line));
+						addTokenForClass(tokens, cls, line);
+					}
+					
+				} else if (state == C) {
+					
+					if (c == '-') {
+						tokens.add(new Token(TokenType.INCROP, "--", line));
+					} else {
+						// The previous character must be a -
+						tokens.add(new Token(TokenType.BINOP, "-", line));
+						addTokenForClass(tokens, cls, line);
+					}
+					
+				}
+				
+				int nextState = denseTransitions[state][cls];
+				
+				if (nextState < 0) {
+					// Invalid transition => invalid input
+					currentState = State.values()[state];
+					linenumber = line;
+					throw new Exception();
+				}
+				
+				state = nextState;
+			}
+		}
+		
+		currentState = State.values()[state];
+		linenumber = line;
+		
+		// We have reached EOF
+		if (state == B)
+			tokens.add(new Token(TokenType.BINOP, "+", line));
+		else if (state == C)
+			tokens.add(new Token(TokenType.BINOP, "-", line));
+		
+		// Create and add the EOF token to tokens
+		tokens.add(new Token(TokenType.EOF, "EOF", line));
+		
+		return tokens;
+	}
+	
+	// Same as lex, but driven by the tables generated from the rules in Generated
+	static ArrayList<Token> lexGenerated(InputStream in) throws Exception {
+		ArrayList<Token> tokens = new ArrayList<Token>();
+		
+		byte[] src = in.readAllBytes();
+		LexGen.Scanner scanner = new LexGen.Scanner(Generated.tables, src, 0, src.length);
+		scanner.line = linenumber;
+		
+		try {
+			while (scanner.next()) {
+				TokenType type = generatedTypes[scanner.rule];
+				int cls = charClasses[src[scanner.start] & 0xff];
+				String value;
+				
+				if (type == TokenType.INCROP)
+					value = (src[scanner.start] == '+') ? "++" : "--";
+				else
+					value = inputStrings[cls];
+				
+				tokens.add(new Token(type, value, scanner.line));
+			}
+		} catch (IllegalStateException e) {
+			// Invalid input
+			linenumber = scanner.line;
+			throw new Exception();
+		}
+		
+		linenumber = scanner.line;
+		
+		// Create and add the EOF token to tokens
+		tokens.add(new Token(TokenType.EOF, "EOF", linenumber));
+		
+		return tokens;
+	}
+	
+	private static void addTokenForClass(ArrayList<Token> tokens, int cls, int line) {
+		Token t = getTokenForClass(cls, line);
+		if (t != null)
+			tokens.add(t);
+	}
+	
+	static Token getTokenForClass(int cls, int line) {
+		if (cls >= OTHER)
+			return null;
+		
+		char c = inputs[cls];
+		if (c >= '0' && c <= '9')
+			return new Token(TokenType.NUM, inputStrings[cls], line);
+		else if (c == '(')
+			return new Token(TokenType.LPAREN, inputStrings[cls], line);
+		else if (c == ')')
+			return new Token(TokenType.RPAREN, inputStrings[cls], line);
+		else if (c == '$')
+			return new Token(TokenType.LVALUE, inputStrings[cls], line);
+		return null;
+	}
+	
 	private static Token getTokenForChar(char c) {
 		if (c >= '0' && c <= '9')
 			return new Token(TokenType.NUM, Character.toString(c), linenumber);
@@ -0,0 +1,735 @@
+//package hw1;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+
+/*
+ * A small lexer generator. Tokens are defined by regular expressions, in
+ * priority order:
+ *
+ *   LexGen.Tables t = new LexGen()
+ *       .token("NUM", "[0-9]+")
+ *       .token("ID", "[a-zA-Z][a-zA-Z0-9_]*")
+ *       .skip("WS", "[ \t\r\n]+")
+ *       .build();
+ *
+ * build() runs Thompson's construction, splits the 256 byte values into
+ * equivalence classes, runs the subset construction and minimizes the result
+ * with Hopcroft's algorithm. The tables can drive a Scanner directly or be
+ * written out as a switch-based Java scanner with emitJava.
+ *
+ * Supported syntax: literal bytes, \n \t \r \f \xHH and \ before any
+ * metacharacter, . (any byte but \n), [a-z] and [^...] classes, ( ), |, *, +, ?
+ */
+public class LexGen {
+
+	private ArrayList<String> names = new ArrayList<String>();
+	private ArrayList<String> patterns = new ArrayList<String>();
+	private ArrayList<Boolean> skips = new ArrayList<Boolean>();
+
+	public LexGen token(String name, String regex) {
+		return rule(name, regex, false);
+	}
+
+	// Matches are consumed by the Scanner but never returned
+	public LexGen skip(String name, String regex) {
+		return rule(name, regex, true);
+	}
+
+	private LexGen rule(String name, String regex, boolean skip) {
+		names.add(name);
+		patterns.add(regex);
+		skips.add(skip);
+		return this;
+	}
+
+	/*
+	 * The generated tables
+	 */
+
+	public static class Tables {
+		// Byte value -> column; a char, as there can be up to 256 columns
+		public char[] classOf = new char[256];
+		public int numClasses;
+
+		// next[state * numClasses + class] is the next state, or -1; state 0 is the start state
+		public int[] next;
+
+		// Rule accepted in each state, or -1
+		public int[] accept;
+
+		// States without outgoing transitions, where a match can stop without looking ahead
+		public boolean[] terminal;
+
+		public String[] names;
+		public boolean[] skip;
+
+		public int numStates() {
+			return accept.length;
+		}
+
+		// Write a Java class with the same automaton, one switch case per state
+		public void emitJava(Appendable out, String className) throws IOException {
+			out.append("public class ").append(className).append(" {\n\n");
+
+			for (int r = 0; r < names.length; r++)
+				out.append("\tpublic static final int ").append(names[r]).append(" = ").append(Integer.toString(r)).append(";\n");
+
+			out.append("\n\t/*\n");
+			out.append("\t * Longest match starting at pos: returns (rule << 32) | end,\n");
+			out.append("\t * or -1 if no rule matches\n");
+			out.append("\t */\n");
+			out.append("\tpublic static long match(byte[] b, int pos, int limit) {\n");
+			out.append("\t\tint state = 0;\n");
+			out.append("\t\tlong last = -1;\n\n");
+			out.append("\t\twhile (true) {\n");
+			out.append("\t\t\tint c = pos < limit ? b[pos] & 0xff : -1;\n\n");
+			out.append("\t\t\tswitch (state) {\n");
+
+			for (int s = 0; s < numStates(); s++) {
+				out.append("\t\t\t\tcase ").append(Integer.toString(s)).append(":\n");
+
+				if (accept[s] >= 0)
+					out.append("\t\t\t\t\tlast = ((long) ").append(Integer.toString(accept[s])).append(" << 32) | pos;\n");
+
+				String indent = "\t\t\t\t\t";
+				boolean first = true;
+
+				for (int t = 0; t < numStates(); t++) {
+					String cond = rangesTo(s, t);
+					if (cond == null)
+						continue;
+
+					out.append(indent).append(first ? "if (" : "else if (").append(cond).append(")\n");
+					out.append(indent).append("\tstate = ").append(Integer.toString(t)).append(";\n");
+					first = false;
+				}
+
+				// A state without transitions ends the match, so it has no break
+				if (first) {
+					out.append(indent).append("return last;\n");
+				} else {
+					out.append(indent).append("else\n").append(indent).append("\treturn last;\n");
+					out.append(indent).append("break;\n");
+				}
+			}
+
+			out.append("\t\t\t}\n\n");
+			out.append("\t\t\tpos++;\n");
+			out.append("\t\t}\n");
+			out.append("\t}\n");
+			out.append("}\n");
+		}
+
+		// Condition on c for the bytes going from state s to state t, or null if there are none
+		private String rangesTo(int s, int t) {
+			StringBuilder cond = new StringBuilder();
+			int b = 0;
+
+			while (b < 256) {
+				if (next[s * numClasses + classOf[b]] != t) {
+					b++;
+					continue;
+				}
+
+				int lo = b;
+				while (b < 256 && next[s * numClasses + classOf[b]] == t)
+					b++;
+				int hi = b - 1;
+
+				if (cond.length() > 0)
+					cond.append(" || ");
+
+				if (lo == hi)
+					cond.append("c == ").append(lo);
+				else
+					cond.append("(c >= ").append(lo).append(" && c <= ").append(hi).append(")");
+			}
+
+			return cond.length() > 0 ? cond.toString() : null;
+		}
+	}
+
+	/*
+	 * Longest-match scanner over a byte array
+	 */
+
+	public static class Scanner {
+		private Tables t;
+		private byte[] buf;
+		private int pos;
+		private int limit;
+
+		// Everything before frontier has been examined and counted in line
+		private int frontier;
+
+		// The current token
+		public int rule;
+		public int start;
+		public int end;
+
+		// Line number after the furthest byte examined so far
+		public int line = 1;
+
+		public Scanner(Tables t, byte[] buf, int offset, int length) {
+			this.t = t;
+			this.buf = buf;
+			this.pos = offset;
+			this.limit = offset + length;
+			this.frontier = offset;
+		}
+
+		// Advance to the next token that is not skipped
+		public boolean next() {
+			int[] next = t.next;
+			int[] accept = t.accept;
+			boolean[] terminal = t.terminal;
+			char[] classOf = t.classOf;
+			int numClasses = t.numClasses;
+			byte[] buf = this.buf;
+
+			while (pos < limit) {
+				int state = 0;
+				int p = pos;
+				int matched = -1;
+				int matchEnd = p;
+
+				while (true) {
+					if (accept[state] >= 0) {
+						matched = accept[state];
+						matchEnd = p;
+					}
+
+					if (terminal[state] || p == limit)
+						break;
+
+					int c = buf[p] & 0xff;
+
+					// Count each newline once, the first time it is examined
+					if (p >= frontier) {
+						frontier = p + 1;
+						if (c == '\n')
+							line++;
+					}
+
+					state = next[state * numClasses + classOf[c]];
+					if (state < 0)
+						break;
+					p++;
+				}
+
+				if (matched < 0)
+					throw new IllegalStateException("No token matches at line " + line);
+
+				rule = matched;
+				start = pos;
+				end = matchEnd;
+				pos = matchEnd;
+
+				if (!t.skip[matched])
+					return true;
+			}
+
+			return false;
+		}
+	}
+
+	/*
+	 * Thompson NFA
+	 */
+
+	// Per NFA state: epsilon edges, and at most one edge on a set of bytes
+	private ArrayList<ArrayList<Integer>> eps = new ArrayList<ArrayList<Integer>>();
+	private ArrayList<BitSet> edgeSet = new ArrayList<BitSet>();
+	private ArrayList<Integer> edgeTarget = new ArrayList<Integer>();
+	private ArrayList<Integer> acceptRule = new ArrayList<Integer>();
+
+	private int newState() {
+		eps.add(new ArrayList<Integer>());
+		edgeSet.add(null);
+		edgeTarget.add(-1);
+		acceptRule.add(-1);
+		return eps.size() - 1;
+	}
+
+	// A fragment is {start, end} with end having no outgoing edges yet
+	private int[] fragment(BitSet set) {
+		int s = newState();
+		int e = newState();
+		edgeSet.set(s, set);
+		edgeTarget.set(s, e);
+		return new int[] {s, e};
+	}
+
+	private int[] empty() {
+		int s = newState();
+		return new int[] {s, s};
+	}
+
+	/*
+	 * Regex parser, building NFA fragments
+	 */
+
+	private String re;
+	private int p;
+
+	private int[] parse(String regex) {
+		re = regex;
+		p = 0;
+
+		int[] f = parseAlternation();
+		if (p != re.length())
+			throw error("unexpected '" + re.charAt(p) + "'");
+		return f;
+	}
+
+	private IllegalArgumentException error(String message) {
+		return new IllegalArgumentException("Bad pattern /" + re + "/: " + message);
+	}
+
+	private int[] parseAlternation() {
+		int[] f = parseConcatenation();
+
+		if (p < re.length() && re.charAt(p) == '|') {
+			int s = newState();
+			int e = newState();
+			eps.get(s).add(f[0]);
+			eps.get(f[1]).add(e);
+
+			while (p < re.length() && re.charAt(p) == '|') {
+				p++;
+				int[] g = parseConcatenation();
+				eps.get(s).add(g[0]);
+				eps.get(g[1]).add(e);
+			}
+
+			f = new int[] {s, e};
+		}
+
+		return f;
+	}
+
+	private int[] parseConcatenation() {
+		int[] f = null;
+
+		while (p < re.length() && re.charAt(p) != '|' && re.charAt(p) != ')') {
+			int[] g = parseRepetition();
+
+			if (f == null) {
+				f = g;
+			} else {
+				eps.get(f[1]).add(g[0]);
+				f = new int[] {f[0], g[1]};
+			}
+		}
+
+		return f != null ? f : empty();
+	}
+
+	private int[] parseRepetition() {
+		int[] f = parseAtom();
+
+		while (p < re.length() && "*+?".indexOf(re.charAt(p)) >= 0) {
+			char op = re.charAt(p++);
+			int s = newState();
+			int e = newState();
+
+			eps.get(s).add(f[0]);
+			eps.get(f[1]).add(e);
+
+			if (op != '+')
+				eps.get(s).add(e);
+			if (op != '?')
+				eps.get(f[1]).add(f[0]);
+
+			f = new int[] {s, e};
+		}
+
+		return f;
+	}
+
+	private int[] parseAtom() {
+		char c = re.charAt(p++);
+		BitSet set = new BitSet(256);
+
+		switch (c) {
+			case '(':
+				int[] f = parseAlternation();
+				if (p >= re.length() || re.charAt(p) != ')')
+					throw error("missing ')'");
+				p++;
+				return f;
+
+			case '[':
+				return fragment(parseClass());
+
+			case '.':
+				set.set(0, 256);
+				set.clear('\n');
+				return fragment(set);
+
+			case '*':
+			case '+':
+			case '?':
+				throw error("nothing to repeat");
+
+			case '\\':
+				set.set(parseEscape());
+				return fragment(set);
+
+			default:
+				set.set(c & 0xff);
+				return fragment(set);
+		}
+	}
+
+	private BitSet parseClass() {
+		BitSet set = new BitSet(256);
+		boolean negate = p < re.length() && re.charAt(p) == '^';
+		if (negate)
+			p++;
+
+		boolean first = true;
+		while (p < re.length() && (re.charAt(p) != ']' || first)) {
+			int lo = classChar();
+			int hi = lo;
+
+			if (p + 1 < re.length() && re.charAt(p) == '-' && re.charAt(p + 1) != ']') {
+				p++;
+				hi = classChar();
+			}
+
+			set.set(lo, hi + 1);
+			first = false;
+		}
+
+		if (p >= re.length())
+			throw error("missing ']'");
+		p++;
+
+		if (negate)
+			set.flip(0, 256);
+		return set;
+	}
+
+	private int classChar() {
+		char c = re.charAt(p++);
+		return c == '\\' ? parseEscape() : c & 0xff;
+	}
+
+	private int parseEscape() {
+		if (p >= re.length())
+			throw error("trailing '\\'");
+
+		char c = re.charAt(p++);
+		switch (c) {
+			case 'n':
+				return '\n';
+			case 't':
+				return '\t';
+			case 'r':
+				return '\r';
+			case 'f':
+				return '\f';
+			case 'x':
+				if (p + 2 > re.length())
+					throw error("bad \\x escape");
+				p += 2;
+				return Integer.parseInt(re.substring(p - 2, p), 16);
+			default:
+				return c & 0xff;
+		}
+	}
+
+	/*
+	 * NFA -> DFA -> minimal DFA
+	 */
+
+	public Tables build() {
+		int start = newState();
+
+		for (int r = 0; r < patterns.size(); r++) {
+			int[] f = parse(patterns.get(r));
+			eps.get(start).add(f[0]);
+			acceptRule.set(f[1], r);
+		}
+
+		Tables t = new Tables();
+		t.names = names.toArray(new String[0]);
+		t.skip = new boolean[skips.size()];
+		for (int r = 0; r < t.skip.length; r++)
+			t.skip[r] = skips.get(r);
+
+		// Split the bytes into classes that no edge tells apart
+		char[] classOf = new char[256];
+		int numClasses = 1;
+
+		for (BitSet set : edgeSet) {
+			if (set == null)
+				continue;
+
+			HashMap<Integer, Integer> split = new HashMap<Integer, Integer>();
+			int count = 0;
+			char[] refined = new char[256];
+
+			for (int b = 0; b < 256; b++) {
+				int key = classOf[b] * 2 + (set.get(b) ? 1 : 0);
+				Integer id = split.get(key);
+				if (id == null) {
+					id = count++;
+					split.put(key, id);
+				}
+				refined[b] = (char) (int) id;
+			}
+
+			classOf = refined;
+			numClasses = count;
+		}
+
+		int[] representative = new int[numClasses];
+		for (int b = 255; b >= 0; b--)
+			representative[classOf[b]] = b;
+
+		// Subset construction; the empty set becomes an explicit dead state
+		ArrayList<BitSet> dstates = new ArrayList<BitSet>();
+		HashMap<BitSet, Integer> ids = new HashMap<BitSet, Integer>();
+		ArrayList<int[]> dnext = new ArrayList<int[]>();
+
+		BitSet initial = closure(single(start));
+		dstates.add(initial);
+		ids.put(initial, 0);
+
+		for (int d = 0; d < dstates.size(); d++) {
+			BitSet set = dstates.get(d);
+			int[] row = new int[numClasses];
+
+			for (int c = 0; c < numClasses; c++) {
+				BitSet moved = new BitSet();
+				for (int s = set.nextSetBit(0); s >= 0; s = set.nextSetBit(s + 1)) {
+					BitSet edge = edgeSet.get(s);
+					if (edge != null && edge.get(representative[c]))
+						moved.set(edgeTarget.get(s));
+				}
+
+				BitSet target = closure(moved);
+				Integer id = ids.get(target);
+				if (id == null) {
+					id = dstates.size();
+					dstates.add(target);
+					ids.put(target, id);
+				}
+				row[c] = id;
+			}
+
+			dnext.add(row);
+		}
+
+		int n = dstates.size();
+		int[] daccept = new int[n];
+		for (int d = 0; d < n; d++) {
+			daccept[d] = -1;
+			BitSet set = dstates.get(d);
+			for (int s = set.nextSetBit(0); s >= 0; s = set.nextSetBit(s + 1)) {
+				int r = acceptRule.get(s);
+				if (r >= 0 && (daccept[d] < 0 || r < daccept[d]))
+					daccept[d] = r;
+			}
+		}
+
+		int[] blockOf = minimize(dnext, daccept, numClasses);
+		Integer dead = ids.get(new BitSet());
+
+		// Number the blocks in BFS order from the start state, leaving out the dead block
+		int numBlocks = 0;
+		for (int b : blockOf)
+			numBlocks = Math.max(numBlocks, b + 1);
+
+		int deadBlock = dead != null ? blockOf[dead] : -1;
+		int[] blockState = new int[numBlocks];
+		int[] member = new int[numBlocks];
+		for (int b = 0; b < numBlocks; b++)
+			blockState[b] = -1;
+		for (int d = 0; d < n; d++)
+			member[blockOf[d]] = d;
+
+		ArrayDeque<Integer> queue = new ArrayDeque<Integer>();
+		int numStates = 0;
+		blockState[blockOf[0]] = numStates++;
+		queue.add(blockOf[0]);
+
+		while (!queue.isEmpty()) {
+			int b = queue.poll();
+			for (int target : dnext.get(member[b])) {
+				int tb = blockOf[target];
+				if (tb != deadBlock && blockState[tb] < 0) {
+					blockState[tb] = numStates++;
+					queue.add(tb);
+				}
+			}
+		}
+
+		t.classOf = classOf;
+		t.numClasses = numClasses;
+		t.next = new int[numStates * numClasses];
+		t.accept = new int[numStates];
+		t.terminal = new boolean[numStates];
+
+		for (int b = 0; b < numBlocks; b++) {
+			int s = blockState[b];
+			if (s < 0)
+				continue;
+
+			int[] row = dnext.get(member[b]);
+			t.accept[s] = daccept[member[b]];
+			t.terminal[s] = true;
+
+			for (int c = 0; c < numClasses; c++) {
+				int tb = blockOf[row[c]];
+				t.next[s * numClasses + c] = (tb == deadBlock) ? -1 : blockState[tb];
+				if (tb != deadBlock)
+					t.terminal[s] = false;
+			}
+		}
+
+		return t;
+	}
+
+	private static BitSet single(int s) {
+		BitSet set = new BitSet();
+		set.set(s);
+		return set;
+	}
+
+	private BitSet closure(BitSet set) {
+		BitSet result = (BitSet) set.clone();
+		ArrayDeque<Integer> stack = new ArrayDeque<Integer>();
+		for (int s = set.nextSetBit(0); s >= 0; s = set.nextSetBit(s + 1))
+			stack.push(s);
+
+		while (!stack.isEmpty()) {
+			for (int e : eps.get(stack.pop())) {
+				if (!result.get(e)) {
+					result.set(e);
+					stack.push(e);
+				}
+			}
+		}
+
+		return result;
+	}
+
+	// Hopcroft's algorithm: returns the block of every state in the coarsest stable partition
+	private static int[] minimize(ArrayList<int[]> next, int[] accept, int numClasses) {
+		int n = accept.length;
+
+		// Inverse transitions: sources of (class c, target t) are inv[invStart[c * n + t] ..]
+		int[] invStart = new int[numClasses * n + 1];
+		int[] inv = new int[numClasses * n];
+
+		for (int s = 0; s < n; s++)
+			for (int c = 0; c < numClasses; c++)
+				invStart[c * n + next.get(s)[c] + 1]++;
+		for (int i = 1; i < invStart.length; i++)
+			invStart[i] += invStart[i - 1];
+
+		int[] fill = invStart.clone();
+		for (int s = 0; s < n; s++)
+			for (int c = 0; c < numClasses; c++)
+				inv[fill[c * n + next.get(s)[c]]++] = s;
+
+		// Initial partition by accepted rule
+		int[] blockOf = new int[n];
+		ArrayList<ArrayList<Integer>> blocks = new ArrayList<ArrayList<Integer>>();
+		HashMap<Integer, Integer> byRule = new HashMap<Integer, Integer>();
+
+		for (int s = 0; s < n; s++) {
+			Integer b = byRule.get(accept[s]);
+			if (b == null) {
+				b = blocks.size();
+				byRule.put(accept[s], b);
+				blocks.add(new ArrayList<Integer>());
+			}
+			blockOf[s] = b;
+			blocks.get(b).add(s);
+		}
+
+		ArrayDeque<Integer> work = new ArrayDeque<Integer>();
+		ArrayList<Boolean> inWork = new ArrayList<Boolean>();
+		for (int b = 0; b < blocks.size(); b++) {
+			work.add(b);
+			inWork.add(true);
+		}
+
+		boolean[] marked = new boolean[n];
+		int[] markedCount = new int[n];
+
+		while (!work.isEmpty()) {
+			int a = work.poll();
+			inWork.set(a, false);
+			int[] splitter = toArray(blocks.get(a));
+
+			for (int c = 0; c < numClasses; c++) {
+				// Mark every state with a c-transition into the splitter
+				ArrayList<Integer> touched = new ArrayList<Integer>();
+				ArrayList<Integer> sources = new ArrayList<Integer>();
+
+				for (int target : splitter) {
+					for (int i = invStart[c * n + target]; i < invStart[c * n + target + 1]; i++) {
+						int s = inv[i];
+						if (marked[s])
+							continue;
+
+						marked[s] = true;
+						sources.add(s);
+						if (markedCount[blockOf[s]]++ == 0)
+							touched.add(blockOf[s]);
+					}
+				}
+
+				for (int y : touched) {
+					ArrayList<Integer> members = blocks.get(y);
+
+					if (markedCount[y] < members.size()) {
+						// Split y into its marked and unmarked states
+						ArrayList<Integer> in = new ArrayList<Integer>();
+						ArrayList<Integer> out = new ArrayList<Integer>();
+						for (int s : members)
+							(marked[s] ? in : out).add(s);
+
+						int z = blocks.size();
+						blocks.set(y, out);
+						blocks.add(in);
+						inWork.add(false);
+						for (int s : in)
+							blockOf[s] = z;
+
+						if (inWork.get(y) || in.size() <= out.size()) {
+							work.add(z);
+							inWork.set(z, true);
+						} else {
+							work.add(y);
+							inWork.set(y, true);
+						}
+					}
+
+					markedCount[y] = 0;
+				}
+
+				for (int s : sources)
+					marked[s] = false;
+			}
+		}
+
+		return blockOf;
+	}
+
+	private static int[] toArray(ArrayList<Integer> list) {
+		int[] a = new int[list.size()];
+		for (int i = 0; i < a.length; i++)
+			a[i] = list.get(i);
+		return a;
+	}
+}
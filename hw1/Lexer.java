@@ -0,0 +1,159 @@
+//package hw1;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+/*
+ * Pull-based version of Lex.lexDense: tokens are produced one at a time
+ * when the parser asks for them, so memory does not grow with the input.
+ */
+public class Lexer {
+	
+	private static final int A = Lex.State.A.ordinal();
+	private static final int B = Lex.State.B.ordinal();
+	private static final int C = Lex.State.C.ordinal();
+	private static final int D = Lex.State.D.ordinal();
+	
+	static {
+		Lex.initDense();
+	}
+	
+	private InputStream in;
+	private byte[] buf = new byte[Lex.BLOCK_SIZE];
+	private int pos = 0;
+	private int limit = 0;
+	
+	private int state = A;
+	private boolean reachedEOF = false;
+	
+	// A single input character can complete two tokens (e.g. "+" followed by "1")
+	private long pending = Lex.Packed.NONE;
+	
+	int linenumber = 1;
+	
+	public Lexer(InputStream in) {
+		this.in = in;
+	}
+	
+	// Lex bytes that are already in memory, without copying them
+	public Lexer(byte[] src, int offset, int length) {
+		this.in = null;
+		this.buf = src;
+		this.pos = offset;
+		this.limit = offset + length;
+	}
+	
+	// Return the next token, or the EOF token once the input is exhausted
+	public Lex.Token next() {
+		return Lex.Packed.unpack(nextPacked());
+	}
+	
+	// Same as next, but the token is packed into a long (see Lex.Packed), so nothing is allocated
+	public long nextPacked() {
+		if (pending != Lex.Packed.NONE) {
+			long t = pending;
+			pending = Lex.Packed.NONE;
+			return t;
+		}
+		
+		while (!reachedEOF) {
+			if (pos == limit && !fill()) {
+				reachedEOF = true;
+				
+				// We have reached EOF
+				long eof = Lex.Packed.pack(Lex.TokenType.EOF, '\0', linenumber);
+				if (state == B)
+					return emit(Lex.Packed.pack(Lex.TokenType.BINOP, '+', linenumber), eof);
+				else if (state == C)
+					return emit(Lex.Packed.pack(Lex.TokenType.BINOP, '-', linenumber), eof);
+				return eof;
+			}
+			
+			// Skip the rest of a comment in bulk, the \n is handled below
+			if (state == D) {
+				while (pos < limit && buf[pos] != '\n')
+					pos++;
+				
+				if (pos == limit)
+					continue;
+			}
+			
+			int c = buf[pos++] & 0xff;
+			int cls = Lex.charClasses[c];
+			int prevState = state;
+			
+			// Update line number
+			if (c == '\n')
+				linenumber++;
+			
+			state = Lex.denseTransitions[prevState][cls];
+			
+			if (state < 0) {
+				// Invalid transition => invalid input
+				state = prevState;
+				throw new Lex.LexError(linenumber);
+			}
+			
+			long t = Lex.Packed.NONE;
+			
+			if (prevState == A) {
+				t = Lex.Packed.forClass(cls, linenumber);
+			} else if (prevState == B) {
+				if (c == '+')
+					t = Lex.Packed.pack(Lex.TokenType.INCROP, '+', linenumber);
+				else
+					t = emit(Lex.Packed.pack(Lex.TokenType.BINOP, '+', linenumber), Lex.Packed.forClass(cls, linenumber));
+			} else if (prevState == C) {
+				if (c == '-')
+					t = Lex.Packed.pack(Lex.TokenType.INCROP, '-', linenumber);
+				else
+					t = emit(Lex.Packed.pack(Lex.TokenType.BINOP, '-', linenumber), Lex.Packed.forClass(cls, linenumber));
+			}
+			
+			if (t != Lex.Packed.NONE)
+				return t;
+		}
+		
+		return Lex.Packed.pack(Lex.TokenType.EOF, '\0', linenumber);
+	}
+	
+	// Lex the whole input up front, as Lex.lex does; the packed tokens end with EOF
+	public long[] lexAll() {
+		long[] tokens = new long[1024];
+		int n = 0;
+		
+		for (;;) {
+			long t = nextPacked();
+			if (n == tokens.length)
+				tokens = Arrays.copyOf(tokens, n * 2);
+			tokens[n++] = t;
+			
+			if (Lex.Packed.type(t) == Lex.TokenType.EOF)
+				return tokens;
+		}
+	}
+	
+	private long emit(long first, long second) {
+		pending = second;
+		return first;
+	}
+	
+	private boolean fill() {
+		if (in == null)
+			return false;
+		
+		try {
+			int n = in.read(buf, 0, buf.length);
+			if (n < 0)
+				return false;
+			
+			pos = 0;
+			limit = n;
+			return true;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+}
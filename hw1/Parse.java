@@ -1,27 +1,73 @@
 //package hw1;
 
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.Files;
 import java.util.*;
 
 public class Parse {
 	static ArrayList<Lex.Token> tokens = new ArrayList<Lex.Token>();
 	static int currentTokenIndex = 0;
-	static Lex.Token currentToken = null;
+	static long currentToken = Lex.Packed.NONE;
 	static boolean printFirstTime = true;
 	
 	static StringBuilder outStr = new StringBuilder();
 	
-	private static Lex.Token nextToken() {
-		return tokens.get(currentTokenIndex++);
+	// Streaming mode: output is spilled to sink, a temp file that is only
+	// copied to stdout once the whole input has parsed
+	static Writer sink = null;
+	static File spill = null;
+	
+	// The $ environment for -eval, or null
+	static int[] env = null;
+	
+	// With -fold the printed tokens go to a Fold instead, and its output replaces outStr
+	static Fold fold = null;
+	
+	// Tokens are handled packed (see Lex.Packed), so matching them never allocates
+	private static long nextToken() {
+		return tokens.get(currentTokenIndex++).pack();
+	}
+	
+	private static Lex.TokenType type() {
+		return Lex.Packed.type(currentToken);
+	}
+	
+	private static boolean is(long expected) {
+		return Lex.Packed.same(currentToken, expected);
 	}
 	
 	private static void printError() {
-		System.out.printf("Parse error in line %d\n", currentToken.linenumber);
+		System.out.printf("Parse error in line %d\n", Lex.Packed.line(currentToken));
 		System.exit(1);
 	}
 	
+	// Drop the partial output of a failed streaming parse
+	private static void endStream() {
+		if (sink == null)
+			return;
+		
+		try {
+			sink.close();
+		} catch (IOException e) {
+			// The output is discarded anyway
+		}
+		
+		spill.delete();
+	}
+	
 	private static void printFormattedToken(String s) {
+		if (fold != null) {
+			fold.add(s);
+			return;
+		}
+		
 		String delimiter = "";
 		if (printFirstTime) {
 			printFirstTime = false;
@@ -30,6 +76,16 @@ public class Parse {
 		}
 		
 		//System.out.print(delimiter + s);
+		if (sink != null) {
+			try {
+				sink.write(delimiter);
+				sink.write(s);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			return;
+		}
+		
 		outStr.append(delimiter);
 		outStr.append(s);
 	}
@@ -37,38 +93,170 @@ public class Parse {
 	public static void main(String[] args) throws IOException {
 		Lex.init();
 		
+		// -eval v0 v1 ...: also evaluate the expression with $0 = v0, $1 = v1, ...
+		int evalIndex = Arrays.asList(args).indexOf("-eval");
+		if (evalIndex >= 0)
+			env = parseEnv(args, evalIndex + 1);
+		
+		// -fold folds constant subtrees before printing, reporting the removed nodes on stderr
+		if (Arrays.asList(args).contains("-fold"))
+			fold = new Fold();
+		
+		// -iter runs the reentrant, explicit-stack Parser, and so does -stream, as no input is too
+		// long or too deeply nested for it; folding and -eval need the whole output, so they do not stream
+		boolean streaming = Arrays.asList(args).contains("-stream");
+		if (Arrays.asList(args).contains("-iter") || streaming) {
+			translate(System.in, streaming && fold == null && env == null);
+			return;
+		}
+		
 		try {
 			InputStream in = System.in;
-			tokens = Lex.lex(in);
+			
+			// -dense uses the table-driven, block-reading lexer, -gen the LexGen tables
+			if (Arrays.asList(args).contains("-dense"))
+				tokens = Lex.lexDense(in);
+			else if (Arrays.asList(args).contains("-gen"))
+				tokens = Lex.lexGenerated(in);
+			else
+				tokens = Lex.lex(in);
+			
 			currentToken = nextToken();
 			
 			// Start the initial production
 			E();
 			
+			if (fold != null)
+				printFold();
+			
 			// Print out output string
 			System.out.println(outStr.toString());
 			
 			// Print out success message
 			System.out.println("Expression parsed successfully");
+			
+			printValue();
 		} catch (Exception e) {
 			//System.out.println(e.getMessage());
 			System.out.printf("Parse error in line %d\n", Lex.linenumber);
 		}
 	}
 	
+	/*
+	 * Lex and parse in one pass: when streaming, the postfix output is written
+	 * while parsing, so neither the tokens nor the output string is ever held
+	 * in memory
+	 */
+	
+	private static void translate(InputStream in, boolean streaming) throws IOException {
+		if (streaming)
+			openSpill();
+		
+		Parser parser;
+		if (streaming) {
+			parser = new Parser(new Lexer(in), sink);
+		} else {
+			// Lex the whole input first, as the default mode does
+			try {
+				parser = new Parser(new Lexer(in).lexAll(), outStr);
+			} catch (Lex.LexError e) {
+				System.out.printf("Parse error in line %d\n", e.linenumber);
+				return;
+			}
+		}
+		
+		if (!parser.translate()) {
+			endStream();
+			System.out.printf("Parse error in line %d\n", parser.errorLine);
+			
+			if (!parser.lexError)
+				System.exit(1);
+			return;
+		}
+		
+		if (fold != null) {
+			for (String token : outStr.toString().split(" "))
+				fold.add(token);
+			outStr.setLength(0);
+			printFold();
+		}
+		
+		// Print out output string
+		if (streaming)
+			printSpill();
+		else
+			System.out.println(outStr.toString());
+		
+		// Print out success message
+		System.out.println("Expression parsed successfully");
+		
+		if (!streaming)
+			printValue();
+	}
+	
+	private static void printFold() throws IOException {
+		if (sink != null)
+			sink.write(fold.toPostfix());
+		else
+			outStr.append(fold.toPostfix());
+		
+		System.err.printf("Folded %d of %d nodes\n", fold.nodesFolded, fold.nodesIn);
+	}
+	
+	static int[] parseEnv(String[] args, int from) {
+		int n = 0;
+		while (from + n < args.length && args[from + n].matches("-?\\d+"))
+			n++;
+		
+		int[] values = new int[n];
+		for (int i = 0; i < n; i++)
+			values[i] = Integer.parseInt(args[from + i]);
+		return values;
+	}
+	
+	private static void printValue() {
+		if (env == null)
+			return;
+		
+		System.out.println(value(outStr.toString(), env));
+	}
+	
+	// The value of postfix against env, or why there is none; evaluated through Jit,
+	// so an expression evaluated again and again is compiled once it is hot
+	static String value(String postfix, int[] env) {
+		try {
+			return Integer.toString(Jit.get(postfix).evaluate(env));
+		} catch (ArrayIndexOutOfBoundsException e) {
+			return "Evaluation error: $ index out of range";
+		}
+	}
+	
+	private static void openSpill() throws IOException {
+		spill = File.createTempFile("postfix", ".txt");
+		spill.deleteOnExit();
+		sink = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(spill)), Lex.BLOCK_SIZE);
+	}
+	
+	private static void printSpill() throws IOException {
+		sink.close();
+		Files.copy(spill.toPath(), System.out);
+		spill.delete();
+		System.out.println();
+	}
+	
 	/*
 	 * Match current token with the expected token
 	 * Print error message if one occurs
 	 */
 
-	private static void match(String tokenString) {
-		if (currentToken.value.equals(tokenString)) {
+	private static void match(long expected) {
+		if (is(expected)) {
 			
 			//
 			//System.out.println("-> " + tokenString);
 			//
 			
-			if (currentToken.type != Lex.TokenType.EOF)
+			if (type() != Lex.TokenType.EOF)
 				currentToken = nextToken();
 	
 		} else {
@@ -81,10 +269,10 @@ public class Parse {
 	 */
 	
 	private static void E() {
-		if (currentToken.type == Lex.TokenType.NUM || currentToken.type == Lex.TokenType.INCROP 
-				|| currentToken.type == Lex.TokenType.LPAREN || currentToken.type == Lex.TokenType.LVALUE) {
+		if (type() == Lex.TokenType.NUM || type() == Lex.TokenType.INCROP 
+				|| type() == Lex.TokenType.LPAREN || type() == Lex.TokenType.LVALUE) {
 			E1();
-			match("EOF");
+			match(Lex.Packed.EOF);
 			//System.out.println();
 		}
 		else {
@@ -93,8 +281,8 @@ public class Parse {
 	}
 	
 	private static void E1() {
-		if (currentToken.type == Lex.TokenType.NUM || currentToken.type == Lex.TokenType.INCROP 
-				|| currentToken.type == Lex.TokenType.LPAREN || currentToken.type == Lex.TokenType.LVALUE) {
+		if (type() == Lex.TokenType.NUM || type() == Lex.TokenType.INCROP 
+				|| type() == Lex.TokenType.LPAREN || type() == Lex.TokenType.LVALUE) {
 			E2();
 			E1_();
 		}
@@ -104,15 +292,15 @@ public class Parse {
 	}
 	
 	private static void E1_() {
-		if (currentToken.type == Lex.TokenType.NUM || currentToken.type == Lex.TokenType.INCROP || 
-				currentToken.type == Lex.TokenType.LPAREN || currentToken.type == Lex.TokenType.LVALUE) {
+		if (type() == Lex.TokenType.NUM || type() == Lex.TokenType.INCROP || 
+				type() == Lex.TokenType.LPAREN || type() == Lex.TokenType.LVALUE) {
 			E2();
 			
 			// IMPORTANT: POSTFIX PRINT
 			printFormattedToken("_");
 			
 			E1_();	
-		} else if (currentToken.type == Lex.TokenType.RPAREN || currentToken.type == Lex.TokenType.EOF) {
+		} else if (type() == Lex.TokenType.RPAREN || type() == Lex.TokenType.EOF) {
 			// nothing
 		} else {
 			printError();
@@ -120,8 +308,8 @@ public class Parse {
 	}
 	
 	private static void E2() {
-		if (currentToken.type == Lex.TokenType.NUM || currentToken.type == Lex.TokenType.INCROP || 
-				currentToken.type == Lex.TokenType.LPAREN || currentToken.type == Lex.TokenType.LVALUE) {
+		if (type() == Lex.TokenType.NUM || type() == Lex.TokenType.INCROP || 
+				type() == Lex.TokenType.LPAREN || type() == Lex.TokenType.LVALUE) {
 			E3();
 			E2_();
 		} else {
@@ -130,16 +318,16 @@ public class Parse {
 	}
 	
 	private static void E2_() {
-		if (currentToken.value.equals("+")) {
-			match("+");
+		if (is(Lex.Packed.PLUS)) {
+			match(Lex.Packed.PLUS);
 			E3();
 			
 			// IMPORTANT: POSTFIX PRINT
 			printFormattedToken("+");
 			
 			E2_();
-		} else if (currentToken.value.equals("-")) {
-			match("-");
+		} else if (is(Lex.Packed.MINUS)) {
+			match(Lex.Packed.MINUS);
 			E3();
 			
 			// IMPORTANT: POSTFIX PRINT
@@ -150,17 +338,17 @@ public class Parse {
 	}
 	
 	private static void E3() {
-		if (currentToken.type == Lex.TokenType.NUM || currentToken.type == Lex.TokenType.LPAREN || currentToken.type == Lex.TokenType.LVALUE) {
+		if (type() == Lex.TokenType.NUM || type() == Lex.TokenType.LPAREN || type() == Lex.TokenType.LVALUE) {
 			E4();
-		} else if (currentToken.value.equals("++")) {
-			match("++");
+		} else if (is(Lex.Packed.INCR)) {
+			match(Lex.Packed.INCR);
 			E3();
 			
 			// IMPORTANT: POSTFIX PRINT
 			printFormattedToken("++_");
 			
-		} else if (currentToken.value.equals("--")) {
-			match("--");			
+		} else if (is(Lex.Packed.DECR)) {
+			match(Lex.Packed.DECR);			
 			E3();
 			
 			// IMPORTANT: POSTFIX PRINT
@@ -172,7 +360,7 @@ public class Parse {
 	}
 	
 	private static void E4() {
-		if (currentToken.type == Lex.TokenType.NUM || currentToken.type == Lex.TokenType.LPAREN || currentToken.type == Lex.TokenType.LVALUE) {
+		if (type() == Lex.TokenType.NUM || type() == Lex.TokenType.LPAREN || type() == Lex.TokenType.LVALUE) {
 			E5();
 			E4_();
 		} else {
@@ -181,16 +369,16 @@ public class Parse {
 	}
 	
 	private static void E4_() {
-		if (currentToken.value.equals("++")) {
-			match("++");
+		if (is(Lex.Packed.INCR)) {
+			match(Lex.Packed.INCR);
 			
 			// IMPORTANT: POSTFIX PRINT
 			printFormattedToken("_++");
 			
 			E4_();
 			
-		} else if (currentToken.value.equals("--")) {
-			match("--");
+		} else if (is(Lex.Packed.DECR)) {
+			match(Lex.Packed.DECR);
 			
 			// IMPORTANT: POSTFIX PRINT
 			printFormattedToken("_--");
@@ -200,10 +388,10 @@ public class Parse {
 	}
 	
 	private static void E5() {
-		if (currentToken.type == Lex.TokenType.NUM || currentToken.type == Lex.TokenType.LPAREN) {
+		if (type() == Lex.TokenType.NUM || type() == Lex.TokenType.LPAREN) {
 			E7();
-		} else if (currentToken.type == Lex.TokenType.LVALUE) {
-			match("$");
+		} else if (type() == Lex.TokenType.LVALUE) {
+			match(Lex.Packed.DOLLAR);
 			E6();
 			
 			// IMPORTANT: POSTFIX PRINT
@@ -215,21 +403,21 @@ public class Parse {
 	}
 	
 	private static void E6() {
-		if (currentToken.value.equals("++")) {
-			match("++");
+		if (is(Lex.Packed.INCR)) {
+			match(Lex.Packed.INCR);
 			E6();
 			
 			// IMPORTANT: POSTFIX PRINT
 			printFormattedToken("++_");
 			
-		} else if (currentToken.value.equals("--")) {
-			match("--");
+		} else if (is(Lex.Packed.DECR)) {
+			match(Lex.Packed.DECR);
 			E6();
 			
 			// IMPORTANT: POSTFIX PRINT
 			printFormattedToken("--_");
 			
-		} else if (currentToken.type == Lex.TokenType.NUM || currentToken.type == Lex.TokenType.LPAREN || currentToken.type == Lex.TokenType.LVALUE) {
+		} else if (type() == Lex.TokenType.NUM || type() == Lex.TokenType.LPAREN || type() == Lex.TokenType.LVALUE) {
 			E5();
 		} else {
 			printError();
@@ -237,17 +425,17 @@ public class Parse {
 	}
 	
 	private static void E7() {
-		if (currentToken.type == Lex.TokenType.NUM) {
-			String numStr = currentToken.value;
-			match(numStr);
+		if (type() == Lex.TokenType.NUM) {
+			long num = currentToken;
+			match(num);
 			
 			// IMPORTANT: POSTFIX PRINT
-			printFormattedToken(numStr);
+			printFormattedToken(Lex.Packed.digits(num));
 			
-		} else if (currentToken.type == Lex.TokenType.LPAREN) {
-			match("(");
+		} else if (type() == Lex.TokenType.LPAREN) {
+			match(Lex.Packed.OPEN);
 			E1();
-			match(")");
+			match(Lex.Packed.CLOSE);
 		} else {
 			printError();
 		}
@@ -0,0 +1,238 @@
+//package hw1;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+/*
+ * Reentrant translator for one expression: all state lives in the instance,
+ * so any number of Parsers can run in the same JVM, one after the other or
+ * in parallel. Tokens are pulled from a Lexer, or read from the packed
+ * tokens of an input lexed up front, and the postfix form is appended to out.
+ *
+ * Instead of recursing through E1..E7 like Parse, every operator that is
+ * still waiting for its operand is kept on an explicit stack, so the nesting
+ * depth is limited only by the heap.
+ */
+public class Parser {
+
+	// Pending operators; each one is printed once the operand it applies to is complete
+	private static final int PAREN = 0;			// E7 -> ( E1 )
+	private static final int CONCAT = 1;		// E1_: "_" after the next E2
+	private static final int PLUS = 2;			// E2_: "+" after the next E3
+	private static final int MINUS = 3;			// E2_: "-" after the next E3
+	private static final int PRE_INCR = 4;		// E3: "++_" after the next E3
+	private static final int PRE_DECR = 5;		// E3: "--_" after the next E3
+	private static final int LVALUE = 6;		// E5: "$" after the next E6
+	private static final int LVALUE_INCR = 7;	// E6: "++_" after the next E6
+	private static final int LVALUE_DECR = 8;	// E6: "--_" after the next E6
+
+	// Unwinds translate() on a parse error
+	private static class ParseError extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		ParseError() {
+			super(null, null, false, false);
+		}
+	}
+
+	private Lexer lexer;
+	private long[] tokens;
+	private int tokenIndex = 0;
+	private Appendable out;
+	private long currentToken = Lex.Packed.NONE;
+	private boolean printFirstTime = true;
+
+	private int[] pending = new int[64];
+	private int pendingSize = 0;
+
+	// Set when translate() fails
+	int errorLine = 0;
+	boolean lexError = false;
+
+	public Parser(Lexer lexer, Appendable out) {
+		this.lexer = lexer;
+		this.out = out;
+	}
+
+	// Parse tokens that end with EOF, see Lexer.lexAll
+	public Parser(long[] tokens, Appendable out) {
+		this.tokens = tokens;
+		this.out = out;
+	}
+
+	// Translate the whole input; on failure errorLine holds the line to report
+	public boolean translate() {
+		try {
+			currentToken = nextToken();
+			parse();
+			return true;
+		} catch (ParseError e) {
+			errorLine = Lex.Packed.line(currentToken);
+			finishLexing();
+		} catch (Lex.LexError e) {
+			errorLine = e.linenumber;
+			lexError = true;
+		}
+		return false;
+	}
+
+	private long nextToken() {
+		if (lexer != null)
+			return lexer.nextPacked();
+		return tokens[tokenIndex++];
+	}
+
+	// As in Lex.lex, which reads the whole input before parsing, a lexical
+	// error anywhere after a parse error is the one reported
+	private void finishLexing() {
+		if (lexer == null)
+			return;
+
+		try {
+			while (Lex.Packed.type(lexer.nextPacked()) != Lex.TokenType.EOF)
+				;
+		} catch (Lex.LexError e) {
+			errorLine = e.linenumber;
+			lexError = true;
+		}
+	}
+
+	private void printError() {
+		throw new ParseError();
+	}
+
+	private void printFormattedToken(String s) {
+		try {
+			if (printFirstTime)
+				printFirstTime = false;
+			else
+				out.append(' ');
+
+			out.append(s);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private void push(int op) {
+		if (pendingSize == pending.length)
+			pending = Arrays.copyOf(pending, pendingSize * 2);
+		pending[pendingSize++] = op;
+	}
+
+	private int peek() {
+		return pendingSize > 0 ? pending[pendingSize - 1] : -1;
+	}
+
+	private static boolean isIncrement(long t) {
+		return Lex.Packed.value(t) == '+';
+	}
+
+	private void parse() {
+		for (;;) {
+			// Start of an E3, or of an E6 if the top of the stack is $, ++ or -- inside an lvalue
+			boolean inLvalue = peek() >= LVALUE;
+
+			switch (Lex.Packed.type(currentToken)) {
+				case INCROP:
+					if (inLvalue)
+						push(isIncrement(currentToken) ? LVALUE_INCR : LVALUE_DECR);
+					else
+						push(isIncrement(currentToken) ? PRE_INCR : PRE_DECR);
+					currentToken = nextToken();
+					continue;
+
+				case LVALUE:
+					push(LVALUE);
+					currentToken = nextToken();
+					continue;
+
+				case LPAREN:
+					push(PAREN);
+					currentToken = nextToken();
+					continue;
+
+				case NUM:
+					printFormattedToken(Lex.Packed.digits(currentToken));
+					currentToken = nextToken();
+					break;
+
+				default:
+					printError();
+			}
+
+			// An E5 is complete; reduce until a new operand is expected or the input is done
+			if (!reduce())
+				return;
+		}
+	}
+
+	// Return true if another operand is expected, false once EOF has been matched
+	private boolean reduce() {
+		for (;;) {
+			// E6 -> ++ E6 | -- E6 | E5, and E5 -> $ E6
+			while (peek() >= LVALUE) {
+				int op = pending[--pendingSize];
+				printFormattedToken(op == LVALUE ? "$" : (op == LVALUE_INCR ? "++_" : "--_"));
+			}
+
+			// E4_
+			while (Lex.Packed.type(currentToken) == Lex.TokenType.INCROP) {
+				printFormattedToken(isIncrement(currentToken) ? "_++" : "_--");
+				currentToken = nextToken();
+			}
+
+			// E3 -> ++ E3 | -- E3
+			while (peek() == PRE_INCR || peek() == PRE_DECR)
+				printFormattedToken(pending[--pendingSize] == PRE_INCR ? "++_" : "--_");
+
+			// E2_
+			if (peek() == PLUS || peek() == MINUS)
+				printFormattedToken(pending[--pendingSize] == PLUS ? "+" : "-");
+
+			if (Lex.Packed.type(currentToken) == Lex.TokenType.BINOP) {
+				push(isIncrement(currentToken) ? PLUS : MINUS);
+				currentToken = nextToken();
+				return true;
+			}
+
+			// E1_
+			if (peek() == CONCAT) {
+				pendingSize--;
+				printFormattedToken("_");
+			}
+
+			switch (Lex.Packed.type(currentToken)) {
+				case NUM:
+				case INCROP:
+				case LPAREN:
+				case LVALUE:
+					push(CONCAT);
+					return true;
+
+				case RPAREN:
+				case EOF:
+					break;
+
+				default:
+					printError();
+			}
+
+			// An E1 is complete, so it either closes a ( E1 ) or the whole expression
+			if (peek() == PAREN) {
+				if (Lex.Packed.type(currentToken) != Lex.TokenType.RPAREN)
+					printError();
+
+				pendingSize--;
+				currentToken = nextToken();
+				continue;
+			}
+
+			if (Lex.Packed.type(currentToken) != Lex.TokenType.EOF)
+				printError();
+
+			return false;
+		}
+	}
+}
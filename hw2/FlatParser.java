@@ -0,0 +1,454 @@
+import xxx.FlatAst;
+
+import java.io.*;
+
+/*
+ * The grammar of FastParser, building a FlatAst instead of the syntaxtree:
+ * every node is a row of int arrays, and identifiers and literals are
+ * symbol ids. It accepts and rejects exactly what FastParser does, with
+ * the same messages.
+ *
+ * Spellings are numbered in order of appearance by the scanner, so
+ * interning them in that order makes a spelling's number its symbol id.
+ */
+public class FlatParser extends FastScanner {
+
+	private static final int NIL = FlatAst.NIL;
+
+	private FlatAst ast;
+
+	public FlatParser(byte[] source) {
+		super(source);
+	}
+
+	public FlatParser(InputStream in) {
+		super(in);
+	}
+
+	// *** Parser ***
+
+	private int expect(int k) throws ParseException {
+		if (kind[pos] != k)
+			throw error();
+
+		return pos++;
+	}
+
+	// Symbol id of the identifier at pos
+	private int identifier() throws ParseException {
+		return spelling[expect(IDENT)];
+	}
+
+	// Make n the next sibling of last; returns n
+	private int link(int last, int n) {
+		ast.next[last] = n;
+		return n;
+	}
+
+	// Last node of the chain of siblings starting at n
+	private int tail(int n) {
+		while (ast.next[n] != NIL)
+			n = ast.next[n];
+		return n;
+	}
+
+	public FlatAst Goal() throws ParseException {
+		scan();
+
+		// Every node starts at a token of its own, or is a bracket's
+		// contents, so there are fewer nodes than tokens
+		ast = new FlatAst(count);
+
+		for (int i = 0; i < spellingCount; i++)
+			ast.symbols.intern(spellings[i]);
+
+		int main = MainClass();
+		int last = main;
+
+		while (kind[pos] == CLASS)
+			last = link(last, TypeDeclaration());
+
+		expect(EOF);
+
+		ast.root = ast.add(FlatAst.GOAL, NIL, 0, main);
+		ast.trim();
+		return ast;
+	}
+
+	private int MainClass() throws ParseException {
+		int t = expect(CLASS);
+		int name = identifier();
+		expect(LBRACE);
+		expect(PUBLIC);
+		expect(STATIC);
+		expect(VOID);
+		expect(MAIN);
+		expect(LPAREN);
+		expect(STRING);
+		expect(LSQPAREN);
+		expect(RSQPAREN);
+
+		int at = pos;
+		int first = ast.add(FlatAst.IDENT, identifier(), at);
+		int last = first;
+
+		expect(RPAREN);
+		expect(LBRACE);
+
+		while (startsVarDeclaration())
+			last = link(last, VarDeclaration());
+
+		int body = Statements(RBRACE);
+		if (body != NIL)
+			link(last, body);
+
+		expect(RBRACE);
+		expect(RBRACE);
+
+		return ast.add(FlatAst.MAIN_CLASS, name, t, first);
+	}
+
+	// LOOKAHEAD(2) VarDeclaration(): a statement can also start with an
+	// identifier, and a type is only taken with what can follow it
+	private boolean startsVarDeclaration() throws ParseException {
+		switch (kind[pos]) {
+			case INTEGER:
+				return peek(1) == IDENT || peek(1) == LSQPAREN;
+
+			case BOOLEAN:
+			case IDENT:
+				return peek(1) == IDENT;
+
+			default:
+				return false;
+		}
+	}
+
+	private int TypeDeclaration() throws ParseException {
+		if (peek(2) == EXTENDS)
+			return ClassExtendsDeclaration();
+
+		return ClassDeclaration();
+	}
+
+	private int ClassDeclaration() throws ParseException {
+		int t = expect(CLASS);
+		int name = identifier();
+		expect(LBRACE);
+		int members = Members();
+		expect(RBRACE);
+
+		return ast.add(FlatAst.CLASS, name, t, members);
+	}
+
+	private int ClassExtendsDeclaration() throws ParseException {
+		int t = expect(CLASS);
+		int name = identifier();
+		expect(EXTENDS);
+
+		int at = pos;
+		int parent = ast.add(FlatAst.IDENT, identifier(), at);
+
+		expect(LBRACE);
+		int members = Members();
+		if (members != NIL)
+			link(parent, members);
+		expect(RBRACE);
+
+		return ast.add(FlatAst.CLASS_EXTENDS, name, t, parent);
+	}
+
+	// VarDeclaration()* MethodDeclaration()*, as a chain
+	private int Members() throws ParseException {
+		int first = NIL;
+		int last = NIL;
+
+		while (kind[pos] == INTEGER || kind[pos] == BOOLEAN || kind[pos] == IDENT) {
+			int n = VarDeclaration();
+			last = first == NIL ? (first = n) : link(last, n);
+		}
+
+		while (kind[pos] == PUBLIC) {
+			int n = MethodDeclaration();
+			last = first == NIL ? (first = n) : link(last, n);
+		}
+
+		return first;
+	}
+
+	private int VarDeclaration() throws ParseException {
+		int t = pos;
+		int type = Type();
+		int name = identifier();
+		expect(SEMICOLON);
+
+		return ast.add(FlatAst.VAR_DECL, name, t, type);
+	}
+
+	private int MethodDeclaration() throws ParseException {
+		int t = expect(PUBLIC);
+		int type = Type();
+		int name = identifier();
+		int last = type;
+
+		expect(LPAREN);
+
+		if (kind[pos] != RPAREN) {
+			last = link(last, FormalParameter());
+
+			while (kind[pos] == COMMA) {
+				pos++;
+				last = link(last, FormalParameter());
+			}
+		}
+
+		expect(RPAREN);
+		expect(LBRACE);
+
+		while (startsVarDeclaration())
+			last = link(last, VarDeclaration());
+
+		int body = Statements(RETURN);
+		if (body != NIL)
+			last = tail(link(last, body));
+
+		int r = expect(RETURN);
+		int e = Expression();
+		expect(SEMICOLON);
+		expect(RBRACE);
+
+		link(last, ast.add(FlatAst.RETURN, NIL, r, e));
+
+		return ast.add(FlatAst.METHOD, name, t, type);
+	}
+
+	private int FormalParameter() throws ParseException {
+		int t = pos;
+		int type = Type();
+		int name = identifier();
+
+		return ast.add(FlatAst.PARAM, name, t, type);
+	}
+
+	private int Type() throws ParseException {
+		int t = pos;
+
+		switch (kind[pos]) {
+			case INTEGER:
+				if (peek(1) == LSQPAREN) {
+					pos += 2;
+					expect(RSQPAREN);
+					return ast.add(FlatAst.TYPE_ARRAY, NIL, t);
+				}
+				pos++;
+				return ast.add(FlatAst.TYPE_INT, NIL, t);
+
+			case BOOLEAN:
+				pos++;
+				return ast.add(FlatAst.TYPE_BOOLEAN, NIL, t);
+
+			case IDENT:
+				return ast.add(FlatAst.TYPE_ID, identifier(), t);
+
+			default:
+				throw error();
+		}
+	}
+
+	// Statement()* up to the closing token, which is left for the caller;
+	// returns the first of the chain, or NIL
+	private int Statements(int closer) throws ParseException {
+		int first = NIL;
+		int last = NIL;
+
+		while (kind[pos] != closer) {
+			int k = kind[pos];
+
+			if (k != LBRACE && k != IDENT && k != IF && k != WHILE && k != PRINT)
+				throw error();
+
+			int n = Statement();
+			last = first == NIL ? (first = n) : link(last, n);
+		}
+
+		return first;
+	}
+
+	private int Statement() throws ParseException {
+		int t = pos;
+
+		switch (kind[pos]) {
+			case LBRACE: {
+				pos++;
+				int body = Statements(RBRACE);
+				pos++;
+				return ast.add(FlatAst.BLOCK, NIL, t, body);
+			}
+
+			case IDENT:
+				if (peek(1) == ASSIGN) {
+					int name = spelling[pos];
+					pos += 2;
+					int e = Expression();
+					expect(SEMICOLON);
+					return ast.add(FlatAst.ASSIGN, name, t, e);
+				}
+				if (peek(1) == LSQPAREN) {
+					int name = spelling[pos];
+					pos += 2;
+					int index = Expression();
+					expect(RSQPAREN);
+					expect(ASSIGN);
+					link(index, Expression());
+					expect(SEMICOLON);
+					return ast.add(FlatAst.ARRAY_ASSIGN, name, t, index);
+				}
+				throw error();
+
+			case IF: {
+				pos++;
+				expect(LPAREN);
+				int cond = Expression();
+				expect(RPAREN);
+				int then = link(cond, Statement());
+				expect(ELSE);
+				link(then, Statement());
+				return ast.add(FlatAst.IF, NIL, t, cond);
+			}
+
+			case WHILE: {
+				pos++;
+				expect(LPAREN);
+				int cond = Expression();
+				expect(RPAREN);
+				link(cond, Statement());
+				return ast.add(FlatAst.WHILE, NIL, t, cond);
+			}
+
+			case PRINT: {
+				pos++;
+				expect(LPAREN);
+				int e = Expression();
+				expect(RPAREN);
+				expect(SEMICOLON);
+				return ast.add(FlatAst.PRINT, NIL, t, e);
+			}
+
+			default:
+				throw error();
+		}
+	}
+
+	// Every binary form starts with a PrimaryExpression, so parse that
+	// first and let the token after it pick the production
+	private int Expression() throws ParseException {
+		int lhs = PrimaryExpression();
+		int t = ast.token[lhs];
+		int k;
+
+		switch (kind[pos]) {
+			case AND: k = FlatAst.AND; break;
+			case LT: k = FlatAst.LT; break;
+			case PLUS: k = FlatAst.PLUS; break;
+			case MINUS: k = FlatAst.MINUS; break;
+			case TIMES: k = FlatAst.TIMES; break;
+
+			case LSQPAREN:
+				pos++;
+				link(lhs, PrimaryExpression());
+				expect(RSQPAREN);
+				return ast.add(FlatAst.ARRAY_LOOKUP, NIL, t, lhs);
+
+			case DOT:
+				if (peek(1) == LENGTH) {
+					pos += 2;
+					return ast.add(FlatAst.ARRAY_LENGTH, NIL, t, lhs);
+				}
+				if (peek(1) == IDENT && peek(2) == LPAREN) {
+					pos++;
+					int name = identifier();
+					pos++;
+					if (kind[pos] != RPAREN)
+						ExpressionList(lhs);
+					expect(RPAREN);
+					return ast.add(FlatAst.CALL, name, t, lhs);
+				}
+
+				// The caller reports the dot
+				return lhs;
+
+			default:
+				return lhs;
+		}
+
+		pos++;
+		link(lhs, PrimaryExpression());
+		return ast.add(k, NIL, t, lhs);
+	}
+
+	// The arguments, chained after the receiver
+	private void ExpressionList(int receiver) throws ParseException {
+		int last = link(receiver, Expression());
+
+		while (kind[pos] == COMMA) {
+			pos++;
+			last = link(last, Expression());
+		}
+	}
+
+	private int PrimaryExpression() throws ParseException {
+		int t = pos;
+
+		switch (kind[pos]) {
+			case NUMBER:
+				pos++;
+				return ast.add(FlatAst.INT_LITERAL, spelling[t], t);
+
+			case TRUE:
+				pos++;
+				return ast.add(FlatAst.TRUE, NIL, t);
+
+			case FALSE:
+				pos++;
+				return ast.add(FlatAst.FALSE, NIL, t);
+
+			case IDENT:
+				return ast.add(FlatAst.IDENT, identifier(), t);
+
+			case THIS:
+				pos++;
+				return ast.add(FlatAst.THIS, NIL, t);
+
+			case NEW:
+				if (peek(1) == INTEGER) {
+					pos += 2;
+					expect(LSQPAREN);
+					int e = Expression();
+					expect(RSQPAREN);
+					return ast.add(FlatAst.NEW_ARRAY, NIL, t, e);
+				} else {
+					pos++;
+					int name = identifier();
+					expect(LPAREN);
+					expect(RPAREN);
+					return ast.add(FlatAst.NEW, name, t);
+				}
+
+			case NOT: {
+				pos++;
+				int e = Expression();
+				return ast.add(FlatAst.NOT, NIL, t, e);
+			}
+
+			case LPAREN: {
+				pos++;
+				int e = Expression();
+				expect(RPAREN);
+				return e;
+			}
+
+			default:
+				throw error();
+		}
+	}
+}
@@ -0,0 +1,197 @@
+import syntaxtree.*;
+import xxx.*;
+
+import java.io.ByteArrayInputStream;
+import java.lang.ref.Reference;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Random;
+
+/*
+ * Parse throughput of MiniJavaParser against FastParser and FlatParser,
+ * and of type checking the syntaxtree against type checking a FlatAst:
+ *
+ *   java ParseBench [megabytes]
+ *   java ParseBench file.java ...
+ *
+ * Without files the input is a generated program of about the given size.
+ * Each line reports the best of five runs after warming up, and the bytes
+ * the benchmark thread allocated per source byte during those runs. The
+ * heap each tree keeps alive is measured after a full collection.
+ */
+public class ParseBench {
+
+	interface Run {
+		void run() throws Exception;
+	}
+
+	interface Build {
+		Object build() throws Exception;
+	}
+
+	private static com.sun.management.ThreadMXBean threads =
+			(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	public static void main(String[] args) throws Exception {
+		if (args.length > 0 && !args[0].matches("\\d+")) {
+			for (String file : args)
+				bench(file, Files.readAllBytes(Paths.get(file)));
+			return;
+		}
+
+		int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+		bench("generated", generate(megabytes << 20, new Random(132)));
+	}
+
+	// MiniJavaParser may be static, and then has to be started again
+	// rather than constructed a second time
+	private static MiniJavaParser parser = null;
+
+	private static Node parse(byte[] input) throws ParseException {
+		ByteArrayInputStream in = new ByteArrayInputStream(input);
+
+		if (parser == null)
+			parser = new MiniJavaParser(in);
+		else
+			parser.ReInit(in);
+
+		return parser.Goal();
+	}
+
+	static void bench(String name, byte[] input) throws Exception {
+		System.out.printf("%s: %.1f MB\n", name, input.length / 1e6);
+
+		measure("MiniJavaParser", input.length, () -> parse(input));
+		measure("FastParser", input.length, () -> new FastParser(input).Goal());
+		measure("FlatParser", input.length, () -> new FlatParser(input).Goal());
+
+		// Parse, build the symbol table and type-check
+		measure("syntaxtree check", input.length, () -> check(new FastParser(input).Goal()));
+		measure("FlatAst check", input.length, () -> check(new FlatParser(input).Goal()));
+
+		retained("syntaxtree", () -> new FastParser(input).Goal());
+		retained("FlatAst", () -> new FlatParser(input).Goal());
+		System.out.println();
+	}
+
+	static void check(Goal root) {
+		SymbolTable st = new SymbolTable();
+		if (root.accept(st) == null || root.accept(new XTypeCheck(st)) == null)
+			throw new IllegalStateException("Type error");
+	}
+
+	static void check(FlatAst ast) {
+		SymbolTable st = new SymbolTable();
+		if (st.build(ast) == null || new FlatTypeCheck(st, ast).check() == null)
+			throw new IllegalStateException("Type error");
+	}
+
+	static void measure(String name, int bytes, Run run) throws Exception {
+		// Warm up, then time the best of a few runs
+		for (int i = 0; i < 3; i++)
+			run.run();
+
+		long id = Thread.currentThread().getId();
+		long allocated = threads.getThreadAllocatedBytes(id);
+		long best = Long.MAX_VALUE;
+
+		for (int i = 0; i < 5; i++) {
+			long start = System.nanoTime();
+			run.run();
+			best = Math.min(best, System.nanoTime() - start);
+		}
+
+		allocated = threads.getThreadAllocatedBytes(id) - allocated;
+
+		System.out.printf("  %-16s %8.1f MB/s %8.1f ms %8.1f B/byte\n", name,
+				bytes / (best / 1e3), best / 1e6, allocated / 5.0 / bytes);
+	}
+
+	static void retained(String name, Build build) throws Exception {
+		Runtime rt = Runtime.getRuntime();
+
+		System.gc();
+		long before = rt.totalMemory() - rt.freeMemory();
+
+		Object tree = build.build();
+
+		System.gc();
+		long after = rt.totalMemory() - rt.freeMemory();
+
+		System.out.printf("  %-16s %8.1f MB retained\n", name, (after - before) / 1e6);
+		Reference.reachabilityFence(tree);
+	}
+
+	/*
+	 * Input generation
+	 */
+
+	// A well-typed program of classes with fields, methods and statements of every kind
+	static byte[] generate(int size, Random r) {
+		StringBuilder sb = new StringBuilder(size + 4096);
+
+		sb.append("class Main {\n\tpublic static void main(String[] a) {\n");
+		sb.append("\t\tSystem.out.println(new C0().m0(10, new int[10], new C0()));\n\t}\n}\n");
+
+		for (int c = 0; sb.length() < size; c++) {
+			sb.append("\n// Class ").append(c).append('\n');
+			sb.append("class C").append(c);
+			if (c > 0 && r.nextBoolean())
+				sb.append(" extends C").append(r.nextInt(c));
+			sb.append(" {\n\tint f;\n\tint[] g;\n\tboolean b;\n");
+
+			for (int m = 0; m < 8; m++) {
+				sb.append("\n\t/* Method ").append(m).append(" */\n");
+				sb.append("\tpublic int m").append(m).append("(int x, int[] y, C0 z) {\n");
+				sb.append("\t\tint i;\n\t\tint s;\n\t\tC0 o;\n\t\ti = 0;\n\t\ts = 0;\n");
+
+				for (int k = 0; k < 4; k++)
+					statement(sb, r, 2);
+
+				sb.append("\t\treturn s;\n\t}\n");
+			}
+
+			sb.append("}\n");
+		}
+
+		return sb.toString().getBytes();
+	}
+
+	static void statement(StringBuilder sb, Random r, int indent) {
+		for (int i = 0; i < indent; i++)
+			sb.append('\t');
+
+		switch (r.nextInt(6)) {
+			case 0:
+				sb.append("while (i < x) {\n");
+				statement(sb, r, indent + 1);
+				for (int i = 0; i <= indent; i++)
+					sb.append('\t');
+				sb.append("i = i + 1;\n");
+				for (int i = 0; i < indent; i++)
+					sb.append('\t');
+				sb.append("}\n");
+				break;
+
+			case 1:
+				sb.append("if (b && !(s < x)) s = s - 1; else s = s * 2;\n");
+				break;
+
+			case 2:
+				sb.append("y[i] = s + ").append(r.nextInt(1000)).append(";\n");
+				break;
+
+			case 3:
+				sb.append("o = new C0();\n");
+				break;
+
+			case 4:
+				sb.append("s = z.m").append(r.nextInt(8)).append("(s + f, new int[x], z);\n");
+				break;
+
+			default:
+				sb.append("System.out.println(y[s]);\n");
+		}
+	}
+}
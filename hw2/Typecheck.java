@@ -2,34 +2,119 @@ import syntaxtree.*;
 import visitor.*;
 import xxx.*;
 
+import java.io.*;
+import java.util.*;
+
 public class Typecheck {
 
-   public static void main(String [] args) {
+	private static boolean parallel = false;
+	private static boolean fast = false;
+	private static boolean flat = false;
+
+	// The server's classes from the last check of each file
+	private static Map<String, ClassCache> caches = CompileServer.perFile();
+
+   public static void main(String [] args) throws IOException, InterruptedException {
+		boolean server = false;
+
+		for (String arg : args) {
+			// -parallel checks the method bodies on a fork-join pool
+			if (arg.equals("-parallel"))
+				parallel = true;
+
+			// -fast parses with FastParser instead of MiniJavaParser
+			if (arg.equals("-fast"))
+				fast = true;
+
+			// -flat parses into a FlatAst and checks that instead
+			if (arg.equals("-flat"))
+				flat = true;
+
+			// -server answers framed requests, see CompileServer
+			if (arg.equals("-server"))
+				server = true;
+		}
+
+		// The flat passes run on one thread only
+		if (flat && parallel) {
+			System.err.println("-flat cannot be combined with -parallel");
+			System.exit(1);
+		}
+
+		if (server) {
+			// MiniJavaParser may be static, see CompileServer
+			fast = true;
+			CompileServer.serve((name, input, out) ->
+					check(new ByteArrayInputStream(input), out, caches.computeIfAbsent(name, k -> new ClassCache())),
+					System.in, System.out);
+			return;
+		}
+
+		int status = check(System.in, System.out, null);
+		if (status != 0)
+			System.exit(status);
+   }
+
+	// Print whether the program read from in type checks; with a cache,
+	// only the classes that changed are checked again
+	static int check(InputStream in, PrintStream out, ClassCache cache) {
+		if (flat)
+			return checkFlat(in, out);
+
 		Node root = null;
 		try {
-			root = new MiniJavaParser(System.in).Goal();
+			root = fast ? new FastParser(in).Goal() : new MiniJavaParser(in).Goal();
 			//System.out.println("Program parsed successfully");
 		}
 		catch (ParseException e) {
-			System.out.println(e.toString());
-			System.exit(1);
+			out.println(e.toString());
+			return 1;
 		}
 
 		// Build symbol table
 		SymbolTable st = new SymbolTable();
 		if (root.accept(st) == null) {
-			System.out.println("Type error");
-			System.exit(1);
+			out.println("Type error");
+			return 1;
+		}
+
+		// Type-check
+		boolean ok;
+		if (cache != null) {
+			ok = cache.check((Goal)root, st, parallel);
 		} else {
-			// Type-check
-			if (root.accept(new XTypeCheck(st)) == null) {
-				System.out.println("Type error");
-				System.exit(1);
-			} else {
-				System.out.println("Program type checked successfully");
-			}
-		}
-     
-   }
+			XTypeCheck tc = new XTypeCheck(st);
+			ok = (parallel ? tc.checkParallel((Goal)root) : root.accept(tc)) != null;
+		}
+
+		if (!ok) {
+			out.println("Type error");
+			return 1;
+		}
+
+		out.println("Program type checked successfully");
+		return 0;
+	}
+
+	private static int checkFlat(InputStream in, PrintStream out) {
+		FlatAst ast = null;
+		try {
+			ast = new FlatParser(in).Goal();
+		}
+		catch (ParseException e) {
+			out.println(e.toString());
+			return 1;
+		}
+
+		// Build symbol table, then type-check
+		SymbolTable st = new SymbolTable();
+		if (st.build(ast) == null || new FlatTypeCheck(st, ast).check() == null) {
+			out.println("Type error");
+			return 1;
+		}
+
+		out.println("Program type checked successfully");
+		return 0;
+	}
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,27 @@
+package xxx;
+
+public class Binding {
+
+	public enum Kind {
+		LOCAL, PARAM, FIELD
+	}
+
+	public Kind kind;
+	public XType type;
+
+	// For a field, the class that declares it
+	public ClassType owner;
+
+	// Index among the method's locals or params, or for a field its
+	// offset in the object: the fields of the root class first, then
+	// those of each class below it, so a field has the same offset in
+	// every subclass
+	public int slot;
+
+	public Binding(Kind k, XType t, ClassType o, int s) {
+		kind = k;
+		type = t;
+		owner = o;
+		slot = s;
+	}
+}
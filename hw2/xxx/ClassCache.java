@@ -0,0 +1,107 @@
+package xxx;
+
+import syntaxtree.*;
+import visitor.DepthFirstVisitor;
+
+import java.util.*;
+
+public class ClassCache {
+
+	// The symbol table of the last program accepted, less method locals,
+	// and the tokens of its classes by name
+	private String shape = null;
+	private HashMap<String, String> texts = new HashMap<String, String>();
+
+	// Type-check root, whose symbol table st holds. A class is not checked
+	// again if its tokens and the rest of the symbol table are what they
+	// were in the last program accepted
+	public synchronized boolean check(Goal root, SymbolTable st, boolean parallel) {
+		String newShape = shape(st);
+		boolean reuse = newShape.equals(shape);
+
+		// The main class, then the others in source order
+		ArrayList<Node> nodes = new ArrayList<Node>();
+		ArrayList<String> names = new ArrayList<String>();
+
+		nodes.add(root.f0);
+		names.add(root.f0.f1.f0.toString());
+
+		for (Node node : root.f1.nodes) {
+			Node decl = ((TypeDeclaration)node).f0.choice;
+			nodes.add(node);
+			names.add(decl instanceof ClassDeclaration
+					? ((ClassDeclaration)decl).f1.f0.toString()
+					: ((ClassExtendsDeclaration)decl).f1.f0.toString());
+		}
+
+		XTypeCheck tc = new XTypeCheck(st);
+
+		if (!reuse) {
+			XType ret = parallel ? tc.checkParallel(root) : root.accept(tc);
+			if (ret == null)
+				return false;
+		}
+
+		HashMap<String, String> next = new HashMap<String, String>();
+
+		for (int i = 0; i < nodes.size(); i++) {
+			String text = text(nodes.get(i));
+
+			if (reuse && !text.equals(texts.get(names.get(i))) && nodes.get(i).accept(tc) == null)
+				return false;
+
+			next.put(names.get(i), text);
+		}
+
+		shape = newShape;
+		texts = next;
+
+		return true;
+	}
+
+	// Every token of a class, so formatting and comments do not count
+	private static String text(Node n) {
+		final StringBuilder sb = new StringBuilder();
+
+		n.accept(new DepthFirstVisitor() {
+			public void visit(NodeToken token) {
+				sb.append(token.tokenImage).append(' ');
+			}
+		});
+
+		return sb.toString();
+	}
+
+	// Every class with its parent, fields and method signatures
+	private static String shape(SymbolTable st) {
+		StringBuilder sb = new StringBuilder();
+
+		for (ClassType ct : st.classes.values()) {
+			sb.append(ct.name);
+			if (ct.parent != null)
+				sb.append(" extends ").append(ct.parent.name);
+			sb.append(" {");
+
+			appendVars(sb, st, ct.vars);
+
+			for (MethodType mt : ct.methods.values()) {
+				sb.append(' ').append(typeName(mt.returnType)).append(' ').append(mt.name).append('(');
+				appendVars(sb, st, mt.params);
+				sb.append(')');
+			}
+
+			sb.append(" }\n");
+		}
+
+		return sb.toString();
+	}
+
+	private static void appendVars(StringBuilder sb, SymbolTable st, SymbolMap<XType> vars) {
+		for (int i = 0; i < vars.size(); i++)
+			sb.append(' ').append(typeName(vars.value(i))).append(' ').append(st.symbols.name(vars.id(i))).append(';');
+	}
+
+	private static String typeName(XType t) {
+		return t.type == XType.TYPE.ID ? t.classType.name : t.type.toString();
+	}
+}
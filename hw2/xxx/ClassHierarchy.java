@@ -0,0 +1,68 @@
+package xxx;
+
+import java.util.*;
+
+public class ClassHierarchy {
+
+	// Classes in DFS preorder; a class's subclasses are the ones
+	// numbered from its pre up to its post
+	public ClassType[] preorder;
+
+	// Number the classes once the hierarchy is known to be acyclic
+	public ClassHierarchy(Collection<ClassType> classes) {
+		HashMap<ClassType, ArrayList<ClassType>> children = new HashMap<ClassType, ArrayList<ClassType>>();
+		ArrayList<ClassType> roots = new ArrayList<ClassType>();
+
+		for (ClassType ct : classes) {
+			if (ct.parent == null) {
+				roots.add(ct);
+			} else {
+				ArrayList<ClassType> list = children.get(ct.parent);
+				if (list == null) {
+					list = new ArrayList<ClassType>();
+					children.put(ct.parent, list);
+				}
+				list.add(ct);
+			}
+		}
+
+		preorder = new ClassType[classes.size()];
+		int count = 0;
+
+		// Explicit stack, so long inheritance chains cannot overflow
+		ArrayDeque<ClassType> stack = new ArrayDeque<ClassType>();
+		ArrayDeque<Iterator<ClassType>> pending = new ArrayDeque<Iterator<ClassType>>();
+
+		for (ClassType root : roots) {
+			root.pre = count;
+			preorder[count++] = root;
+			stack.push(root);
+			pending.push(childrenOf(children, root));
+
+			while (!stack.isEmpty()) {
+				Iterator<ClassType> itr = pending.peek();
+
+				if (itr.hasNext()) {
+					ClassType ct = itr.next();
+					ct.pre = count;
+					preorder[count++] = ct;
+					stack.push(ct);
+					pending.push(childrenOf(children, ct));
+				} else {
+					// All subclasses are numbered
+					stack.pop().post = count - 1;
+					pending.pop();
+				}
+			}
+		}
+	}
+
+	private static Iterator<ClassType> childrenOf(HashMap<ClassType, ArrayList<ClassType>> children, ClassType ct) {
+		ArrayList<ClassType> list = children.get(ct);
+		return list == null ? Collections.<ClassType>emptyIterator() : list.iterator();
+	}
+
+	public boolean isSubclass(ClassType child, ClassType parent) {
+		return parent.pre <= child.pre && child.pre <= parent.post;
+	}
+}
@@ -0,0 +1,17 @@
+package xxx;
+
+public class MethodEntry {
+
+	public MethodType methodType;
+
+	// The class the method is declared in, and its index in the vmt of
+	// every class that has it; an override keeps the index it replaces
+	public ClassType definingClass;
+	public int slot;
+
+	public MethodEntry(MethodType mt, ClassType ct, int s) {
+		methodType = mt;
+		definingClass = ct;
+		slot = s;
+	}
+}
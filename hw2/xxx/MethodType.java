@@ -1,20 +1,21 @@
 package xxx;
 
-import java.util.*;
-
 public class MethodType {
 
-	public LinkedHashMap<String, XType> params;
-	public LinkedHashMap<String, XType> vars;
+	// Keyed by symbol id, see Symbols
+	public SymbolMap<XType> params;
+	public SymbolMap<XType> vars;
 
 	public String name;
+	public int id;
 	public XType returnType;
 
-	public MethodType(String n, XType rt) {
+	public MethodType(String n, int i, XType rt) {
 		name = n;
+		id = i;
 		returnType = rt;
 
-		params = new LinkedHashMap<String, XType>();
-		vars = new LinkedHashMap<String, XType>();
+		params = new SymbolMap<XType>();
+		vars = new SymbolMap<XType>();
 	}
 }
\ No newline at end of file
@@ -11,22 +11,32 @@ public class SymbolTable extends GJNoArguDepthFirst<Boolean> {
 	public MethodType scopeMethod = null;
 	public HashMap<String, ClassType> classes = new HashMap<String, ClassType>();
 
+	// Every identifier declared in the program, interned once
+	public Symbols symbols = new Symbols();
+
+	// Set by visit(Goal) once the hierarchy has been validated
+	public ArrayList<ClassType> classOrder = null;
+	public ClassHierarchy hierarchy = null;
+
 	public boolean isSubclass(XType child, XType parent) {
-		if (child.type == XType.TYPE.ID && parent.type == XType.TYPE.ID) {
-			while (!child.equals(parent)) {
+		if (child.type == XType.TYPE.ID && parent.type == XType.TYPE.ID)
+			return isSubclass(child.classType, parent.classType);
 
-				ClassType ct = classes.get(child.name);
+		return child == parent;
+	}
 
-				if (ct.parent == null)
-					return false;
+	public boolean isSubclass(ClassType child, ClassType parent) {
+		if (hierarchy != null)
+			return hierarchy.isSubclass(child, parent);
 
-				child = new XType(XType.TYPE.ID, ct.parent.name);
-			}
+		while (child != null) {
+			if (child == parent)
+				return true;
 
-			return true;
-		} 
+			child = child.parent;
+		}
 
-		return child.equals(parent);
+		return false;
 	}
 
 	public MethodType getMethod(String classId, String methodId) {
@@ -35,22 +45,11 @@ public class SymbolTable extends GJNoArguDepthFirst<Boolean> {
 		if (ct == null)
 			return null;
 
-		MethodType mt = ct.methods.get(methodId);
-		if (mt != null)
-			return mt;
-
-		ClassType parent = ct.parent;
-
-		while (parent != null) {
-
-			mt = parent.methods.get(methodId);
-			if (mt != null)
-				return mt;
-
-			parent = parent.parent;
-		}
+		MethodEntry entry = ct.methodTable.get(symbols.lookup(methodId));
+		if (entry == null)
+			return null;
 
-		return null;
+		return entry.methodType;
 	}
 
 	public XType getType(Type t) {
@@ -66,31 +65,34 @@ public class SymbolTable extends GJNoArguDepthFirst<Boolean> {
 				return XType.INTEGER;
 
 			case 3:
-				String className = ((Identifier)t.f0.choice).f0.toString();
-				XType type = new XType(XType.TYPE.ID, className);
-
-				// Add identifier to table if 
-				// does not exist yet
-				if (classes.get(className) == null) {
-					ClassType ct = new ClassType(className);
-					ct.found = false;
-
-					// Add identifier to table
-					classes.put(className, ct);
-				}
-				return type;
+				return getClassType(((Identifier)t.f0.choice).f0.toString());
 
 			default:
 				return null;
 		}
 	}
 
+	public XType getClassType(String className) {
+		ClassType ct = classes.get(className);
+
+		// Add identifier to table if 
+		// does not exist yet
+		if (ct == null) {
+			ct = new ClassType(className, symbols.intern(className));
+			ct.found = false;
+
+			// Add identifier to table
+			classes.put(className, ct);
+		}
+		return ct.type;
+	}
+
 	public ClassType addClass(String identifier) {
 		ClassType ct = classes.get(identifier);
 
 		if (ct == null) {
 			// Id has not been added to the table, so add it
-			ct = new ClassType(identifier);
+			ct = new ClassType(identifier, symbols.intern(identifier));
 			classes.put(identifier, ct);
 		} else if (!ct.found) {
 			// The class is now initialized
@@ -112,7 +114,7 @@ public class SymbolTable extends GJNoArguDepthFirst<Boolean> {
 		// Add parent class to table
 		ClassType pct = classes.get(parentIdentifier);
 		if (pct == null) {
-			pct = new ClassType(parentIdentifier);
+			pct = new ClassType(parentIdentifier, symbols.intern(parentIdentifier));
 			pct.found = false;
 
 			classes.put(parentIdentifier, pct);
@@ -124,22 +126,23 @@ public class SymbolTable extends GJNoArguDepthFirst<Boolean> {
 	}
 
 	public MethodType addMethod(String identifier, XType type) {
-		MethodType mt = scopeClass.methods.get(identifier);
+		int id = symbols.intern(identifier);
 
-		if (mt != null)
+		if (scopeClass.methods.containsKey(id))
 			return null;
 
-		mt = new MethodType(identifier, type);
-		scopeClass.methods.put(identifier, mt);
+		MethodType mt = new MethodType(identifier, id, type);
+		scopeClass.methods.put(id, mt);
 
 		return mt;
 	}
 
 	public XType addVar(String identifier, XType type) {
+		int id = symbols.intern(identifier);
 
 		if (scopeMethod != null) {
-			XType t = scopeMethod.vars.get(identifier);
-			XType t2 = scopeMethod.params.get(identifier);
+			XType t = scopeMethod.vars.get(id);
+			XType t2 = scopeMethod.params.get(id);
 
 			if (t2 != null)
 				return null;
@@ -147,27 +150,26 @@ public class SymbolTable extends GJNoArguDepthFirst<Boolean> {
 			if (t != null)
 				return null;
 
-			scopeMethod.vars.put(identifier, type);
+			scopeMethod.vars.put(id, type);
 			return type;
 		} 
 
-		XType t = scopeClass.vars.get(identifier);
+		XType t = scopeClass.vars.get(id);
 
 		if (t != null)
 			return null;
 
-		scopeClass.vars.put(identifier, type);
+		scopeClass.vars.put(id, type);
 		return type;
 	}
 
 	public XType addParam(String identifier, XType type) {
+		int id = symbols.intern(identifier);
 
-		XType t = scopeMethod.params.get(identifier);
-
-		if (t != null)
+		if (scopeMethod.params.containsKey(id))
 			return null;
 
-		scopeMethod.params.put(identifier, type);
+		scopeMethod.params.put(id, type);
 		return type;
 	}
 
@@ -201,61 +203,94 @@ public class SymbolTable extends GJNoArguDepthFirst<Boolean> {
 	     return true;
 	}
 
-	public boolean hasCycles() {
+	private static final int VISITING = 1;
+	private static final int DONE = 2;
 
-		for (ClassType ct : classes.values()) {
+	// Three-color DFS over the parent links: return the classes with every
+	// parent before its subclasses, or null if the hierarchy has a cycle
+	public ArrayList<ClassType> topologicalOrder() {
+		ArrayList<ClassType> order = new ArrayList<ClassType>(classes.size());
+		HashMap<ClassType, Integer> color = new HashMap<ClassType, Integer>();
+		ArrayList<ClassType> path = new ArrayList<ClassType>();
 
-			int i = 0;
-			int numClasses = classes.size() - 1;
-			ClassType parent = ct.parent;
+		for (ClassType ct : classes.values()) {
 
-			while (parent != null && i < numClasses) {
-				if (ct == parent)
-					return true;
+			// Follow the parents until a class that has already been seen
+			ClassType c = ct;
+			while (c != null && !color.containsKey(c)) {
+				color.put(c, VISITING);
+				path.add(c);
+				c = c.parent;
+			}
 
-				parent = parent.parent;
+			// Still on the current path
+			if (c != null && color.get(c) == VISITING)
+				return null;
 
-				i++;
+			for (int i = path.size() - 1; i >= 0; i--) {
+				color.put(path.get(i), DONE);
+				order.add(path.get(i));
 			}
 
+			path.clear();
 		}
 
-		return false;
+		return order;
 	}
 
-	public boolean hasOverload() {
-
-		for (ClassType ct : classes.values()) {
+	// Give every class an immutable table of its own and inherited
+	// methods, copying the parent's table in classOrder
+	public void buildMethodTables() {
+		for (ClassType ct : classOrder) {
+			SymbolMap<MethodEntry> table;
+
+			if (ct.parent == null)
+				table = new SymbolMap<MethodEntry>();
+			else
+				table = new SymbolMap<MethodEntry>(ct.parent.methodTable);
+
+			// The parent's methods keep their slots, and a replaced entry
+			// keeps its position, so the slot is the position in the table
+			for (MethodType mt : ct.methods.values()) {
+				int slot = table.containsKey(mt.id) ? table.indexOf(mt.id) : table.size();
+				table.put(mt.id, new MethodEntry(mt, ct, slot));
+			}
 
-			ClassType parent = ct.parent;
+			ct.methodTable = table.freeze();
+		}
+	}
 
-			while (parent != null) {
+	// Check every method against the one it overrides
+	public boolean hasOverload() {
+		for (ClassType ct : classOrder) {
+			if (ct.parent == null)
+				continue;
 
-				for (MethodType mt : ct.methods.values()) {
-					MethodType pmt = parent.methods.get(mt.name);
-					if (pmt != null) {
-						// There is a method with the same name in a class'
-						// parent or parent's parent and so forth
-						Iterator<XType> itr = pmt.params.values().iterator();
+			for (MethodType mt : ct.methods.values()) {
+				MethodEntry entry = ct.parent.methodTable.get(mt.id);
 
-						for (XType t : mt.params.values()) {
-							if (!itr.hasNext() || !t.equals(itr.next()))
-								return true;
-						}
+				// There is a method with the same name in a class'
+				// parent or parent's parent and so forth
+				if (entry != null && !sameSignature(mt, entry.methodType))
+					return true;
+			}
+		}
 
-						if (itr.hasNext())
-							return true;
+		return false;
+	}
 
-						if ( !mt.returnType.equals(pmt.returnType) )
-							return true;
-					}
-				}
+	private boolean sameSignature(MethodType mt, MethodType pmt) {
+		Iterator<XType> itr = pmt.params.values().iterator();
 
-				parent = parent.parent;
-			}			
+		for (XType t : mt.params.values()) {
+			if (!itr.hasNext() || t != itr.next())
+				return false;
 		}
 
-		return false;
+		if (itr.hasNext())
+			return false;
+
+		return mt.returnType == pmt.returnType;
 	}
 
 	@Override
@@ -266,6 +301,11 @@ public class SymbolTable extends GJNoArguDepthFirst<Boolean> {
 		if (n.f1.accept(this) == null)
 			return null;
 
+		return finish();
+	}
+
+	// Validate the hierarchy once every class has been declared
+	private Boolean finish() {
 		// Check if all classes are initialized
 		for (ClassType ct : classes.values()) {
 			if ( !ct.found ) {
@@ -273,15 +313,36 @@ public class SymbolTable extends GJNoArguDepthFirst<Boolean> {
 			}
 		}
 
-		if (hasCycles())
+		classOrder = topologicalOrder();
+		if (classOrder == null)
 			return null;
 
+		buildMethodTables();
+
 		if (hasOverload())
 			return null;
 
+		hierarchy = new ClassHierarchy(classes.values());
+
+		freeze();
+
 		return true;
 	}
 
+	// No scope table changes after the symbol table is built, so the
+	// type checker can read it from several threads
+	public void freeze() {
+		for (ClassType ct : classes.values()) {
+			ct.vars.freeze();
+			ct.methods.freeze();
+
+			for (MethodType mt : ct.methods.values()) {
+				mt.params.freeze();
+				mt.vars.freeze();
+			}
+		}
+	}
+
 	@Override
 	public Boolean visit(MainClass n) {
 
@@ -428,24 +489,147 @@ public class SymbolTable extends GJNoArguDepthFirst<Boolean> {
 		// FormalParameter
 		return n.f1.accept(this);
 	}
-}
 
+	// *** Flat AST ***
+
+	// The same table visit(Goal) builds, from a FlatAst; the tree's
+	// symbols become this table's, so its ids can be used directly
+	public Boolean build(FlatAst ast) {
+		symbols = ast.symbols;
+
+		int main = ast.child[ast.root];
+		if (buildMainClass(ast, main) == null)
+			return null;
+
+		for (int c = ast.next[main]; c != FlatAst.NIL; c = ast.next[c]) {
+			if (buildClass(ast, c) == null)
+				return null;
+		}
+
+		return finish();
+	}
+
+	private XType getType(FlatAst ast, int t) {
+		switch (ast.kind[t]) {
+			case FlatAst.TYPE_ARRAY:
+				return XType.ARRAY;
+
+			case FlatAst.TYPE_BOOLEAN:
+				return XType.BOOLEAN;
+
+			case FlatAst.TYPE_INT:
+				return XType.INTEGER;
+
+			case FlatAst.TYPE_ID:
+				return getClassType(symbols.name(ast.value[t]));
+
+			default:
+				return null;
+		}
+	}
+
+	private Boolean buildMainClass(FlatAst ast, int n) {
+		// Add class to table
+		ClassType ct = addClass(symbols.name(ast.value[n]));
+
+		if (ct == null)
+			return null;
 
+		// Begin class scope
+		scopeClass = ct;
+
+		MethodType mt = addMethod("main", XType.OTHER);
+
+		if (mt == null)
+			return null;
+
+		// Begin method scope
+		scopeMethod = mt;
+
+		// Add params to table
+		int c = ast.child[n];
+		if (addParam(symbols.name(ast.value[c]), XType.OTHER) == null)
+			return null;
 
+		// VarDeclaration
+		for (c = ast.next[c]; c != FlatAst.NIL && ast.kind[c] == FlatAst.VAR_DECL; c = ast.next[c]) {
+			if (addVar(symbols.name(ast.value[c]), getType(ast, ast.child[c])) == null)
+				return null;
+		}
 
+		// End method scope
+		scopeMethod = null;
 
+		// End class scope
+		scopeClass = null;
 
+		return true;
+	}
 
+	private Boolean buildClass(FlatAst ast, int n) {
+		int c = ast.child[n];
+		ClassType ct;
 
+		// Add class to table
+		if (ast.kind[n] == FlatAst.CLASS_EXTENDS) {
+			ct = addClass(symbols.name(ast.value[n]), symbols.name(ast.value[c]));
+			c = ast.next[c];
+		} else {
+			ct = addClass(symbols.name(ast.value[n]));
+		}
 
+		if (ct == null)
+			return null;
 
+		// Begin class scope
+		scopeClass = ct;
 
+		// VarDeclaration and MethodDeclaration
+		for (; c != FlatAst.NIL; c = ast.next[c]) {
+			if (ast.kind[c] == FlatAst.VAR_DECL) {
+				if (addVar(symbols.name(ast.value[c]), getType(ast, ast.child[c])) == null)
+					return null;
+			} else if (buildMethod(ast, c) == null) {
+				return null;
+			}
+		}
 
+		// End class scope
+		scopeClass = null;
 
+		return true;
+	}
 
+	private Boolean buildMethod(FlatAst ast, int n) {
+		int c = ast.child[n];
 
+		// Add method to table
+		MethodType mt = addMethod(symbols.name(ast.value[n]), getType(ast, c));
 
+		if (mt == null)
+			return null;
 
+		// Begin method scope
+		scopeMethod = mt;
 
+		// FormalParameterList and VarDeclaration
+		for (c = ast.next[c]; c != FlatAst.NIL; c = ast.next[c]) {
+			int k = ast.kind[c];
+
+			if (k == FlatAst.PARAM) {
+				if (addParam(symbols.name(ast.value[c]), getType(ast, ast.child[c])) == null)
+					return null;
+			} else if (k == FlatAst.VAR_DECL) {
+				if (addVar(symbols.name(ast.value[c]), getType(ast, ast.child[c])) == null)
+					return null;
+			} else {
+				break;
+			}
+		}
 
+		// End method scope
+		scopeMethod = null;
 
+		return true;
+	}
+}
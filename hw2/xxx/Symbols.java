@@ -0,0 +1,70 @@
+package xxx;
+
+import java.util.*;
+
+public class Symbols {
+
+	// Every identifier is interned once into a dense id; names[id] maps it back.
+	// The table is open addressing on the string hash and holds id+1, 0 is empty
+	private String[] names = new String[64];
+	private int[] table = new int[128];
+	private int size = 0;
+
+	// Id of s, adding it to the pool if it is new
+	public int intern(String s) {
+		int h = slot(s);
+
+		if (table[h] != 0)
+			return table[h] - 1;
+
+		if (size == names.length)
+			names = Arrays.copyOf(names, size * 2);
+
+		names[size] = s;
+		table[h] = ++size;
+
+		if (size * 2 > table.length)
+			rehash();
+
+		return size - 1;
+	}
+
+	// Id of s, or -1 if it was never interned
+	public int lookup(String s) {
+		int h = slot(s);
+		return table[h] - 1;
+	}
+
+	public String name(int id) {
+		return names[id];
+	}
+
+	public int size() {
+		return size;
+	}
+
+	// The slot holding s, or the empty slot where it would go
+	private int slot(String s) {
+		int mask = table.length - 1;
+		int h = s.hashCode() & mask;
+
+		while (table[h] != 0 && !names[table[h] - 1].equals(s))
+			h = (h + 1) & mask;
+
+		return h;
+	}
+
+	private void rehash() {
+		table = new int[table.length * 2];
+		int mask = table.length - 1;
+
+		for (int id = 0; id < size; id++) {
+			int h = names[id].hashCode() & mask;
+
+			while (table[h] != 0)
+				h = (h + 1) & mask;
+
+			table[h] = id + 1;
+		}
+	}
+}
@@ -0,0 +1,36 @@
+package xxx;
+
+import syntaxtree.*;
+
+import java.util.*;
+
+public class TypeTable {
+
+	// Filled in by XTypeCheck: the type of every expression node
+	// and what every identifier used as a variable refers to
+	private IdentityHashMap<Node, XType> types = new IdentityHashMap<Node, XType>();
+	private IdentityHashMap<Identifier, Binding> bindings = new IdentityHashMap<Identifier, Binding>();
+
+	public void put(Node n, XType t) {
+		if (t != null)
+			types.put(n, t);
+	}
+
+	public XType typeOf(Node n) {
+		return types.get(n);
+	}
+
+	public void bind(Identifier n, Binding b) {
+		bindings.put(n, b);
+	}
+
+	public Binding bindingOf(Identifier n) {
+		return bindings.get(n);
+	}
+
+	// Add everything another table recorded
+	public void putAll(TypeTable t) {
+		types.putAll(t.types);
+		bindings.putAll(t.bindings);
+	}
+}
@@ -14,6 +14,10 @@ public class XType {
 	public String name;
 	public TYPE type;
 
+	// Class types are interned: each ClassType owns the only XType
+	// naming it, so they can be compared with == like the primitives
+	public ClassType classType = null;
+
 	public XType (TYPE t) {
 		type = t;
 		name = "";
@@ -46,4 +50,12 @@ public class XType {
 		return false;
 	}
 
+	@Override
+	public int hashCode() {
+		if (type == TYPE.ID)
+			return name.hashCode();
+
+		return type.hashCode();
+	}
+
 }
\ No newline at end of file
@@ -4,12 +4,20 @@ import syntaxtree.*;
 import visitor.GJNoArguDepthFirst;
 
 import java.util.*;
+import java.util.concurrent.*;
 
 public class XTypeCheck extends GJNoArguDepthFirst<XType> {
 
 	public boolean typeIdentifierScope = false;
 	public SymbolTable symbolTable;
 
+	// The checker keeps its own scope, so several can share one symbol table
+	private ClassType scopeClass = null;
+	private MethodType scopeMethod = null;
+
+	// Types and bindings found by this pass, for the translator
+	public TypeTable typeTable = new TypeTable();
+
 	public XTypeCheck (SymbolTable st) {
 		symbolTable = st;
 	}
@@ -57,21 +65,105 @@ public class XTypeCheck extends GJNoArguDepthFirst<XType> {
 		return n.f1.accept(this);	
 	}
 
+	// Methods checked by one task before it stops splitting its range
+	private static final int METHODS_PER_TASK = 16;
+
+	// Like visit(Goal), but each method body is checked by its own
+	// XTypeCheck on the common fork-join pool. The symbol table is frozen by
+	// then and only read. The outcome is the one the sequential walk would
+	// reach: the first method in source order that fails decides it
+	public XType checkParallel(Goal n) {
+		if (n.f0.accept(this) == null)
+			return null;
+
+		// Every method with its class, in source order
+		final ArrayList<ClassType> owners = new ArrayList<ClassType>();
+		final ArrayList<MethodDeclaration> methods = new ArrayList<MethodDeclaration>();
+
+		for (Node node : n.f1.nodes) {
+			Node decl = ((TypeDeclaration)node).f0.choice;
+			Identifier name;
+			NodeListOptional body;
+
+			if (decl instanceof ClassDeclaration) {
+				name = ((ClassDeclaration)decl).f1;
+				body = ((ClassDeclaration)decl).f4;
+			} else {
+				name = ((ClassExtendsDeclaration)decl).f1;
+				body = ((ClassExtendsDeclaration)decl).f6;
+			}
+
+			ClassType ct = symbolTable.classes.get(name.f0.toString());
+			for (Node m : body.nodes) {
+				owners.add(ct);
+				methods.add((MethodDeclaration)m);
+			}
+		}
+
+		final XTypeCheck[] checkers = new XTypeCheck[methods.size()];
+		final XType[] results = new XType[methods.size()];
+		final RuntimeException[] errors = new RuntimeException[methods.size()];
+
+		class MethodTask extends RecursiveAction {
+			private static final long serialVersionUID = 1L;
+
+			int lo, hi;
+
+			MethodTask(int l, int h) {
+				lo = l;
+				hi = h;
+			}
+
+			protected void compute() {
+				if (hi - lo > METHODS_PER_TASK) {
+					int mid = (lo + hi) >>> 1;
+					invokeAll(new MethodTask(lo, mid), new MethodTask(mid, hi));
+					return;
+				}
+
+				for (int i = lo; i < hi; i++) {
+					checkers[i] = new XTypeCheck(symbolTable);
+					checkers[i].scopeClass = owners.get(i);
+
+					try {
+						results[i] = methods.get(i).accept(checkers[i]);
+					} catch (RuntimeException e) {
+						errors[i] = e;
+					}
+				}
+			}
+		}
+
+		ForkJoinPool.commonPool().invoke(new MethodTask(0, methods.size()));
+
+		for (int i = 0; i < methods.size(); i++) {
+			if (errors[i] != null)
+				throw errors[i];
+
+			if (results[i] == null)
+				return null;
+
+			typeTable.putAll(checkers[i].typeTable);
+		}
+
+		return XType.OTHER;
+	}
+
 	public XType visit(MainClass n) {
 		// Begin class scope
-		symbolTable.scopeClass = symbolTable.classes.get(n.f1.f0.toString());
+		scopeClass = symbolTable.classes.get(n.f1.f0.toString());
 
 		// Begin method scope
-		symbolTable.scopeMethod = symbolTable.scopeClass.methods.get("main");
+		scopeMethod = scopeClass.methods.get(symbolTable.symbols.lookup("main"));
 
 		// Statement
 		XType ret = n.f15.accept(this);
 
 		// End method scope
-		symbolTable.scopeMethod = null;
+		scopeMethod = null;
 
 		// End class scope
-		symbolTable.scopeClass = null;
+		scopeClass = null;
 
 		return ret;
 	}
@@ -82,33 +174,33 @@ public class XTypeCheck extends GJNoArguDepthFirst<XType> {
 
 	public XType visit(ClassDeclaration n) {
 		// Begin class scope
-		symbolTable.scopeClass = symbolTable.classes.get(n.f1.f0.toString());
+		scopeClass = symbolTable.classes.get(n.f1.f0.toString());
 
 		// MethodDeclaration
 		XType ret = n.f4.accept(this);
 
 		// End class scope
-		symbolTable.scopeClass = null;
+		scopeClass = null;
 
 		return ret;
 	}
 
 	public XType visit(ClassExtendsDeclaration n) {
 		// Begin class scope
-		symbolTable.scopeClass = symbolTable.classes.get(n.f1.f0.toString());
+		scopeClass = symbolTable.classes.get(n.f1.f0.toString());
 
 		// MethodDeclaration
 		XType ret = n.f6.accept(this);
 
 		// End class scope
-		symbolTable.scopeClass = null;
+		scopeClass = null;
 
 		return ret;
 	}
 
 	public XType visit(MethodDeclaration n) {
 		// Begin method scope
-		symbolTable.scopeMethod = symbolTable.scopeClass.methods.get(n.f2.f0.toString());
+		scopeMethod = scopeClass.methods.get(symbolTable.symbols.lookup(n.f2.f0.toString()));
 
 		// Statement
 		if (n.f8.accept(this) == null)
@@ -116,13 +208,15 @@ public class XTypeCheck extends GJNoArguDepthFirst<XType> {
 
 		// Expression
 		// Checks if the return type equals the expression type
-		if (n.f10.accept(this) == null)
+		XType expType = n.f10.accept(this);
+
+		if (expType == null)
 			return null;
 
-		XType ret = symbolTable.isSubclass(n.f10.accept(this), symbolTable.scopeMethod.returnType) ? XType.OTHER : null;
+		XType ret = symbolTable.isSubclass(expType, scopeMethod.returnType) ? XType.OTHER : null;
 
 		// End method scope
-		symbolTable.scopeMethod = null;
+		scopeMethod = null;
 
 		return ret;
 	}
@@ -212,7 +306,13 @@ public class XTypeCheck extends GJNoArguDepthFirst<XType> {
 	}
 
 	public XType visit(Expression n) {
-		return n.f0.accept(this);
+		XType t = n.f0.accept(this);
+
+		// Record both the wrapper and the expression it chose
+		typeTable.put(n, t);
+		typeTable.put(n.f0.choice, t);
+
+		return t;
 	}
 
 	public XType visit(AndExpression n) {
@@ -291,11 +391,13 @@ public class XTypeCheck extends GJNoArguDepthFirst<XType> {
 		if (priExpType == null || priExpType.type != XType.TYPE.ID)
 			return null;
 
-		MethodType mt = symbolTable.getMethod(priExpType.name, n.f2.f0.toString());
+		MethodEntry entry = priExpType.classType.methodTable.get(symbolTable.symbols.lookup(n.f2.f0.toString()));
 
-		if (mt == null)
+		if (entry == null)
 			return null;
 
+		MethodType mt = entry.methodType;
+
 		// Check if the two methods have the same parameters
 		Collection<XType> params = mt.params.values();
 
@@ -308,18 +410,20 @@ public class XTypeCheck extends GJNoArguDepthFirst<XType> {
 			ExpressionList list = (ExpressionList)n.f4.node;
 
 			// IMPORTANT
-			if (list.f0.accept(this) == null)
+			XType argType = list.f0.accept(this);
+			if (argType == null)
 				return null;
 
-			if ( !symbolTable.isSubclass(list.f0.accept(this), queue.remove()) )
+			if ( !symbolTable.isSubclass(argType, queue.remove()) )
 				return null;
 
 			for (Node node : list.f1.nodes) {
 				// IMPORTANT
-				if (node.accept(this) == null)
+				argType = node.accept(this);
+				if (argType == null)
 					return null;
 
-				if (queue.isEmpty() || !symbolTable.isSubclass(node.accept(this), queue.remove()))
+				if (queue.isEmpty() || !symbolTable.isSubclass(argType, queue.remove()))
 					return null;
 			}
 
@@ -345,7 +449,13 @@ public class XTypeCheck extends GJNoArguDepthFirst<XType> {
 	}
 
 	public XType visit(PrimaryExpression n) {
-		return n.f0.accept(this);
+		XType t = n.f0.accept(this);
+
+		// Record both the wrapper and the expression it chose
+		typeTable.put(n, t);
+		typeTable.put(n.f0.choice, t);
+
+		return t;
 	}
 
 	public XType visit(IntegerLiteral n) {
@@ -370,34 +480,31 @@ public class XTypeCheck extends GJNoArguDepthFirst<XType> {
 			if (ct == null)
 				return null;
 
-			return new XType(XType.TYPE.ID, ct.name);
+			return ct.type;
 
 		} else {
+			int id = symbolTable.symbols.lookup(identifier);
+
 			// Check if id is a local var
-			XType idType = symbolTable.scopeMethod.vars.get(identifier);
+			int slot = scopeMethod.vars.indexOf(id);
 
-			if (idType != null)
-				return idType;
+			if (slot >= 0)
+				return bind(n, Binding.Kind.LOCAL, scopeMethod.vars.value(slot), null, slot);
 
 			// Check if id is a param
-			idType = symbolTable.scopeMethod.params.get(identifier);
-
-			if (idType != null)
-				return idType;
-
-			// Check if id is a class field
-			idType = symbolTable.scopeClass.vars.get(identifier);
+			slot = scopeMethod.params.indexOf(id);
 
-			if (idType != null)
-				return idType;
+			if (slot >= 0)
+				return bind(n, Binding.Kind.PARAM, scopeMethod.params.value(slot), null, slot);
 
-			ClassType ct = symbolTable.scopeClass.parent;
+			// Check if id is a class field, the nearest one up
+			ClassType ct = scopeClass;
 
 			while (ct != null) {
-				idType = ct.vars.get(identifier);
+				slot = ct.vars.indexOf(id);
 
-				if (idType != null)
-					return idType;
+				if (slot >= 0)
+					return bind(n, Binding.Kind.FIELD, ct.vars.value(slot), ct, ct.firstField() + slot);
 
 				ct = ct.parent;
 			}
@@ -407,8 +514,13 @@ public class XTypeCheck extends GJNoArguDepthFirst<XType> {
 		return null;
 	}
 
+	private XType bind(Identifier n, Binding.Kind kind, XType type, ClassType owner, int slot) {
+		typeTable.bind(n, new Binding(kind, type, owner, slot));
+		return type;
+	}
+
 	public XType visit(ThisExpression n) {
-		return new XType(XType.TYPE.ID, symbolTable.scopeClass.name);
+		return scopeClass.type;
 
 	}
 
@@ -0,0 +1,133 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+
+/*
+ * Server mode for a stage: one JVM answers many compiles, so the JIT's
+ * work and any per-file state carry over from one request to the next.
+ * Requests are read from one stream and answered on the other:
+ *
+ *   <name> <length>\n<length bytes of input>
+ *   <name> <status> <length>\n<length bytes of output>
+ *
+ * The name is the client's and only tells files apart; the status is the
+ * exit status the stage would have had as its own process. Requests run
+ * on a pool of one thread per core, and each response is written whole
+ * as soon as it is ready, so responses can come back out of order.
+ * Requests with the same name run one at a time, in the order they came,
+ * so per-file state never sees two compiles at once. The server stops
+ * once the input ends and every request is answered.
+ *
+ * A stage's parser must keep no static state: a MiniJavaParser generated
+ * with STATIC=true, the JavaCC default, can be constructed only once per
+ * JVM, so the MiniJava stages parse with FastParser here.
+ */
+public class CompileServer {
+
+	public interface Stage {
+		// Compile input, printing what the stage prints; returns the exit status
+		int run(String name, byte[] input, PrintStream out) throws Exception;
+	}
+
+	// Files a stage keeps state for; past this the least recently
+	// compiled is dropped, and starts from nothing when it comes back
+	public static final int CACHED_FILES = 64;
+
+	// A map for a stage's per-file state, safe to share between requests
+	public static <V> Map<String, V> perFile() {
+		return Collections.synchronizedMap(new Recent<V>());
+	}
+
+	private static class Recent<V> extends LinkedHashMap<String, V> {
+
+		private static final long serialVersionUID = 1L;
+
+		Recent() {
+			super(16, 0.75f, true);
+		}
+
+		protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+			return size() > CACHED_FILES;
+		}
+	}
+
+	public static void serve(Stage stage, InputStream in, OutputStream out) throws IOException, InterruptedException {
+		DataInputStream requests = new DataInputStream(new BufferedInputStream(in));
+		ExecutorService pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+
+		// The last request of each name not yet answered
+		Map<String, CompletableFuture<Void>> last = new HashMap<String, CompletableFuture<Void>>();
+
+		try {
+			String header;
+			while ((header = readLine(requests)) != null) {
+				String[] fields = header.split(" ");
+				if (fields.length != 2)
+					throw new IOException("Bad request header: " + header);
+
+				String name = fields[0];
+				byte[] input = new byte[Integer.parseInt(fields[1])];
+				requests.readFully(input);
+
+				Runnable request = () -> respond(stage, name, input, out);
+				CompletableFuture<Void> before = last.get(name);
+
+				last.values().removeIf(CompletableFuture::isDone);
+				last.put(name, before == null
+						? CompletableFuture.runAsync(request, pool)
+						: before.whenCompleteAsync((r, e) -> request.run(), pool));
+			}
+		} finally {
+			// A request waiting on another is handed to the pool only once
+			// that one ends, so wait for every name before shutting it down
+			CompletableFuture.allOf(last.values().toArray(new CompletableFuture<?>[0])).handle((r, e) -> null).join();
+			pool.shutdown();
+			pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+		}
+	}
+
+	private static void respond(Stage stage, String name, byte[] input, OutputStream out) {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		PrintStream ps = new PrintStream(output);
+		int status;
+
+		try {
+			status = stage.run(name, input, ps);
+		} catch (Exception | Error e) {
+			// What would have ended the process
+			e.printStackTrace();
+			status = 1;
+		}
+
+		ps.flush();
+		byte[] header = (name + " " + status + " " + output.size() + "\n").getBytes(StandardCharsets.US_ASCII);
+
+		synchronized (out) {
+			try {
+				out.write(header);
+				output.writeTo(out);
+				out.flush();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+
+	// A line without its \n, or null at the end of the input
+	private static String readLine(InputStream in) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		int c;
+
+		while ((c = in.read()) != '\n') {
+			if (c < 0) {
+				if (sb.length() == 0)
+					return null;
+				throw new EOFException("Request header cut short: " + sb);
+			}
+			sb.append((char)c);
+		}
+
+		return sb.toString();
+	}
+}
@@ -0,0 +1,450 @@
+import syntaxtree.*;
+
+import java.io.*;
+
+/*
+ * Hand-written replacement for MiniJavaParser: recursive descent over the
+ * tokens of FastScanner into the same syntaxtree MiniJavaParser builds,
+ * so SymbolTable, XTypeCheck and Translator are unchanged.
+ *
+ * NodeToken.kind is left at -1, as the token kinds belong to the
+ * generated parser.
+ */
+public class FastParser extends FastScanner {
+
+	public FastParser(byte[] source) {
+		super(source);
+	}
+
+	public FastParser(InputStream in) {
+		super(in);
+	}
+
+	// *** Parser ***
+
+	private NodeToken token() {
+		int i = pos++;
+		String img = image(i);
+		int last = column[i] + (end[i] - start[i]) - 1;
+
+		// MiniJavaParser moves the end of file one column on
+		if (kind[i] == EOF)
+			return new NodeToken(img, -1, line[i], column[i] + 1, line[i], column[i] + 1);
+
+		return new NodeToken(img, -1, line[i], column[i], line[i], last);
+	}
+
+	private NodeToken expect(int k) throws ParseException {
+		if (kind[pos] != k)
+			throw error();
+
+		return token();
+	}
+
+	private static NodeListOptional trim(NodeListOptional list) {
+		list.nodes.trimToSize();
+		return list;
+	}
+
+	public Goal Goal() throws ParseException {
+		scan();
+
+		MainClass n0 = MainClass();
+		NodeListOptional n1 = new NodeListOptional();
+
+		while (kind[pos] == CLASS)
+			n1.addNode(TypeDeclaration());
+
+		return new Goal(n0, trim(n1), expect(EOF));
+	}
+
+	private MainClass MainClass() throws ParseException {
+		NodeToken n0 = expect(CLASS);
+		Identifier n1 = Identifier();
+		NodeToken n2 = expect(LBRACE);
+		NodeToken n3 = expect(PUBLIC);
+		NodeToken n4 = expect(STATIC);
+		NodeToken n5 = expect(VOID);
+		NodeToken n6 = expect(MAIN);
+		NodeToken n7 = expect(LPAREN);
+		NodeToken n8 = expect(STRING);
+		NodeToken n9 = expect(LSQPAREN);
+		NodeToken n10 = expect(RSQPAREN);
+		Identifier n11 = Identifier();
+		NodeToken n12 = expect(RPAREN);
+		NodeToken n13 = expect(LBRACE);
+
+		NodeListOptional n14 = new NodeListOptional();
+		while (startsVarDeclaration())
+			n14.addNode(VarDeclaration());
+
+		NodeListOptional n15 = Statements(RBRACE);
+		NodeToken n16 = expect(RBRACE);
+		NodeToken n17 = expect(RBRACE);
+
+		return new MainClass(n0, n1, n2, n3, n4, n5, n6, n7, n8, n9, n10, n11, n12, n13, trim(n14), n15, n16, n17);
+	}
+
+	// LOOKAHEAD(2) VarDeclaration(): a statement can also start with an
+	// identifier, and a type is only taken with what can follow it
+	private boolean startsVarDeclaration() throws ParseException {
+		switch (kind[pos]) {
+			case INTEGER:
+				return peek(1) == IDENT || peek(1) == LSQPAREN;
+
+			case BOOLEAN:
+			case IDENT:
+				return peek(1) == IDENT;
+
+			default:
+				return false;
+		}
+	}
+
+	private TypeDeclaration TypeDeclaration() throws ParseException {
+		if (peek(2) == EXTENDS)
+			return new TypeDeclaration(new NodeChoice(ClassExtendsDeclaration(), 1));
+
+		return new TypeDeclaration(new NodeChoice(ClassDeclaration(), 0));
+	}
+
+	private ClassDeclaration ClassDeclaration() throws ParseException {
+		NodeToken n0 = expect(CLASS);
+		Identifier n1 = Identifier();
+		NodeToken n2 = expect(LBRACE);
+		NodeListOptional n3 = VarDeclarations();
+		NodeListOptional n4 = MethodDeclarations();
+		NodeToken n5 = expect(RBRACE);
+
+		return new ClassDeclaration(n0, n1, n2, n3, n4, n5);
+	}
+
+	private ClassExtendsDeclaration ClassExtendsDeclaration() throws ParseException {
+		NodeToken n0 = expect(CLASS);
+		Identifier n1 = Identifier();
+		NodeToken n2 = expect(EXTENDS);
+		Identifier n3 = Identifier();
+		NodeToken n4 = expect(LBRACE);
+		NodeListOptional n5 = VarDeclarations();
+		NodeListOptional n6 = MethodDeclarations();
+		NodeToken n7 = expect(RBRACE);
+
+		return new ClassExtendsDeclaration(n0, n1, n2, n3, n4, n5, n6, n7);
+	}
+
+	private NodeListOptional VarDeclarations() throws ParseException {
+		NodeListOptional list = new NodeListOptional();
+		while (kind[pos] == INTEGER || kind[pos] == BOOLEAN || kind[pos] == IDENT)
+			list.addNode(VarDeclaration());
+		return trim(list);
+	}
+
+	private NodeListOptional MethodDeclarations() throws ParseException {
+		NodeListOptional list = new NodeListOptional();
+		while (kind[pos] == PUBLIC)
+			list.addNode(MethodDeclaration());
+		return trim(list);
+	}
+
+	private VarDeclaration VarDeclaration() throws ParseException {
+		Type n0 = Type();
+		Identifier n1 = Identifier();
+		return new VarDeclaration(n0, n1, expect(SEMICOLON));
+	}
+
+	private MethodDeclaration MethodDeclaration() throws ParseException {
+		NodeToken n0 = expect(PUBLIC);
+		Type n1 = Type();
+		Identifier n2 = Identifier();
+		NodeToken n3 = expect(LPAREN);
+
+		NodeOptional n4 = new NodeOptional();
+		if (kind[pos] != RPAREN)
+			n4.addNode(FormalParameterList());
+
+		NodeToken n5 = expect(RPAREN);
+		NodeToken n6 = expect(LBRACE);
+
+		NodeListOptional n7 = new NodeListOptional();
+		while (startsVarDeclaration())
+			n7.addNode(VarDeclaration());
+
+		NodeListOptional n8 = Statements(RETURN);
+
+		NodeToken n9 = expect(RETURN);
+		Expression n10 = Expression();
+		NodeToken n11 = expect(SEMICOLON);
+		NodeToken n12 = expect(RBRACE);
+
+		return new MethodDeclaration(n0, n1, n2, n3, n4, n5, n6, trim(n7), n8, n9, n10, n11, n12);
+	}
+
+	private FormalParameterList FormalParameterList() throws ParseException {
+		FormalParameter n0 = FormalParameter();
+		NodeListOptional n1 = new NodeListOptional();
+
+		while (kind[pos] == COMMA) {
+			NodeToken comma = token();
+			n1.addNode(new FormalParameterRest(comma, FormalParameter()));
+		}
+
+		return new FormalParameterList(n0, trim(n1));
+	}
+
+	private FormalParameter FormalParameter() throws ParseException {
+		Type n0 = Type();
+		return new FormalParameter(n0, Identifier());
+	}
+
+	private Type Type() throws ParseException {
+		switch (kind[pos]) {
+			case INTEGER:
+				if (peek(1) == LSQPAREN) {
+					NodeToken n0 = token();
+					NodeToken n1 = token();
+					return new Type(new NodeChoice(new ArrayType(n0, n1, expect(RSQPAREN)), 0));
+				}
+				return new Type(new NodeChoice(new IntegerType(token()), 2));
+
+			case BOOLEAN:
+				return new Type(new NodeChoice(new BooleanType(token()), 1));
+
+			case IDENT:
+				return new Type(new NodeChoice(Identifier(), 3));
+
+			default:
+				throw error();
+		}
+	}
+
+	// Statement()* up to the closing token, which is left for the caller
+	private NodeListOptional Statements(int closer) throws ParseException {
+		NodeListOptional list = new NodeListOptional();
+
+		while (kind[pos] != closer) {
+			int k = kind[pos];
+
+			if (k != LBRACE && k != IDENT && k != IF && k != WHILE && k != PRINT)
+				throw error();
+
+			list.addNode(Statement());
+		}
+
+		return trim(list);
+	}
+
+	private Statement Statement() throws ParseException {
+		switch (kind[pos]) {
+			case LBRACE: {
+				NodeToken n0 = token();
+				NodeListOptional n1 = Statements(RBRACE);
+				return new Statement(new NodeChoice(new Block(n0, n1, token()), 0));
+			}
+
+			case IDENT:
+				if (peek(1) == ASSIGN) {
+					Identifier n0 = Identifier();
+					NodeToken n1 = token();
+					Expression n2 = Expression();
+					return new Statement(new NodeChoice(new AssignmentStatement(n0, n1, n2, expect(SEMICOLON)), 1));
+				}
+				if (peek(1) == LSQPAREN) {
+					Identifier n0 = Identifier();
+					NodeToken n1 = token();
+					Expression n2 = Expression();
+					NodeToken n3 = expect(RSQPAREN);
+					NodeToken n4 = expect(ASSIGN);
+					Expression n5 = Expression();
+					return new Statement(new NodeChoice(new ArrayAssignmentStatement(n0, n1, n2, n3, n4, n5, expect(SEMICOLON)), 2));
+				}
+				throw error();
+
+			case IF: {
+				NodeToken n0 = token();
+				NodeToken n1 = expect(LPAREN);
+				Expression n2 = Expression();
+				NodeToken n3 = expect(RPAREN);
+				Statement n4 = Statement();
+				NodeToken n5 = expect(ELSE);
+				return new Statement(new NodeChoice(new IfStatement(n0, n1, n2, n3, n4, n5, Statement()), 3));
+			}
+
+			case WHILE: {
+				NodeToken n0 = token();
+				NodeToken n1 = expect(LPAREN);
+				Expression n2 = Expression();
+				NodeToken n3 = expect(RPAREN);
+				return new Statement(new NodeChoice(new WhileStatement(n0, n1, n2, n3, Statement()), 4));
+			}
+
+			case PRINT: {
+				NodeToken n0 = token();
+				NodeToken n1 = expect(LPAREN);
+				Expression n2 = Expression();
+				NodeToken n3 = expect(RPAREN);
+				return new Statement(new NodeChoice(new PrintStatement(n0, n1, n2, n3, expect(SEMICOLON)), 5));
+			}
+
+			default:
+				throw error();
+		}
+	}
+
+	// Every binary form starts with a PrimaryExpression, so parse that
+	// first and let the token after it pick the production
+	private Expression Expression() throws ParseException {
+		PrimaryExpression lhs = PrimaryExpression();
+		Node e;
+		int which;
+
+		switch (kind[pos]) {
+			case AND:
+				e = new AndExpression(lhs, token(), PrimaryExpression());
+				which = 0;
+				break;
+
+			case LT:
+				e = new CompareExpression(lhs, token(), PrimaryExpression());
+				which = 1;
+				break;
+
+			case PLUS:
+				e = new PlusExpression(lhs, token(), PrimaryExpression());
+				which = 2;
+				break;
+
+			case MINUS:
+				e = new MinusExpression(lhs, token(), PrimaryExpression());
+				which = 3;
+				break;
+
+			case TIMES:
+				e = new TimesExpression(lhs, token(), PrimaryExpression());
+				which = 4;
+				break;
+
+			case LSQPAREN: {
+				NodeToken n1 = token();
+				PrimaryExpression n2 = PrimaryExpression();
+				e = new ArrayLookup(lhs, n1, n2, expect(RSQPAREN));
+				which = 5;
+				break;
+			}
+
+			case DOT:
+				if (peek(1) == LENGTH) {
+					NodeToken n1 = token();
+					e = new ArrayLength(lhs, n1, token());
+					which = 6;
+					break;
+				}
+				if (peek(1) == IDENT && peek(2) == LPAREN) {
+					NodeToken n1 = token();
+					Identifier n2 = Identifier();
+					NodeToken n3 = token();
+					NodeOptional n4 = new NodeOptional();
+					if (kind[pos] != RPAREN)
+						n4.addNode(ExpressionList());
+					e = new MessageSend(lhs, n1, n2, n3, n4, expect(RPAREN));
+					which = 7;
+					break;
+				}
+
+				// The caller reports the dot
+				e = lhs;
+				which = 8;
+				break;
+
+			default:
+				e = lhs;
+				which = 8;
+		}
+
+		return new Expression(new NodeChoice(e, which));
+	}
+
+	private ExpressionList ExpressionList() throws ParseException {
+		Expression n0 = Expression();
+		NodeListOptional n1 = new NodeListOptional();
+
+		while (kind[pos] == COMMA) {
+			NodeToken comma = token();
+			n1.addNode(new ExpressionRest(comma, Expression()));
+		}
+
+		return new ExpressionList(n0, trim(n1));
+	}
+
+	private PrimaryExpression PrimaryExpression() throws ParseException {
+		Node e;
+		int which;
+
+		switch (kind[pos]) {
+			case NUMBER:
+				e = new IntegerLiteral(token());
+				which = 0;
+				break;
+
+			case TRUE:
+				e = new TrueLiteral(token());
+				which = 1;
+				break;
+
+			case FALSE:
+				e = new FalseLiteral(token());
+				which = 2;
+				break;
+
+			case IDENT:
+				e = Identifier();
+				which = 3;
+				break;
+
+			case THIS:
+				e = new ThisExpression(token());
+				which = 4;
+				break;
+
+			case NEW:
+				if (peek(1) == INTEGER) {
+					NodeToken n0 = token();
+					NodeToken n1 = token();
+					NodeToken n2 = expect(LSQPAREN);
+					Expression n3 = Expression();
+					e = new ArrayAllocationExpression(n0, n1, n2, n3, expect(RSQPAREN));
+					which = 5;
+				} else {
+					NodeToken n0 = token();
+					Identifier n1 = Identifier();
+					NodeToken n2 = expect(LPAREN);
+					e = new AllocationExpression(n0, n1, n2, expect(RPAREN));
+					which = 6;
+				}
+				break;
+
+			case NOT: {
+				NodeToken n0 = token();
+				e = new NotExpression(n0, Expression());
+				which = 7;
+				break;
+			}
+
+			case LPAREN: {
+				NodeToken n0 = token();
+				Expression n1 = Expression();
+				e = new BracketExpression(n0, n1, expect(RPAREN));
+				which = 8;
+				break;
+			}
+
+			default:
+				throw error();
+		}
+
+		return new PrimaryExpression(new NodeChoice(e, which));
+	}
+
+	private Identifier Identifier() throws ParseException {
+		return new Identifier(expect(IDENT));
+	}
+}
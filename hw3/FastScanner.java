@@ -0,0 +1,1105 @@
+import java.io.*;
+import java.util.*;
+
+/*
+ * Scanner shared by FastParser and FlatParser: the whole source is read
+ * into a byte array and scanned once into parallel int arrays of tokens.
+ *
+ * Token images are shared: keywords and punctuation use constant
+ * strings, and every spelling of an identifier or literal is turned into
+ * a String once and numbered. Lines and columns follow JavaCharStream,
+ * tabs included, and a parse error is the one MiniJavaParser throws, down
+ * to its list of expected tokens: see Replay.
+ *
+ * Scanning stops at the first lexical error, which is kept as an ERROR
+ * token: the TokenMgrError MiniJavaParser's token manager would give is
+ * thrown only once the parser reaches that token, so an earlier parse
+ * error still wins.
+ *
+ * Only ASCII sources are accepted: there are no \\u escapes and no
+ * non-ASCII letters in identifiers.
+ */
+class FastScanner {
+
+	// Token kinds; the fixed ones index IMAGES
+	static final int EOF = 0;
+	static final int IDENT = 1;
+	static final int NUMBER = 2;
+	static final int LPAREN = 3;
+	static final int RPAREN = 4;
+	static final int LSQPAREN = 5;
+	static final int RSQPAREN = 6;
+	static final int LBRACE = 7;
+	static final int RBRACE = 8;
+	static final int SEMICOLON = 9;
+	static final int DOT = 10;
+	static final int ASSIGN = 11;
+	static final int LT = 12;
+	static final int PLUS = 13;
+	static final int MINUS = 14;
+	static final int TIMES = 15;
+	static final int AND = 16;
+	static final int NOT = 17;
+	static final int COMMA = 18;
+	static final int PRINT = 19;
+	// Keywords, from FIRST_KEYWORD on
+	static final int BOOLEAN = 20;
+	static final int CLASS = 21;
+	static final int INTERFACE = 22;
+	static final int ELSE = 23;
+	static final int EXTENDS = 24;
+	static final int FALSE = 25;
+	static final int IF = 26;
+	static final int WHILE = 27;
+	static final int INTEGER = 28;
+	static final int LENGTH = 29;
+	static final int MAIN = 30;
+	static final int NEW = 31;
+	static final int PUBLIC = 32;
+	static final int RETURN = 33;
+	static final int STATIC = 34;
+	static final int STRING = 35;
+	static final int THIS = 36;
+	static final int TRUE = 37;
+	static final int VOID = 38;
+
+	static final int FIRST_KEYWORD = BOOLEAN;
+
+	// Kind of the token where a lexical error stopped the scanner
+	static final int ERROR = -1;
+
+	static final String[] IMAGES = {
+		"", "<IDENTIFIER>", "<INTEGER_LITERAL>",
+		"(", ")", "[", "]", "{", "}", ";", ".", "=", "<", "+", "-", "*", "&&", "!", ",",
+		"System.out.println",
+		"boolean", "class", "interface", "else", "extends", "false", "if", "while", "int",
+		"length", "main", "new", "public", "return", "static", "String", "this", "true", "void"
+	};
+
+	private static final byte[][] KEYWORDS = new byte[IMAGES.length][];
+
+	static {
+		for (int k = FIRST_KEYWORD; k < IMAGES.length; k++)
+			KEYWORDS[k] = IMAGES[k].getBytes();
+		KEYWORDS[PRINT] = IMAGES[PRINT].getBytes();
+	}
+
+	private byte[] src;
+
+	// Token i is kind[i] over src[start[i], end[i]), at line[i] and column[i];
+	// spelling[i] indexes spellings for identifiers and literals, else is -1
+	int[] kind = new int[256];
+	int[] start = new int[256];
+	int[] end = new int[256];
+	int[] line = new int[256];
+	int[] column = new int[256];
+	int[] spelling = new int[256];
+	int count = 0;
+
+	// Next token to parse
+	int pos = 0;
+
+	// Line the scanner is on
+	private int ln = 1;
+
+	// Thrown when the parser reaches the ERROR token
+	private TokenMgrError lexicalError = null;
+
+	// Spellings seen so far, numbered in order of appearance; open
+	// addressing on the bytes, holds index+1 into spellings
+	String[] spellings = new String[64];
+	int spellingCount = 0;
+	private int[] spellingTable = new int[128];
+
+	FastScanner(byte[] source) {
+		src = source;
+	}
+
+	FastScanner(InputStream in) {
+		try {
+			src = in.readAllBytes();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	// *** Scanner ***
+
+	void scan() {
+		int i = 0;
+		int n = src.length;
+		int col = 0;	// Column of the last character read
+
+		while (true) {
+			// Whitespace and comments
+			while (i < n) {
+				int c = src[i];
+
+				if (c == ' ' || c == '\f') {
+					col++;
+					i++;
+				} else if (c == '\t') {
+					col += 8 - col % 8;
+					i++;
+				} else if (c == '\n') {
+					ln++;
+					col = 0;
+					i++;
+				} else if (c == '\r') {
+					ln++;
+					col = 0;
+					i += i + 1 < n && src[i + 1] == '\n' ? 2 : 1;
+				} else if (c == '/' && i + 1 < n && src[i + 1] == '/') {
+					// Up to and including the end of the line, which
+					// SINGLE_LINE_COMMENT requires
+					int e = i + 2;
+					while (e < n && src[e] != '\n' && src[e] != '\r')
+						e++;
+
+					if (e == n) {
+						fail(i, n - 1, col);
+						return;
+					}
+
+					if (src[e] == '\r' && e + 1 < n && src[e + 1] == '\n')
+						e++;
+
+					col = advance(i, e + 1, col);
+					i = e + 1;
+				} else if (c == '/' && i + 1 < n && src[i + 1] == '*') {
+					int e = commentEnd(i + 2);
+
+					// JavaCC takes the longest comment, and FORMAL_COMMENT reads
+					// /**/ as the start of a comment that runs to the next */
+					if (e == i + 4 && src[i + 2] == '*') {
+						int longer = commentEnd(i + 3);
+						if (longer >= 0)
+							e = longer;
+					}
+
+					if (e < 0) {
+						fail(i, n - 1, col);
+						return;
+					}
+
+					col = advance(i, e, col);
+					i = e;
+				} else {
+					break;
+				}
+			}
+
+			if (count == kind.length)
+				grow();
+
+			if (i == n) {
+				// JavaCharStream leaves the end of file on the last
+				// character read, even when that ends a line
+				if (n > 0 && (src[n - 1] == '\n' || src[n - 1] == '\r'))
+					add(EOF, i, i, ln - 1, terminatorColumn(n - 1));
+				else
+					add(EOF, i, i, ln, col);
+				return;
+			}
+
+			int s = i;
+			int c = src[i];
+			int k;
+
+			if (isLetter(c)) {
+				if (c == 'S' && matches(i, KEYWORDS[PRINT])) {
+					i += KEYWORDS[PRINT].length;
+					k = PRINT;
+				} else {
+					i++;
+					while (i < n && (isLetter(src[i]) || isDigit(src[i])))
+						i++;
+					k = keyword(s, i);
+				}
+			} else if (isDigit(c)) {
+				i++;
+				// A literal never has a leading zero: 007 is three literals
+				if (c != '0') {
+					while (i < n && isDigit(src[i]))
+						i++;
+				}
+				k = NUMBER;
+			} else {
+				i++;
+				switch (c) {
+					case '(': k = LPAREN; break;
+					case ')': k = RPAREN; break;
+					case '[': k = LSQPAREN; break;
+					case ']': k = RSQPAREN; break;
+					case '{': k = LBRACE; break;
+					case '}': k = RBRACE; break;
+					case ';': k = SEMICOLON; break;
+					case '.': k = DOT; break;
+					case '=': k = ASSIGN; break;
+					case '<': k = LT; break;
+					case '+': k = PLUS; break;
+					case '-': k = MINUS; break;
+					case '*': k = TIMES; break;
+					case '!': k = NOT; break;
+					case ',': k = COMMA; break;
+					case '&':
+						if (i < n && src[i] == '&') {
+							i++;
+							k = AND;
+							break;
+						}
+
+						// The token manager gives up on the character after a
+						// lone & or /, having read it
+						fail(s, i < n ? i : s, col);
+						return;
+					case '/':
+						fail(s, i < n ? i : s, col);
+						return;
+					default:
+						fail(s, s, col);
+						return;
+				}
+			}
+
+			add(k, s, i, ln, col + 1);
+			col += i - s;
+		}
+	}
+
+	// End of the comment closed by the first */ whose * is at or after from, or -1
+	private int commentEnd(int from) {
+		for (int i = from; i + 1 < src.length; i++) {
+			if (src[i] == '*' && src[i + 1] == '/')
+				return i + 2;
+		}
+		return -1;
+	}
+
+	// Move over src[s, e), updating line as JavaCharStream does;
+	// returns the column of the last character
+	private int advance(int s, int e, int col) {
+		for (int i = s; i < e; i++) {
+			int c = src[i];
+
+			if (c == '\n' || (c == '\r' && (i + 1 == src.length || src[i + 1] != '\n'))) {
+				ln++;
+				col = 0;
+			} else if (c == '\t') {
+				col += 8 - col % 8;
+			} else if (c != '\r') {
+				col++;
+			}
+		}
+		return col;
+	}
+
+	// Column of the line terminator at t, which JavaCharStream counts as
+	// one more character on the line it ends
+	private int terminatorColumn(int t) {
+		int crlf = src[t] == '\n' && t > 0 && src[t - 1] == '\r' ? 1 : 0;
+		int s = t - crlf;
+
+		while (s > 0 && src[s - 1] != '\n' && src[s - 1] != '\r')
+			s--;
+
+		int col = 0;
+		for (int i = s; i < t - crlf; i++)
+			col += src[i] == '\t' ? 8 - col % 8 : 1;
+
+		return col + 1 + crlf;
+	}
+
+	private void add(int k, int s, int e, int ln, int col) {
+		kind[count] = k;
+		start[count] = s;
+		end[count] = e;
+		line[count] = ln;
+		column[count] = col;
+		spelling[count] = k == IDENT || k == NUMBER ? spelling(s, e) : -1;
+		count++;
+	}
+
+	private void grow() {
+		int size = kind.length * 2;
+		kind = Arrays.copyOf(kind, size);
+		start = Arrays.copyOf(start, size);
+		end = Arrays.copyOf(end, size);
+		line = Arrays.copyOf(line, size);
+		column = Arrays.copyOf(column, size);
+		spelling = Arrays.copyOf(spelling, size);
+	}
+
+	private static boolean isLetter(int c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_' || c == '$';
+	}
+
+	private static boolean isDigit(int c) {
+		return c >= '0' && c <= '9';
+	}
+
+	private boolean matches(int i, byte[] word) {
+		if (i + word.length > src.length)
+			return false;
+
+		for (int j = 0; j < word.length; j++) {
+			if (src[i + j] != word[j])
+				return false;
+		}
+		return true;
+	}
+
+	private int keyword(int s, int e) {
+		for (int k = FIRST_KEYWORD; k < KEYWORDS.length; k++) {
+			if (KEYWORDS[k].length == e - s && KEYWORDS[k][0] == src[s] && matches(s, KEYWORDS[k]))
+				return k;
+		}
+		return IDENT;
+	}
+
+	// The number of the spelling src[s, e)
+	private int spelling(int s, int e) {
+		int hash = 0;
+		for (int i = s; i < e; i++)
+			hash = 31 * hash + src[i];
+
+		int mask = spellingTable.length - 1;
+		int h = hash & mask;
+
+		while (spellingTable[h] != 0) {
+			String str = spellings[spellingTable[h] - 1];
+
+			if (str.hashCode() == hash && same(str, s, e))
+				return spellingTable[h] - 1;
+
+			h = (h + 1) & mask;
+		}
+
+		String str = new String(src, s, e - s, java.nio.charset.StandardCharsets.ISO_8859_1);
+
+		if (spellingCount == spellings.length)
+			spellings = Arrays.copyOf(spellings, spellingCount * 2);
+
+		spellings[spellingCount++] = str;
+		spellingTable[h] = spellingCount;
+
+		if (spellingCount * 2 > spellingTable.length) {
+			spellingTable = new int[spellingTable.length * 2];
+			mask = spellingTable.length - 1;
+
+			for (int j = 0; j < spellingCount; j++) {
+				h = spellings[j].hashCode() & mask;
+				while (spellingTable[h] != 0)
+					h = (h + 1) & mask;
+				spellingTable[h] = j + 1;
+			}
+		}
+
+		return spellingCount - 1;
+	}
+
+	private boolean same(String str, int s, int e) {
+		if (str.length() != e - s)
+			return false;
+
+		for (int i = s; i < e; i++) {
+			if (str.charAt(i - s) != src[i])
+				return false;
+		}
+		return true;
+	}
+
+	// End the tokens with an ERROR token at src[s], where the token manager
+	// read src[s, f] before giving up on src[f]; col is the column before s
+	private void fail(int s, int f, int col) {
+		if (count == kind.length)
+			grow();
+		add(ERROR, s, s, ln, col + 1);
+
+		// Where JavaCharStream puts src[f]
+		int l = 1;
+		int c = 0;
+		boolean cr = false;
+		boolean lf = false;
+		for (int i = 0; i <= f; i++) {
+			c++;
+			if (lf || (cr && src[i] != '\n')) {
+				l++;
+				c = 1;
+			}
+			lf = src[i] == '\n';
+			cr = src[i] == '\r';
+			if (src[i] == '\t')
+				c += 7 - (c - 1) % 8;
+		}
+
+		char ch = (char)(src[f] & 0xff);
+		boolean eof = f == src.length - 1;
+		String after = "";
+
+		// At the end of file the error is reported past src[f], which is
+		// then part of what was read
+		if (eof) {
+			if (ch == '\n' || ch == '\r') {
+				l++;
+				c = 0;
+			} else {
+				c++;
+			}
+		}
+		if (f > s)
+			after = new String(src, s, eof ? f + 1 - s : f - s, java.nio.charset.StandardCharsets.ISO_8859_1);
+
+		lexicalError = new TokenMgrError(eof, 0, l, c, after, ch, TokenMgrError.LEXICAL_ERROR);
+	}
+
+	// *** Parser support ***
+
+	// Kind of the token ahead of pos; looking at the ERROR token gives
+	// the error MiniJavaParser would give by then
+	int peek(int ahead) throws ParseException {
+		int k = kind[Math.min(pos + ahead, count - 1)];
+		if (k == ERROR)
+			throw error();
+		return k;
+	}
+
+	// Source text of token i
+	String image(int i) {
+		return spelling[i] >= 0 ? spellings[spelling[i]] : IMAGES[kind[i]];
+	}
+
+	// The error MiniJavaParser gives for the tokens, once the parser has
+	// found it cannot parse them; a lexical error is thrown instead when
+	// MiniJavaParser would reach that first
+	ParseException error() {
+		return new Replay(this).run();
+	}
+
+	// Kind of token i, past the end the end of file, as MiniJavaParser's
+	// token manager gives it: getting the ERROR token throws its error
+	private int fetch(int i) {
+		int k = kind[Math.min(i, count - 1)];
+		if (k == ERROR)
+			throw lexicalError;
+		return k;
+	}
+
+	// Worded like the message MiniJavaParser gives
+	private ParseException error(int at, List<Integer> expected) {
+		StringBuilder msg = new StringBuilder("Encountered \"");
+
+		if (kind[at] == EOF)
+			msg.append("<EOF>");
+		else
+			msg.append(' ').append(tokenImage(kind[at])).append(" \"").append(image(at)).append(" \"");
+
+		msg.append("\" at line ").append(line[at]).append(", column ").append(column[at]).append(".\n");
+		msg.append(expected.size() == 1 ? "Was expecting:\n    " : "Was expecting one of:\n    ");
+
+		for (int k : expected)
+			msg.append(tokenImage(k)).append(k == EOF ? " \n    " : " ...\n    ");
+
+		return new ParseException(msg.toString());
+	}
+
+	private static String tokenImage(int k) {
+		if (k == EOF)
+			return "<EOF>";
+
+		if (k == IDENT || k == NUMBER)
+			return IMAGES[k];
+
+		return "\"" + IMAGES[k] + "\"";
+	}
+
+	// *** MiniJavaParser's errors ***
+
+	// Token kinds in MiniJavaParser's numbering, which orders its lists
+	private static final int[] ORDER = {
+		EOF, LPAREN, RPAREN, LSQPAREN, RSQPAREN, LBRACE, RBRACE, SEMICOLON, DOT, ASSIGN,
+		LT, PLUS, MINUS, AND, NOT, BOOLEAN, CLASS, INTERFACE, ELSE, EXTENDS, FALSE, IF,
+		WHILE, INTEGER, LENGTH, MAIN, NEW, PUBLIC, RETURN, STATIC, STRING, THIS, TRUE,
+		PRINT, VOID, NUMBER, IDENT, COMMA, TIMES
+	};
+
+	private static long bits(int... kinds) {
+		long b = 0;
+		for (int k : kinds)
+			b |= 1L << k;
+		return b;
+	}
+
+	private static final long TYPE = bits(BOOLEAN, INTEGER, IDENT);
+	private static final long STATEMENT = bits(LBRACE, IF, WHILE, PRINT, IDENT);
+	private static final long EXPRESSION = bits(LPAREN, NOT, FALSE, NEW, THIS, TRUE, NUMBER, IDENT);
+
+	// Tokens each choice point of MiniJavaParser takes, in its numbering
+	private static final long[] CHOICES = {
+		bits(CLASS), STATEMENT, bits(CLASS), TYPE, bits(PUBLIC), TYPE, bits(PUBLIC),
+		TYPE, STATEMENT, bits(COMMA), TYPE, bits(LBRACE), bits(IF, WHILE, PRINT),
+		STATEMENT, EXPRESSION, EXPRESSION, bits(COMMA), bits(NUMBER, TRUE, FALSE, IDENT, THIS),
+		bits(NEW, NOT, LPAREN)
+	};
+
+	// A syntactic lookahead made at token first, which looked at most arg
+	// tokens ahead and got to token gen
+	private static class Call {
+		int gen = 0;
+		int first;
+		int arg;
+		Call next;
+	}
+
+	// Thrown when a lookahead has matched all the tokens it may look at
+	private static class Found extends RuntimeException {
+
+		private static final long serialVersionUID = 1L;
+
+		Found() {
+			super(null, null, false, false);
+		}
+	}
+
+	/*
+	 * The grammar run again the way the parser JavaCC generates runs it,
+	 * for the error that parser throws. Its message lists every token a
+	 * choice made at the offending token would have taken. It then scans
+	 * again each syntactic lookahead that reached that token, and lists a
+	 * token the lookahead tried there once more each time it moves off
+	 * it, if that token is listed already: a token can be listed many
+	 * times over. Only a failed parse gets here, so this is as slow as
+	 * MiniJavaParser is.
+	 */
+	private static class Replay {
+
+		private final FastScanner s;
+
+		// Last token taken, -1 before the first, and how many were taken
+		private int token = -1;
+		private int gen = 0;
+
+		// Kind a failed match wanted, or -1
+		private int wanted = -1;
+
+		// The gen at which each choice point last took none of its tokens
+		private final int[] passed = new int[CHOICES.length];
+
+		// A lookahead's last token scanned and last token got, and how
+		// many more it may get
+		private int scanned, got, left;
+
+		// Each lookahead's calls still reaching past the tokens taken
+		private final Call[] calls = new Call[15];
+
+		// Set while the lookaheads are scanned again
+		private boolean rescan = false;
+
+		private final List<Integer> expected = new ArrayList<Integer>();
+
+		// Length and first kind of the run of tokens a lookahead tried,
+		// from the offending token on
+		private int runLength = 0;
+		private int runFirst;
+
+		Replay(FastScanner s) {
+			this.s = s;
+			Arrays.fill(passed, -1);
+			for (int i = 0; i < calls.length; i++)
+				calls[i] = new Call();
+		}
+
+		ParseException run() {
+			try {
+				Goal();
+			} catch (ParseException e) {
+				return e;
+			}
+			throw new IllegalStateException("MiniJavaParser accepts what the parser rejected");
+		}
+
+		// *** Parsing ***
+
+		private int next() {
+			return s.fetch(token + 1);
+		}
+
+		private void take(int k) throws ParseException {
+			if (next() != k) {
+				wanted = k;
+				throw error();
+			}
+			token++;
+			gen++;
+		}
+
+		// Choice point i takes none of its tokens
+		private ParseException pass(int i) {
+			passed[i] = gen;
+			return error();
+		}
+
+		// Whether choice point i takes the next token; when not, the
+		// choice point is marked for the message
+		private boolean takes(int i) {
+			if ((CHOICES[i] & 1L << next()) != 0)
+				return true;
+			passed[i] = gen;
+			return false;
+		}
+
+		private void Goal() throws ParseException {
+			MainClass();
+			while (takes(0))
+				TypeDeclaration();
+			take(EOF);
+		}
+
+		private void MainClass() throws ParseException {
+			take(CLASS);
+			take(IDENT);
+			take(LBRACE);
+			take(PUBLIC);
+			take(STATIC);
+			take(VOID);
+			take(MAIN);
+			take(LPAREN);
+			take(STRING);
+			take(LSQPAREN);
+			take(RSQPAREN);
+			take(IDENT);
+			take(RPAREN);
+			take(LBRACE);
+			while (lookahead(0, 2))
+				VarDeclaration();
+			while (takes(1))
+				Statement();
+			take(RBRACE);
+			take(RBRACE);
+		}
+
+		private void TypeDeclaration() throws ParseException {
+			if (lookahead(1, 3))
+				ClassDeclaration();
+			else if (next() == CLASS)
+				ClassExtendsDeclaration();
+			else
+				throw pass(2);
+		}
+
+		private void ClassDeclaration() throws ParseException {
+			take(CLASS);
+			take(IDENT);
+			ClassBody(3, 4);
+		}
+
+		private void ClassExtendsDeclaration() throws ParseException {
+			take(CLASS);
+			take(IDENT);
+			take(EXTENDS);
+			take(IDENT);
+			ClassBody(5, 6);
+		}
+
+		// The fields and methods, at choice points vars and methods
+		private void ClassBody(int vars, int methods) throws ParseException {
+			take(LBRACE);
+			while (takes(vars))
+				VarDeclaration();
+			while (takes(methods))
+				MethodDeclaration();
+			take(RBRACE);
+		}
+
+		private void VarDeclaration() throws ParseException {
+			Type();
+			take(IDENT);
+			take(SEMICOLON);
+		}
+
+		private void MethodDeclaration() throws ParseException {
+			take(PUBLIC);
+			Type();
+			take(IDENT);
+			take(LPAREN);
+			if (takes(7)) {
+				FormalParameter();
+				while (takes(9)) {
+					take(COMMA);
+					FormalParameter();
+				}
+			}
+			take(RPAREN);
+			take(LBRACE);
+			while (lookahead(2, 2))
+				VarDeclaration();
+			while (takes(8))
+				Statement();
+			take(RETURN);
+			Expression();
+			take(SEMICOLON);
+			take(RBRACE);
+		}
+
+		private void FormalParameter() throws ParseException {
+			Type();
+			take(IDENT);
+		}
+
+		private void Type() throws ParseException {
+			if (lookahead(3, 3)) {
+				take(INTEGER);
+				take(LSQPAREN);
+				take(RSQPAREN);
+			} else if (takes(10)) {
+				take(next());
+			} else {
+				throw error();
+			}
+		}
+
+		private void Statement() throws ParseException {
+			if (next() == LBRACE) {
+				take(LBRACE);
+				while (takes(13))
+					Statement();
+				take(RBRACE);
+				return;
+			}
+			passed[11] = gen;
+
+			if (lookahead(4, 2)) {
+				take(IDENT);
+				take(ASSIGN);
+				Expression();
+				take(SEMICOLON);
+			} else if (lookahead(5, 2)) {
+				take(IDENT);
+				take(LSQPAREN);
+				Expression();
+				take(RSQPAREN);
+				take(ASSIGN);
+				Expression();
+				take(SEMICOLON);
+			} else if (next() == IF) {
+				take(IF);
+				take(LPAREN);
+				Expression();
+				take(RPAREN);
+				Statement();
+				take(ELSE);
+				Statement();
+			} else if (next() == WHILE) {
+				take(WHILE);
+				take(LPAREN);
+				Expression();
+				take(RPAREN);
+				Statement();
+			} else if (next() == PRINT) {
+				take(PRINT);
+				take(LPAREN);
+				Expression();
+				take(RPAREN);
+				take(SEMICOLON);
+			} else {
+				throw pass(12);
+			}
+		}
+
+		// Binary operators in the order Expression tries them
+		private static final int[] OPERATORS = { AND, LT, PLUS, MINUS, TIMES };
+
+		private void Expression() throws ParseException {
+			for (int i = 0; i < OPERATORS.length; i++) {
+				if (lookahead(6 + i, Integer.MAX_VALUE)) {
+					PrimaryExpression();
+					take(OPERATORS[i]);
+					PrimaryExpression();
+					return;
+				}
+			}
+
+			if (lookahead(11, Integer.MAX_VALUE)) {
+				PrimaryExpression();
+				take(LSQPAREN);
+				PrimaryExpression();
+				take(RSQPAREN);
+			} else if (lookahead(12, Integer.MAX_VALUE)) {
+				PrimaryExpression();
+				take(DOT);
+				take(LENGTH);
+			} else if (lookahead(13, Integer.MAX_VALUE)) {
+				PrimaryExpression();
+				take(DOT);
+				take(IDENT);
+				take(LPAREN);
+				if (takes(15)) {
+					Expression();
+					while (takes(16)) {
+						take(COMMA);
+						Expression();
+					}
+				}
+				take(RPAREN);
+			} else if (takes(14)) {
+				PrimaryExpression();
+			} else {
+				throw error();
+			}
+		}
+
+		private void PrimaryExpression() throws ParseException {
+			if (takes(17)) {
+				take(next());
+			} else if (lookahead(14, 3)) {
+				take(NEW);
+				take(INTEGER);
+				take(LSQPAREN);
+				Expression();
+				take(RSQPAREN);
+			} else if (next() == NEW) {
+				take(NEW);
+				take(IDENT);
+				take(LPAREN);
+				take(RPAREN);
+			} else if (next() == NOT) {
+				take(NOT);
+				Expression();
+			} else if (next() == LPAREN) {
+				take(LPAREN);
+				Expression();
+				take(RPAREN);
+			} else {
+				throw pass(18);
+			}
+		}
+
+		// *** Lookahead ***
+
+		// Whether lookahead i matches, looking at most max tokens ahead
+		private boolean lookahead(int i, int max) {
+			left = max;
+			scanned = got = token;
+			try {
+				return !scan(i);
+			} catch (Found f) {
+				return true;
+			} finally {
+				save(i, max);
+			}
+		}
+
+		private void save(int i, int max) {
+			Call c = calls[i];
+			while (c.gen > gen) {
+				if (c.next == null) {
+					c = c.next = new Call();
+					break;
+				}
+				c = c.next;
+			}
+			c.gen = gen + max - left;
+			c.first = token;
+			c.arg = max;
+		}
+
+		// The scans return true when they fail to match
+
+		private boolean scan(int i) {
+			switch (i) {
+				case 0:
+				case 2:
+					return scanType() || scanToken(IDENT);
+				case 1:
+					return scanToken(CLASS) || scanToken(IDENT) || scanToken(LBRACE);
+				case 3:
+					return scanArrayType();
+				case 4:
+					return scanToken(IDENT) || scanToken(ASSIGN);
+				case 5:
+					return scanToken(IDENT) || scanToken(LSQPAREN);
+				case 11:
+					return scanPrimary() || scanToken(LSQPAREN);
+				case 12:
+					return scanPrimary() || scanToken(DOT) || scanToken(LENGTH);
+				case 13:
+					return scanPrimary() || scanToken(DOT) || scanToken(IDENT) || scanToken(LPAREN);
+				case 14:
+					return scanArrayAllocation();
+				default:
+					return scanPrimary() || scanToken(OPERATORS[i - 6]);
+			}
+		}
+
+		private boolean scanToken(int k) {
+			if (scanned == got) {
+				left--;
+				got++;
+			}
+			scanned++;
+
+			int n = s.fetch(scanned);
+			if (rescan && scanned >= token)
+				tried(k, scanned - token);
+
+			if (n != k)
+				return true;
+			if (left == 0 && scanned == got)
+				throw FOUND;
+			return false;
+		}
+
+		private static final Found FOUND = new Found();
+
+		private boolean scanType() {
+			int at = scanned;
+			if (!scanArrayType())
+				return false;
+			scanned = at;
+			if (!scanToken(BOOLEAN))
+				return false;
+			scanned = at;
+			if (!scanToken(INTEGER))
+				return false;
+			scanned = at;
+			return scanToken(IDENT);
+		}
+
+		private boolean scanArrayType() {
+			return scanToken(INTEGER) || scanToken(LSQPAREN) || scanToken(RSQPAREN);
+		}
+
+		private boolean scanArrayAllocation() {
+			return scanToken(NEW) || scanToken(INTEGER) || scanToken(LSQPAREN) || scanExpression() || scanToken(RSQPAREN);
+		}
+
+		// Tried in order, each alternative in full
+		private boolean scanExpression() {
+			int at = scanned;
+
+			for (int op : OPERATORS) {
+				if (!(scanPrimary() || scanToken(op) || scanPrimary()))
+					return false;
+				scanned = at;
+			}
+
+			if (!(scanPrimary() || scanToken(LSQPAREN) || scanPrimary() || scanToken(RSQPAREN)))
+				return false;
+			scanned = at;
+
+			if (!(scanPrimary() || scanToken(DOT) || scanToken(LENGTH)))
+				return false;
+			scanned = at;
+
+			if (!(scanPrimary() || scanToken(DOT) || scanToken(IDENT) || scanToken(LPAREN) || scanArguments()))
+				return false;
+			scanned = at;
+
+			return scanPrimary();
+		}
+
+		// The optional ExpressionList and the closing parenthesis
+		private boolean scanArguments() {
+			int at = scanned;
+
+			if (scanExpression()) {
+				scanned = at;
+			} else {
+				while (true) {
+					at = scanned;
+					if (scanToken(COMMA) || scanExpression()) {
+						scanned = at;
+						break;
+					}
+				}
+			}
+
+			return scanToken(RPAREN);
+		}
+
+		private boolean scanPrimary() {
+			int at = scanned;
+
+			for (int k : PRIMARY) {
+				if (!scanToken(k))
+					return false;
+				scanned = at;
+			}
+
+			if (!scanArrayAllocation())
+				return false;
+			scanned = at;
+
+			if (!(scanToken(NEW) || scanToken(IDENT) || scanToken(LPAREN) || scanToken(RPAREN)))
+				return false;
+			scanned = at;
+
+			if (!(scanToken(NOT) || scanExpression()))
+				return false;
+			scanned = at;
+
+			return scanToken(LPAREN) || scanExpression() || scanToken(RPAREN);
+		}
+
+		// Single-token primary expressions in the order they are tried
+		private static final int[] PRIMARY = { NUMBER, TRUE, FALSE, IDENT, THIS };
+
+		// *** The message ***
+
+		private ParseException error() {
+			long b = wanted >= 0 ? 1L << wanted : 0;
+			for (int i = 0; i < passed.length; i++) {
+				if (passed[i] == gen)
+					b |= CHOICES[i];
+			}
+
+			for (int k : ORDER) {
+				if ((b & 1L << k) != 0)
+					expected.add(k);
+			}
+
+			// Scan again every lookahead that got past the tokens taken;
+			// one that matches stops the rest of its calls
+			rescan = true;
+			for (int i = 0; i < calls.length; i++) {
+				try {
+					for (Call c = calls[i]; c != null; c = c.next) {
+						if (c.gen > gen) {
+							left = c.arg;
+							scanned = got = c.first;
+							scan(i);
+						}
+					}
+				} catch (Found f) {
+				}
+			}
+			rescan = false;
+			tried(EOF, 0);
+
+			return s.error(Math.min(token + 1, s.count - 1), expected);
+		}
+
+		// A lookahead tried kind at the token this far past the last
+		// taken. JavaCC collects the runs of tokens tried from the
+		// offending token on, but keeps a run only when it has it
+		// already, which only a run of one token can be
+		private void tried(int kind, int at) {
+			if (at >= 100)
+				return;
+
+			if (at == runLength + 1) {
+				if (runLength == 0)
+					runFirst = kind;
+				runLength++;
+			} else if (runLength != 0) {
+				if (runLength == 1 && expected.contains(runFirst))
+					expected.add(runFirst);
+				if (at != 0) {
+					runLength = at;
+					if (at == 1)
+						runFirst = kind;
+				}
+			}
+		}
+	}
+}
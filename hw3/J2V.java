@@ -2,37 +2,134 @@ import syntaxtree.*;
 import visitor.*;
 import xxx.*;
 
+import java.io.*;
+import java.util.*;
+
 public class J2V {
 
-	public static void main(String [] args) {
+	// Also set by J2M, which runs every stage in one JVM
+	static boolean parallel = false;
+	static boolean fast = false;
+	private static boolean flat = false;
+
+	// The server's classes from the last compile of each file
+	private static Map<String, ClassCache> caches = CompileServer.perFile();
+
+	public static void main(String [] args) throws IOException, InterruptedException {
+		boolean server = false;
+
+		for (String arg : args) {
+			// -parallel checks the method bodies on a fork-join pool
+			if (arg.equals("-parallel"))
+				parallel = true;
+
+			// -fast parses with FastParser instead of MiniJavaParser
+			if (arg.equals("-fast"))
+				fast = true;
+
+			// -flat parses into a FlatAst and compiles that instead
+			if (arg.equals("-flat"))
+				flat = true;
+
+			// -server answers framed requests, see CompileServer
+			if (arg.equals("-server"))
+				server = true;
+		}
+
+		// The flat passes run on one thread only
+		if (flat && parallel) {
+			System.err.println("-flat cannot be combined with -parallel");
+			System.exit(1);
+		}
+
+		if (server) {
+			// MiniJavaParser may be static, see CompileServer
+			fast = true;
+			CompileServer.serve((name, input, out) ->
+					translate(new ByteArrayInputStream(input), out, caches.computeIfAbsent(name, k -> new ClassCache())),
+					System.in, System.out);
+			return;
+		}
+
+		int status = translate(System.in, System.out, null);
+		if (status != 0)
+			System.exit(status);
+	}
+
+	// Print the Vapor for the program read from in, or why there is none;
+	// with a cache, only the classes that changed are compiled again
+	static int translate(InputStream in, PrintStream out, ClassCache cache) throws IOException {
+		if (flat)
+			return translateFlat(in, out);
+
 		Node root = null;
 		try {
-			root = new MiniJavaParser(System.in).Goal();
+			root = fast ? new FastParser(in).Goal() : new MiniJavaParser(in).Goal();
 			//System.out.println("Program parsed successfully");
 		}
 		catch (ParseException e) {
-			System.out.println(e.toString());
-			System.exit(1);
+			out.println(e.toString());
+			return 1;
 		}
 
 		// Build symbol table
 		SymbolTable st = new SymbolTable();
 		if (root.accept(st) == null) {
-			System.out.println("Type error");
-			System.exit(1);
-		} else {
-			// Type-check
-			/*if (root.accept(new XTypeCheck(st)) == null) {
-				System.out.println("Type error");
-				System.exit(1);
-			} else {
-				//System.out.println("Program type checked successfully");
-			}*/
-
-			// Translate MiniJava to Vapor
-			Translator t = new Translator(st);
-			root.accept(t);
+			out.println("Type error");
+			return 1;
 		}
+
+		if (cache != null) {
+			if (!cache.compile((Goal)root, st, parallel, out)) {
+				out.println("Type error");
+				return 1;
+			}
+			return 0;
+		}
+
+		// Type-check
+		XTypeCheck tc = new XTypeCheck(st);
+		XType ret = parallel ? tc.checkParallel((Goal)root) : root.accept(tc);
+
+		if (ret == null) {
+			out.println("Type error");
+			return 1;
+		}
+
+		// Translate MiniJava to Vapor, reusing the types found by the check
+		Translator t = new Translator(st, tc.typeTable);
+		t.out = new Emitter(out);
+		root.accept(t);
+		t.out.flush();
+
+		return 0;
+	}
+
+	private static int translateFlat(InputStream in, PrintStream out) {
+		FlatAst ast = null;
+		try {
+			ast = new FlatParser(in).Goal();
+		}
+		catch (ParseException e) {
+			out.println(e.toString());
+			return 1;
+		}
+
+		// Build symbol table, then type-check
+		SymbolTable st = new SymbolTable();
+		FlatTypeCheck tc = null;
+		if (st.build(ast) == null || (tc = new FlatTypeCheck(st, ast)).check() == null) {
+			out.println("Type error");
+			return 1;
+		}
+
+		// Translate MiniJava to Vapor, reusing what the check found
+		Translator t = new Translator(st, null);
+		t.out = new Emitter(out);
+		t.translate(ast, tc);
+		t.out.flush();
+
+		return 0;
 	}
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,174 @@
+package xxx;
+
+import syntaxtree.*;
+import visitor.DepthFirstVisitor;
+
+import java.io.*;
+import java.util.*;
+
+public class ClassCache {
+
+	// What one class, or the main class, translated to last time
+	private static class Unit {
+		String text;
+		int[] countsIn;
+		int[] countsOut;
+		boolean allocArray;
+		byte[] vapor;
+	}
+
+	// The symbol table of the last program accepted, less method locals,
+	// and its classes by name
+	private String shape = null;
+	private HashMap<String, Unit> units = new HashMap<String, Unit>();
+
+	// Type-check and translate root, whose symbol table st holds, printing
+	// the Vapor to out. A class is neither checked nor translated again if
+	// its tokens and the rest of the symbol table are what they were in
+	// the last program accepted and the labels before it are numbered
+	// the same. Returns false on a type error, having printed nothing
+	public synchronized boolean compile(Goal root, SymbolTable st, boolean parallel, PrintStream out) throws IOException {
+		String newShape = shape(st);
+		boolean reuse = newShape.equals(shape);
+
+		// The main class, then the others in source order
+		ArrayList<Node> nodes = new ArrayList<Node>();
+		ArrayList<String> names = new ArrayList<String>();
+
+		nodes.add(root.f0);
+		names.add(root.f0.f1.f0.toString());
+
+		for (Node node : root.f1.nodes) {
+			Node decl = ((TypeDeclaration)node).f0.choice;
+			nodes.add(node);
+			names.add(decl instanceof ClassDeclaration
+					? ((ClassDeclaration)decl).f1.f0.toString()
+					: ((ClassExtendsDeclaration)decl).f1.f0.toString());
+		}
+
+		String[] texts = new String[nodes.size()];
+		boolean[] checked = new boolean[nodes.size()];
+		XTypeCheck tc = new XTypeCheck(st);
+
+		if (!reuse) {
+			XType ret = parallel ? tc.checkParallel(root) : root.accept(tc);
+			if (ret == null)
+				return false;
+
+			Arrays.fill(checked, true);
+		}
+
+		for (int i = 0; i < nodes.size(); i++) {
+			texts[i] = text(nodes.get(i));
+			Unit u = units.get(names.get(i));
+
+			if (!checked[i] && (u == null || !u.text.equals(texts[i]))) {
+				if (nodes.get(i).accept(tc) == null)
+					return false;
+				checked[i] = true;
+			}
+		}
+
+		// Kept back until the whole program is through
+		ByteArrayOutputStream result = new ByteArrayOutputStream();
+
+		// Each class is translated on its own into vapor
+		ByteArrayOutputStream vapor = new ByteArrayOutputStream();
+
+		Translator t = new Translator(st, tc.typeTable);
+		t.out = new Emitter(vapor);
+		HashMap<String, Unit> next = new HashMap<String, Unit>();
+
+		for (int i = 0; i < nodes.size(); i++) {
+			Unit u = reuse ? units.get(names.get(i)) : null;
+			int[] counts = t.labelCounts();
+
+			if (u == null || !u.text.equals(texts[i]) || !Arrays.equals(u.countsIn, counts)) {
+				// Translation needs the types of this class's expressions
+				if (!checked[i] && nodes.get(i).accept(tc) == null)
+					return false;
+
+				boolean allocArray = t.allocArray;
+
+				vapor.reset();
+				t.allocArray = false;
+				nodes.get(i).accept(t);
+				t.out.flush();
+
+				u = new Unit();
+				u.text = texts[i];
+				u.countsIn = counts;
+				u.countsOut = t.labelCounts();
+				u.allocArray = t.allocArray;
+				u.vapor = vapor.toByteArray();
+
+				t.allocArray |= allocArray;
+			} else {
+				t.setLabelCounts(u.countsOut);
+				t.allocArray |= u.allocArray;
+			}
+
+			result.write(u.vapor);
+			next.put(names.get(i), u);
+		}
+
+		vapor.reset();
+		t.finish();
+		t.out.flush();
+		vapor.writeTo(result);
+
+		result.writeTo(out);
+
+		shape = newShape;
+		units = next;
+
+		return true;
+	}
+
+	// Every token of a class, so formatting and comments do not count
+	private static String text(Node n) {
+		final StringBuilder sb = new StringBuilder();
+
+		n.accept(new DepthFirstVisitor() {
+			public void visit(NodeToken token) {
+				sb.append(token.tokenImage).append(' ');
+			}
+		});
+
+		return sb.toString();
+	}
+
+	// The classes in the order the vmt constants are printed, with their
+	// parents, fields and method signatures
+	private static String shape(SymbolTable st) {
+		StringBuilder sb = new StringBuilder();
+
+		for (ClassType ct : st.classes.values()) {
+			sb.append(ct.name);
+			if (ct.parent != null)
+				sb.append(" extends ").append(ct.parent.name);
+			sb.append(" {");
+
+			appendVars(sb, st, ct.vars);
+
+			for (MethodType mt : ct.methods.values()) {
+				sb.append(' ').append(typeName(mt.returnType)).append(' ').append(mt.name).append('(');
+				appendVars(sb, st, mt.params);
+				sb.append(')');
+			}
+
+			sb.append(" }\n");
+		}
+
+		return sb.toString();
+	}
+
+	private static void appendVars(StringBuilder sb, SymbolTable st, SymbolMap<XType> vars) {
+		for (int i = 0; i < vars.size(); i++)
+			sb.append(' ').append(typeName(vars.value(i))).append(' ').append(st.symbols.name(vars.id(i))).append(';');
+	}
+
+	private static String typeName(XType t) {
+		return t.type == XType.TYPE.ID ? t.classType.name : t.type.toString();
+	}
+}
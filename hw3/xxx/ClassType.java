@@ -4,19 +4,44 @@ import java.util.*;
 
 public class ClassType {
 
-	public LinkedHashMap<String, XType> vars;
-	public LinkedHashMap<String, MethodType> methods;
+	// Keyed by symbol id, see Symbols
+	public SymbolMap<XType> vars;
+	public SymbolMap<MethodType> methods;
 	
 	public String name;
+	public int id;
 	public boolean found;
 	public ClassType parent;
 
-	public ClassType(String n) {
+	// The canonical XType for this class
+	public XType type;
+
+	// Own and inherited methods by name, built by SymbolTable.buildMethodTables
+	public SymbolMap<MethodEntry> methodTable = null;
+
+	// Interval of the class in the frozen hierarchy, see ClassHierarchy
+	public int pre = -1;
+	public int post = -1;
+
+	public ClassType(String n, int i) {
 		name = n;
+		id = i;
 		found = true;
 		parent = null;
 
-		vars = new LinkedHashMap<String, XType>();
-		methods = new LinkedHashMap<String, MethodType>();
+		type = new XType(XType.TYPE.ID, n);
+		type.classType = this;
+
+		vars = new SymbolMap<XType>();
+		methods = new SymbolMap<MethodType>();
+	}
+
+	// Offset of this class's first field in an object, after the
+	// fields of all its ancestors
+	public int firstField() {
+		int n = 0;
+		for (ClassType p = parent; p != null; p = p.parent)
+			n += p.vars.size();
+		return n;
 	}
 }
\ No newline at end of file
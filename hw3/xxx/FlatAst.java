@@ -0,0 +1,125 @@
+package xxx;
+
+import java.util.*;
+
+public class FlatAst {
+
+	// Node kinds. The children of each kind, in order:
+	//   GOAL           MAIN_CLASS, then CLASS or CLASS_EXTENDS*
+	//   MAIN_CLASS     IDENT (the String[] parameter), VAR_DECL*, statement*
+	//   CLASS          VAR_DECL*, METHOD*
+	//   CLASS_EXTENDS  IDENT (the parent), VAR_DECL*, METHOD*
+	//   METHOD         type, PARAM*, VAR_DECL*, statement*, RETURN
+	//   VAR_DECL       type
+	//   PARAM          type
+	//   RETURN         expression
+	//   BLOCK          statement*
+	//   ASSIGN         expression
+	//   ARRAY_ASSIGN   index, expression
+	//   IF             condition, statement, statement
+	//   WHILE          condition, statement
+	//   PRINT          expression
+	//   AND .. TIMES   left, right
+	//   ARRAY_LOOKUP   array, index
+	//   ARRAY_LENGTH   array
+	//   CALL           receiver, argument*
+	//   NEW_ARRAY      length
+	//   NOT            expression
+	// Declarations, ASSIGN, ARRAY_ASSIGN, CALL, IDENT, TYPE_ID, NEW and
+	// INT_LITERAL carry a symbol id in value. Brackets leave no node.
+	public static final int GOAL = 0;
+	public static final int MAIN_CLASS = 1;
+	public static final int CLASS = 2;
+	public static final int CLASS_EXTENDS = 3;
+	public static final int METHOD = 4;
+	public static final int VAR_DECL = 5;
+	public static final int PARAM = 6;
+	public static final int RETURN = 7;
+	public static final int TYPE_ARRAY = 8;
+	public static final int TYPE_BOOLEAN = 9;
+	public static final int TYPE_INT = 10;
+	public static final int TYPE_ID = 11;
+	public static final int BLOCK = 12;
+	public static final int ASSIGN = 13;
+	public static final int ARRAY_ASSIGN = 14;
+	public static final int IF = 15;
+	public static final int WHILE = 16;
+	public static final int PRINT = 17;
+	public static final int AND = 18;
+	public static final int LT = 19;
+	public static final int PLUS = 20;
+	public static final int MINUS = 21;
+	public static final int TIMES = 22;
+	public static final int ARRAY_LOOKUP = 23;
+	public static final int ARRAY_LENGTH = 24;
+	public static final int CALL = 25;
+	public static final int INT_LITERAL = 26;
+	public static final int TRUE = 27;
+	public static final int FALSE = 28;
+	public static final int IDENT = 29;
+	public static final int THIS = 30;
+	public static final int NEW_ARRAY = 31;
+	public static final int NEW = 32;
+	public static final int NOT = 33;
+
+	// No child or no next sibling
+	public static final int NIL = -1;
+
+	// Node n is kind[n] with its first child at child[n] and its next
+	// sibling at next[n]; token[n] is the index of its first token
+	public int[] kind;
+	public int[] child;
+	public int[] next;
+	public int[] value;
+	public int[] token;
+	public int size = 0;
+
+	public int root = NIL;
+
+	// Identifiers and literals, interned by their spelling
+	public Symbols symbols = new Symbols();
+
+	public FlatAst(int capacity) {
+		capacity = Math.max(capacity, 16);
+		kind = new int[capacity];
+		child = new int[capacity];
+		next = new int[capacity];
+		value = new int[capacity];
+		token = new int[capacity];
+	}
+
+	// A new node over the chain of siblings starting at first
+	public int add(int k, int v, int t, int first) {
+		if (size == kind.length)
+			grow();
+
+		kind[size] = k;
+		child[size] = first;
+		next[size] = NIL;
+		value[size] = v;
+		token[size] = t;
+		return size++;
+	}
+
+	public int add(int k, int v, int t) {
+		return add(k, v, t, NIL);
+	}
+
+	// Drop the spare capacity once the tree is complete
+	public void trim() {
+		kind = Arrays.copyOf(kind, size);
+		child = Arrays.copyOf(child, size);
+		next = Arrays.copyOf(next, size);
+		value = Arrays.copyOf(value, size);
+		token = Arrays.copyOf(token, size);
+	}
+
+	private void grow() {
+		int capacity = kind.length * 2;
+		kind = Arrays.copyOf(kind, capacity);
+		child = Arrays.copyOf(child, capacity);
+		next = Arrays.copyOf(next, capacity);
+		value = Arrays.copyOf(value, capacity);
+		token = Arrays.copyOf(token, capacity);
+	}
+}
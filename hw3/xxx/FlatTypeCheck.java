@@ -0,0 +1,255 @@
+package xxx;
+
+import java.util.*;
+
+import static xxx.FlatAst.*;
+
+public class FlatTypeCheck {
+
+	public SymbolTable symbolTable;
+
+	private FlatAst ast;
+	private int[] kind;
+	private int[] child;
+	private int[] next;
+	private int[] value;
+
+	// Classes by symbol id, null for ids that name no class
+	private ClassType[] classes;
+
+	private ClassType scopeClass = null;
+	private MethodType scopeMethod = null;
+
+	// For the translator, by node: the class a CALL is sent to, and where
+	// the variable of an IDENT, ASSIGN or ARRAY_ASSIGN is kept, -1 for a
+	// local or param, else the field's slot as XTypeCheck binds it
+	public ClassType[] receivers;
+	public int[] fields;
+
+	// The symbol table must have been built from the same tree
+	public FlatTypeCheck(SymbolTable st, FlatAst a) {
+		symbolTable = st;
+		ast = a;
+		kind = a.kind;
+		child = a.child;
+		next = a.next;
+		value = a.value;
+
+		classes = new ClassType[st.symbols.size()];
+		for (ClassType ct : st.classes.values())
+			classes[ct.id] = ct;
+
+		receivers = new ClassType[a.size];
+		fields = new int[a.size];
+	}
+
+	// Accepts exactly the programs XTypeCheck accepts
+	public XType check() {
+		int main = child[ast.root];
+
+		// Begin class and method scope
+		scopeClass = classes[value[main]];
+		scopeMethod = scopeClass.methods.get(symbolTable.symbols.lookup("main"));
+
+		// Statement, after the parameter and VarDeclaration
+		for (int c = next[child[main]]; c != NIL; c = next[c]) {
+			if (kind[c] != VAR_DECL && !statement(c))
+				return null;
+		}
+
+		for (int n = next[main]; n != NIL; n = next[n]) {
+			// Begin class scope
+			scopeClass = classes[value[n]];
+
+			// MethodDeclaration
+			for (int c = child[n]; c != NIL; c = next[c]) {
+				if (kind[c] == METHOD && !method(c))
+					return null;
+			}
+		}
+
+		scopeMethod = null;
+		scopeClass = null;
+
+		return XType.OTHER;
+	}
+
+	private boolean method(int n) {
+		// Begin method scope
+		scopeMethod = scopeClass.methods.get(value[n]);
+
+		// Statement, after the return type, FormalParameter and
+		// VarDeclaration; the last child is the return
+		for (int c = next[child[n]]; c != NIL; c = next[c]) {
+			switch (kind[c]) {
+				case PARAM:
+				case VAR_DECL:
+					break;
+
+				case RETURN:
+					// Checks if the return type equals the expression type
+					XType expType = expression(child[c]);
+					return expType != null && symbolTable.isSubclass(expType, scopeMethod.returnType);
+
+				default:
+					if (!statement(c))
+						return false;
+			}
+		}
+
+		return false;
+	}
+
+	private boolean statement(int n) {
+		int c = child[n];
+
+		switch (kind[n]) {
+			case BLOCK:
+				for (; c != NIL; c = next[c]) {
+					if (!statement(c))
+						return false;
+				}
+				return true;
+
+			case ASSIGN: {
+				XType idType = variable(n);
+				XType expType = expression(c);
+				return idType != null && expType != null && symbolTable.isSubclass(expType, idType);
+			}
+
+			case ARRAY_ASSIGN:
+				return variable(n) == XType.ARRAY
+						&& expression(c) == XType.INTEGER
+						&& expression(next[c]) == XType.INTEGER;
+
+			case IF:
+				return expression(c) == XType.BOOLEAN
+						&& statement(next[c])
+						&& statement(next[next[c]]);
+
+			case WHILE:
+				return expression(c) == XType.BOOLEAN && statement(next[c]);
+
+			case PRINT:
+				return expression(c) == XType.INTEGER;
+
+			default:
+				return false;
+		}
+	}
+
+	private XType expression(int n) {
+		int c = child[n];
+
+		switch (kind[n]) {
+			case AND:
+				return expression(c) == XType.BOOLEAN && expression(next[c]) == XType.BOOLEAN ? XType.BOOLEAN : null;
+
+			case LT:
+				return expression(c) == XType.INTEGER && expression(next[c]) == XType.INTEGER ? XType.BOOLEAN : null;
+
+			case PLUS:
+			case MINUS:
+			case TIMES:
+				return expression(c) == XType.INTEGER && expression(next[c]) == XType.INTEGER ? XType.INTEGER : null;
+
+			case ARRAY_LOOKUP:
+				return expression(c) == XType.ARRAY && expression(next[c]) == XType.INTEGER ? XType.INTEGER : null;
+
+			case ARRAY_LENGTH:
+				return expression(c) == XType.ARRAY ? XType.INTEGER : null;
+
+			case CALL:
+				return call(n);
+
+			case INT_LITERAL:
+				return XType.INTEGER;
+
+			case TRUE:
+			case FALSE:
+				return XType.BOOLEAN;
+
+			case IDENT:
+				return variable(n);
+
+			case THIS:
+				return scopeClass.type;
+
+			case NEW_ARRAY:
+				return expression(c) == XType.INTEGER ? XType.ARRAY : null;
+
+			case NEW: {
+				ClassType ct = classes[value[n]];
+				return ct == null ? null : ct.type;
+			}
+
+			case NOT:
+				return expression(c) == XType.BOOLEAN ? XType.BOOLEAN : null;
+
+			default:
+				return null;
+		}
+	}
+
+	private XType call(int n) {
+		int c = child[n];
+		XType priExpType = expression(c);
+
+		// PrimaryExpression
+		if (priExpType == null || priExpType.type != XType.TYPE.ID)
+			return null;
+
+		receivers[n] = priExpType.classType;
+		MethodEntry entry = priExpType.classType.methodTable.get(value[n]);
+
+		if (entry == null)
+			return null;
+
+		MethodType mt = entry.methodType;
+
+		// The arguments must match the parameters one for one
+		List<XType> params = mt.params.values();
+		int i = 0;
+
+		for (c = next[c]; c != NIL; c = next[c]) {
+			if (i == params.size())
+				return null;
+
+			XType argType = expression(c);
+			if (argType == null || !symbolTable.isSubclass(argType, params.get(i++)))
+				return null;
+		}
+
+		if (i != params.size())
+			return null;
+
+		return mt.returnType;
+	}
+
+	// Type of the local var, param or class field node n names, or null
+	// if undeclared
+	private XType variable(int n) {
+		int id = value[n];
+		XType t = scopeMethod.vars.get(id);
+
+		if (t == null)
+			t = scopeMethod.params.get(id);
+
+		if (t != null) {
+			fields[n] = -1;
+			return t;
+		}
+
+		// The nearest field up, at the same offset as in XTypeCheck
+		for (ClassType ct = scopeClass; ct != null; ct = ct.parent) {
+			int slot = ct.vars.indexOf(id);
+
+			if (slot >= 0) {
+				fields[n] = ct.firstField() + slot;
+				return ct.vars.value(slot);
+			}
+		}
+
+		return null;
+	}
+}
@@ -0,0 +1,111 @@
+package xxx;
+
+import java.util.*;
+
+public class SymbolMap<V> {
+
+	// Entries in insertion order; the index is open addressing on the
+	// symbol id and holds position+1 into them, 0 is empty
+	private int[] ids;
+	private ArrayList<V> values;
+	private int[] index;
+	private boolean frozen = false;
+
+	public SymbolMap() {
+		ids = new int[4];
+		values = new ArrayList<V>(4);
+		index = new int[8];
+	}
+
+	// A mutable copy of m, in the same order
+	public SymbolMap(SymbolMap<V> m) {
+		ids = m.ids.clone();
+		values = new ArrayList<V>(m.values);
+		index = m.index.clone();
+	}
+
+	// Position of id in insertion order, or -1 if it is not in the map
+	public int indexOf(int id) {
+		if (id < 0)
+			return -1;
+
+		int p = index[probe(id)];
+		return p - 1;
+	}
+
+	public V get(int id) {
+		int i = indexOf(id);
+		return i < 0 ? null : values.get(i);
+	}
+
+	public boolean containsKey(int id) {
+		return indexOf(id) >= 0;
+	}
+
+	// Insert or replace; a replaced entry keeps its position
+	public V put(int id, V v) {
+		if (frozen)
+			throw new UnsupportedOperationException();
+
+		int h = probe(id);
+
+		if (index[h] != 0)
+			return values.set(index[h] - 1, v);
+
+		int n = values.size();
+		if (n == ids.length)
+			ids = Arrays.copyOf(ids, n * 2);
+
+		ids[n] = id;
+		values.add(v);
+		index[h] = n + 1;
+
+		if ((n + 1) * 2 > index.length)
+			rehash();
+
+		return null;
+	}
+
+	public int size() {
+		return values.size();
+	}
+
+	// Symbol id of the entry at position i
+	public int id(int i) {
+		return ids[i];
+	}
+
+	// Value of the entry at position i
+	public V value(int i) {
+		return values.get(i);
+	}
+
+	public List<V> values() {
+		return Collections.unmodifiableList(values);
+	}
+
+	// Reject any further put
+	public SymbolMap<V> freeze() {
+		frozen = true;
+		return this;
+	}
+
+	// Fibonacci hashing: the top log2(index.length) bits of the product,
+	// so every slot of a large index can be a starting point
+	private int probe(int id) {
+		int mask = index.length - 1;
+		int h = (id * 0x9E3779B9) >>> Integer.numberOfLeadingZeros(mask);
+
+		while (index[h] != 0 && ids[index[h] - 1] != id)
+			h = (h + 1) & mask;
+
+		return h;
+	}
+
+	private void rehash() {
+		index = new int[index.length * 2];
+
+		for (int i = 0; i < values.size(); i++)
+			index[probe(ids[i])] = i + 1;
+	}
+}
@@ -7,11 +7,16 @@ import java.util.*;
 public class Translator extends DepthFirstVisitor {
 
 	private SymbolTable symbolTable = new SymbolTable();
+	private TypeTable typeTable;
 	
 	private LastExp lastExp = null;
 	private int indent = 0;
-	private boolean typeIdentifierScope = false;
-	private boolean allocArray = false;
+
+	// Set once some class needs the ArrayAllocZ helper
+	public boolean allocArray = false;
+
+	// Where the Vapor goes; whoever sets it flushes it
+	public Emitter out;
 	
 	private int varNameCount = 0;
 	private int elseLabelCount = 0;
@@ -29,26 +34,46 @@ public class Translator extends DepthFirstVisitor {
 		public enum Type {INT, BOOLEAN, ID, EXP}
 	}
 
-	public Translator(SymbolTable st) {
+	// Types and bindings come from XTypeCheck, which must have
+	// accepted the same tree
+	public Translator(SymbolTable st, TypeTable tt) {
 		symbolTable = st;
+		typeTable = tt;
 	}
 
 	public class LastExp {
 		LE.Type type;
 		String string;
-		ClassType classType;
 
 		public LastExp(String s, LE.Type t) {
-			this(s, t, null);
-		}
-
-		public LastExp(String s, LE.Type t, ClassType ct) {
 			string = s;
 			type = t;
-			classType = ct;
 		}	
 	}
 
+	// The label counters, so a caller translating one class at a time
+	// can carry on after a class whose Vapor it already has
+	public int[] labelCounts() {
+		return new int[] {
+			elseLabelCount, ifEndLabelCount, nullLabelCount, whileLabelCount,
+			whileElseLabelCount, andElseLabelCount, andEndLabelCount,
+			notElseLabelCount, notEndLabelCount, outofboundsLabelCount
+		};
+	}
+
+	public void setLabelCounts(int[] c) {
+		elseLabelCount = c[0];
+		ifEndLabelCount = c[1];
+		nullLabelCount = c[2];
+		whileLabelCount = c[3];
+		whileElseLabelCount = c[4];
+		andElseLabelCount = c[5];
+		andEndLabelCount = c[6];
+		notElseLabelCount = c[7];
+		notEndLabelCount = c[8];
+		outofboundsLabelCount = c[9];
+	}
+
 	private void resetNamingCount() {
 		varNameCount = 0;
 	}
@@ -97,66 +122,48 @@ public class Translator extends DepthFirstVisitor {
 		return "out_of_bounds_" + outofboundsLabelCount++;
 	}
 
-	private int getMethodIndex(ClassType ct, String method) {
-		int index = 0;
-		for (MethodType mt : ct.methods.values()) {
-			if (mt.name.equals(method))
-				return index;
-			index++;
-		}
-		return -1; // Only if the methods are not found in its class
-	}
+	private int getNumFields(ClassType ct) {
+		int numFields = ct.vars.size();
 
-	private int getFieldIndex(ClassType ct, String field) {
-		int index = 0;
-		for (String f : ct.vars.keySet()) {
-			if (f.equals(field))
-				return index;
-			index++;
-		}
-		// At this point we know that the class field belongs
-		// to our ancestor(s)
 		ClassType parent = ct.parent;
 
 		while (parent != null) {
-			for (String f : parent.vars.keySet()) {
-				if (f.equals(field))
-					return index;
-				index++;
-			}
+			numFields += parent.vars.size();
 			parent = parent.parent;
 		}
-		// In practice, this will never happen bcos
-		// we already type-check
-		return -1; 
+
+		return numFields;
 	}
 
-	private int getNumFields(ClassType ct) {
-		int numFields = ct.vars.values().size();
+	private void printx(String str, Object... args) {
+		out.print(indent, str, args);
+	}
 
-		ClassType parent = ct.parent;
+	// The lines printed most, without a format
 
-		while (parent != null) {
-			numFields += parent.vars.values().size();
-			parent = parent.parent;
-		}
+	// dest = src
+	private void assign(String dest, String src) {
+		out.indent(indent).append(dest).append(" = ").append(src).newline();
+	}
 
-		return numFields;
+	// if cond goto :label, or if0
+	private void branch(String op, String cond, String label) {
+		out.indent(indent).append(op).append(' ').append(cond).append(" goto ").label(label).newline();
 	}
 
-	private void printx(String str, Object... args) {
-		String indentStr = "";
-		for (int i = 0; i < indent; i++)
-			indentStr += "  ";
+	private void jump(String label) {
+		out.indent(indent).append("goto ").label(label).newline();
+	}
 
-		System.out.println(String.format(indentStr + str, args));
+	private void label(String label) {
+		out.indent(indent).append(label).append(':').newline();
 	}
 
 	private String printVar(LastExp le) {
 		String v;
 		if (le.type == LE.Type.EXP) {
 			v = varName();
-			printx("%s = %s", v, le.string);
+			assign(v, le.string);
 		} else {
 			v = le.string;
 		}
@@ -165,11 +172,11 @@ public class Translator extends DepthFirstVisitor {
 
 	private void printNullPointer(String addr) {
 		String nullLabel = nullLabel();
-		printx("if %s goto :%s", addr, nullLabel);
+		branch("if", addr, nullLabel);
 		indent++;
 		printx("Error(\"null pointer\")");
 		indent--;
-		printx("%s:", nullLabel);
+		label(nullLabel);
 	}	
 
 	private void printArrayAllocFunc() {
@@ -195,24 +202,24 @@ public class Translator extends DepthFirstVisitor {
 		String cond3 = varName();
 		String outofboundsLabel = outofboundsLabel();
 
-		printx("%s = [%s]", size, baseAddr);
+		assign(size, "[" + baseAddr + "]");
 		printx("%s = LtS(%s %s)", cond1, index, 0);
 		printx("%s = Eq(%s %s)", cond2, index, size);
 		printx("%s = LtS(%s %s)", cond3, size, index); // size < index === index > size
 		printx("%s = Add(%s %s)", cond2, cond1, cond2);
 		printx("%s = Add(%s %s)", cond3, cond2, cond3);
-		printx("if0 %s goto :%s", cond3, outofboundsLabel);
+		branch("if0", cond3, outofboundsLabel);
 		indent++;
 		printx("Error(\"array index out of bounds\")");
 		indent--;
-		printx("%s:", outofboundsLabel);	
+		label(outofboundsLabel);	
 	}
 
-	private String getParamsString(LinkedHashMap<String, XType> params) {
+	private String getParamsString(SymbolMap<XType> params) {
 		StringBuilder paramsStr = new StringBuilder();
 
-		for (String p : params.keySet()) {
-			paramsStr.append(" " + p);
+		for (int i = 0; i < params.size(); i++) {
+			paramsStr.append(" " + symbolTable.symbols.name(params.id(i)));
 		}
 
 		return paramsStr.toString();
@@ -224,38 +231,54 @@ public class Translator extends DepthFirstVisitor {
 		n.f0.accept(this);
       	n.f1.accept(this);
 
+      	finish();
+	}
+
+	// What follows the last class
+	public void finish() {
       	// Print the helper function that allocates memory for array
       	if (allocArray) {
-      		System.out.println();
+      		out.newline();
       		printArrayAllocFunc();
       	}
 	}
 
 	public void visit(MainClass n) {
-		// Print classes and their methods
-		// so other functions can refer to them later
+		printVmts(n.f1.f0.toString());
+
+		printx("func Main()");
+		indent++;
+
+		n.f15.accept(this);
+
+		printx("ret");
+		indent--;
+	}
+
+	// Print classes and their methods
+	// so other functions can refer to them later
+	private void printVmts(String mainClass) {
 		for (ClassType ct : symbolTable.classes.values()) {
 			// Skip the main class
-			if ( !ct.name.equals(n.f1.f0.toString()) ) {
+			if ( !ct.name.equals(mainClass) ) {
 				printx("const vmt_%s", ct.name);
 				indent++;
 
-				// Print methods
-				for (String methodName : ct.methods.keySet())
-					printx(":%s.%s", ct.name, methodName);
+				// Print own and inherited methods, in slot order
+				for (int i = 0; i < ct.methodTable.size(); i++) {
+					MethodEntry entry = ct.methodTable.value(i);
+
+					// A main inherited from the main class is its func Main
+					if (entry.definingClass.name.equals(mainClass))
+						printx(":Main");
+					else
+						printx(":%s.%s", entry.definingClass.name, entry.methodType.name);
+				}
 
 				indent--;
-				System.out.println();
+				out.newline();
 			}
 		}
-
-		printx("func Main()");
-		indent++;
-
-		n.f15.accept(this);
-
-		printx("ret");
-		indent--;
 	}
 
 	public void visit(TypeDeclaration n) {
@@ -286,9 +309,9 @@ public class Translator extends DepthFirstVisitor {
 
 	public void visit(MethodDeclaration n) {
 
-		System.out.println();
+		out.newline();
 
-		MethodType mt = symbolTable.scopeClass.methods.get(n.f2.f0.toString());
+		MethodType mt = symbolTable.scopeClass.methods.get(symbolTable.symbols.lookup(n.f2.f0.toString()));
 
 		// Begin method scope
 		symbolTable.scopeMethod = mt;
@@ -330,12 +353,12 @@ public class Translator extends DepthFirstVisitor {
 		String val;
 		if (lhs.type == LE.Type.EXP && rhs.type == LE.Type.EXP) {
 			val = varName();
-			printx("%s = %s", val, rhs.string);
+			assign(val, rhs.string);
 		} else {
 			val = rhs.string;
 		}
 
-		printx("%s = %s", lhs.string, val);
+		assign(lhs.string, val);
 	}
 
 	public void visit(ArrayAssignmentStatement n) {
@@ -372,22 +395,22 @@ public class Translator extends DepthFirstVisitor {
 		String ifEndLabel = ifEndLabel();
 		String condVar = printVar(lastExp);
 
-		printx("if0 %s goto :%s", condVar, elseLabel);
+		branch("if0", condVar, elseLabel);
 		indent++;
 
 		// If Statement
 		n.f4.accept(this);
 
-		printx("goto :%s", ifEndLabel);
+		jump(ifEndLabel);
 		indent--;
-		printx("%s:", elseLabel);
+		label(elseLabel);
 		indent++;
 
 		// Else Statement
 		n.f6.accept(this);
 
 		indent--;
-		printx("%s:", ifEndLabel);
+		label(ifEndLabel);
 	}
 
 	public void visit(WhileStatement n) {
@@ -397,20 +420,20 @@ public class Translator extends DepthFirstVisitor {
 		// IMPORTANT: make sure the while label
 		// goes to the point where conditional
 		// expression is updated and checked
-		printx("%s:", whileLabel);
+		label(whileLabel);
 
 		// While Expression
 		n.f2.accept(this);
 
-		printx("if0 %s goto :%s", printVar(lastExp), elseLabel);
+		branch("if0", printVar(lastExp), elseLabel);
 		indent++;
 
 		// Body Statement
 		n.f4.accept(this);
 
-		printx("goto :%s", whileLabel);
+		jump(whileLabel);
 		indent--;
-		printx("%s:", elseLabel);
+		label(elseLabel);
 	}
 
 	public void visit(PrintStatement n) {
@@ -433,7 +456,7 @@ public class Translator extends DepthFirstVisitor {
 		String andEndLabel = andEndLabel();
 		String vl = printVar(lhs);
 
-		printx("if0 %s goto :%s", vl, andElseLabel);
+		branch("if0", vl, andElseLabel);
 		indent++;
 
 		// PrimaryExpression
@@ -443,12 +466,12 @@ public class Translator extends DepthFirstVisitor {
 		String vr = printVar(rhs);
 		String finalRes = varName();
 
-		printx("%s = %s", finalRes, vr);
-		printx("goto :%s", andEndLabel);
+		assign(finalRes, vr);
+		jump(andEndLabel);
 		indent--;
-		printx("%s:", andElseLabel);
+		label(andElseLabel);
 		printx("%s = 0", finalRes);
-		printx("%s:", andEndLabel);
+		label(andEndLabel);
 		
 		lastExp = new LastExp(finalRes, LE.Type.ID);
 	}
@@ -462,7 +485,7 @@ public class Translator extends DepthFirstVisitor {
 		n.f2.accept(this);
 		LastExp rhs = lastExp;
 		
-		lastExp = new LastExp(String.format("LtS(%s %s)", printVar(lhs), printVar(rhs)), LE.Type.EXP);
+		lastExp = new LastExp("LtS(" + printVar(lhs) + " " + printVar(rhs) + ")", LE.Type.EXP);
 	}
 
 	public void visit(PlusExpression n) {
@@ -474,7 +497,7 @@ public class Translator extends DepthFirstVisitor {
 		n.f2.accept(this);
 		LastExp rhs = lastExp;
 
-		lastExp = new LastExp(String.format("Add(%s %s)", printVar(lhs), printVar(rhs)), LE.Type.EXP);
+		lastExp = new LastExp("Add(" + printVar(lhs) + " " + printVar(rhs) + ")", LE.Type.EXP);
 	}
 
 	public void visit(MinusExpression n) {
@@ -486,7 +509,7 @@ public class Translator extends DepthFirstVisitor {
 		n.f2.accept(this);
 		LastExp rhs = lastExp;
 
-		lastExp = new LastExp(String.format("Sub(%s %s)", printVar(lhs), printVar(rhs)), LE.Type.EXP);
+		lastExp = new LastExp("Sub(" + printVar(lhs) + " " + printVar(rhs) + ")", LE.Type.EXP);
 	}
 
 	public void visit(TimesExpression n) {
@@ -498,7 +521,7 @@ public class Translator extends DepthFirstVisitor {
 		n.f2.accept(this);
 		LastExp rhs = lastExp;
 
-		lastExp = new LastExp(String.format("MulS(%s %s)", printVar(lhs), printVar(rhs)), LE.Type.EXP);
+		lastExp = new LastExp("MulS(" + printVar(lhs) + " " + printVar(rhs) + ")", LE.Type.EXP);
 	}
 
 	public void visit(ArrayLookup n) {
@@ -519,7 +542,7 @@ public class Translator extends DepthFirstVisitor {
 		printx("%s = MulS(%s 4)", offset, offset);
 		printx("%s = Add(%s %s)", bytes, baseAddr, offset);
 
-		lastExp = new LastExp(String.format("[%s]", bytes), LE.Type.EXP);
+		lastExp = new LastExp("[" + bytes + "]", LE.Type.EXP);
 	}
 
 	public void visit(ArrayLength n) {
@@ -528,43 +551,14 @@ public class Translator extends DepthFirstVisitor {
 
 		printNullPointer(baseAddr);
 
-		lastExp = new LastExp(String.format("[%s]", baseAddr), LE.Type.EXP);
-	}
-
-	private class ClassMethod {
-		ClassType classType;
-		MethodType methodType;
-
-		public ClassMethod(ClassType ct, MethodType mt) {
-			classType = ct;
-			methodType = mt;
-		}
-	}
-
-	private ClassMethod getClassMethod(ClassType ct, String method) {
-		MethodType mt = ct.methods.get(method);
-
-		if (mt != null)
-			return new ClassMethod(ct, mt);
-
-		ClassType parent = ct.parent;
-
-		while (parent != null) {
-			mt = parent.methods.get(method);
-			if (mt != null)
-				return new ClassMethod(parent, mt);
-
-			parent = parent.parent;	
-		}
-
-		return null;
+		lastExp = new LastExp("[" + baseAddr + "]", LE.Type.EXP);
 	}
 
 	public void visit(MessageSend n) {
 		// PrimaryExpression
 		n.f0.accept(this);
-		LastExp le = lastExp;
-		String callInstance = printVar(le);
+		ClassType receiver = typeTable.typeOf(n.f0).classType;
+		String callInstance = printVar(lastExp);
 
 		// Check if the class pointer is null
 		if ( !callInstance.equals("this") )
@@ -587,31 +581,18 @@ public class Translator extends DepthFirstVisitor {
 		}
 
 		// ***
-		ClassMethod cm = getClassMethod(le.classType, method);
+		MethodEntry entry = receiver.methodTable.get(symbolTable.symbols.lookup(method));
 		// ***
 
 		String funcVar = varName();
-		int methodIndex = getMethodIndex(le.classType, method);
-		if (methodIndex == -1) {
-
-			printx("%s = call :%s.%s(%s)", funcVar, cm.classType.name, method, params);			
-
-		} else {
-			String v1 = varName();
-
-			printx("%s = [%s]", v1, callInstance);
-			printx("%s = [%s+%d]", v1, v1, methodIndex*4);
-			printx("%s = call %s(%s)", funcVar, v1, params);
-		}
+		String v1 = varName();
 
-		
-		XType methodRetType = cm.methodType.returnType;
+		// Every method, inherited or not, is at its slot in the receiver's vmt
+		assign(v1, "[" + callInstance + "]");
+		out.indent(indent).append(v1).append(" = ").memory(v1, entry.slot*4).newline();
+		printx("%s = call %s(%s)", funcVar, v1, params);
 
-		if (methodRetType.type == XType.TYPE.ID) {
-			lastExp = new LastExp(funcVar, LE.Type.ID, symbolTable.classes.get(methodRetType.name));
-		} else {
-			lastExp = new LastExp(funcVar, LE.Type.ID);
-		}
+		lastExp = new LastExp(funcVar, LE.Type.ID);
 	}
 
 	public void visit(PrimaryExpression n) {
@@ -633,63 +614,22 @@ public class Translator extends DepthFirstVisitor {
 	public void visit(Identifier n) {
 
 		String id = n.f0.toString();
+		Binding b = typeTable.bindingOf(n);
 
-		if (typeIdentifierScope) {
-			lastExp = new LastExp(id, LE.Type.ID, symbolTable.classes.get(id));	
-		} else {
-			XType vt = symbolTable.scopeMethod.vars.get(id);
-
-			// Check if id is a local var
-			if (vt != null) {
-				if (vt.type == XType.TYPE.ID)
-					lastExp = new LastExp(id, LE.Type.ID, symbolTable.classes.get(vt.name));
-				else
-					lastExp = new LastExp(id, LE.Type.ID);
-				return;
-			}
-
-			vt = symbolTable.scopeMethod.params.get(id);
-
-			// Check if id is a param
-			if (vt != null) {
-				if (vt.type == XType.TYPE.ID)
-					lastExp = new LastExp(id, LE.Type.ID, symbolTable.classes.get(vt.name));
-				else
-					lastExp = new LastExp(id, LE.Type.ID);
-				return;
-			}
-
-			// Check if id is a class field
-			int i = getFieldIndex(symbolTable.scopeClass, id);
-			String field = String.format("[this+%d]", (i+1)*4);
-
-			//*
-			vt = symbolTable.scopeClass.vars.get(id);
-
-			if (vt == null) {
-				ClassType parent = symbolTable.scopeClass.parent;
-
-				while (parent != null) {
-					vt = parent.vars.get(id);
+		// Locals and params are Vapor variables of the same name
+		if (b.kind != Binding.Kind.FIELD) {
+			lastExp = new LastExp(id, LE.Type.ID);
+			return;
+		}
 
-					if (vt != null)
-						break;
+		// Class field, after the vmt pointer
+		String field = "[this+" + (b.slot+1)*4 + "]";
 
-					parent = parent.parent;
-				}
-			}
-			//*
-
-			
-			if (vt.type == XType.TYPE.ID)
-				lastExp = new LastExp(field, LE.Type.EXP, symbolTable.classes.get(vt.name));
-			else
-				lastExp = new LastExp(field, LE.Type.EXP);
-		}
+		lastExp = new LastExp(field, LE.Type.EXP);
 	}
 
 	public void visit(ThisExpression n) {
-		lastExp = new LastExp("this", LE.Type.ID, symbolTable.scopeClass);
+		lastExp = new LastExp("this", LE.Type.ID);
 	}
 
 	public void visit(ArrayAllocationExpression n) {
@@ -707,24 +647,17 @@ public class Translator extends DepthFirstVisitor {
 	}
 
 	public void visit(AllocationExpression n) {
-		// Begin type identifier scope
-		typeIdentifierScope = true;
-
-		// Class Identifier
-		n.f1.accept(this);
-
-		// End type identifier scope
-		typeIdentifierScope = false;
+		ClassType ct = typeTable.typeOf(n).classType;
 
 		String v1 = varName();
 		String nullLabel = nullLabel();
-		int numFields = getNumFields(symbolTable.classes.get(lastExp.string));
+		int numFields = getNumFields(ct);
 
 		printx("%s = HeapAllocZ(%s)", v1, (numFields + 1)*4);
 		printNullPointer(v1);
-		printx("[%s] = :vmt_%s", v1, lastExp.string);
+		printx("[%s] = :vmt_%s", v1, ct.name);
 
-		lastExp = new LastExp(v1, LE.Type.ID, lastExp.classType);
+		lastExp = new LastExp(v1, LE.Type.ID);
 	}
 
 	public void visit(NotExpression n) {
@@ -735,14 +668,14 @@ public class Translator extends DepthFirstVisitor {
 		String notElseLabel = notElseLabel();
 		String notEndLabel = notEndLabel();
 
-		printx("if %s goto :%s", v, notElseLabel);
+		branch("if", v, notElseLabel);
 		indent++;
 		printx("%s = 1", r);
-		printx("goto :%s", notEndLabel);
+		jump(notEndLabel);
 		indent--;
-		printx("%s:", notElseLabel);
+		label(notElseLabel);
 		printx("%s = 0", r);
-		printx("%s:", notEndLabel);
+		label(notEndLabel);
 
 		lastExp = new LastExp(r, LE.Type.ID);
 	}
@@ -750,25 +683,404 @@ public class Translator extends DepthFirstVisitor {
 	public void visit(BracketExpression n) {
 		n.f1.accept(this);
 	}
-}
 
+	// *** Flat AST ***
 
+	private FlatAst ast;
+	private FlatTypeCheck flat;
 
+	// The same Vapor visit(Goal) prints, from a FlatAst; tc must have
+	// accepted it, against this translator's symbol table
+	public void translate(FlatAst a, FlatTypeCheck tc) {
+		ast = a;
+		flat = tc;
 
+		int main = ast.child[ast.root];
+		mainClass(main);
 
+		for (int n = ast.next[main]; n != FlatAst.NIL; n = ast.next[n]) {
+			// Begin class scope
+			symbolTable.scopeClass = symbolTable.classes.get(symbolTable.symbols.name(ast.value[n]));
 
+			// MethodDeclaration
+			for (int c = ast.child[n]; c != FlatAst.NIL; c = ast.next[c]) {
+				if (ast.kind[c] == FlatAst.METHOD)
+					method(c);
+			}
 
+			// End class scope
+			symbolTable.scopeClass = null;
+		}
 
+		finish();
+	}
 
+	private void mainClass(int n) {
+		printVmts(symbolTable.symbols.name(ast.value[n]));
 
+		printx("func Main()");
+		indent++;
 
+		// Statement, after the parameter and VarDeclaration
+		for (int c = ast.next[ast.child[n]]; c != FlatAst.NIL; c = ast.next[c]) {
+			if (ast.kind[c] != FlatAst.VAR_DECL)
+				statement(c);
+		}
 
+		printx("ret");
+		indent--;
+	}
 
+	private void method(int n) {
 
+		out.newline();
 
+		MethodType mt = symbolTable.scopeClass.methods.get(ast.value[n]);
 
+		// Begin method scope
+		symbolTable.scopeMethod = mt;
 
+		printx("func %s.%s(this%s)", symbolTable.scopeClass.name, mt.name, getParamsString(mt.params));
+		resetNamingCount();
+		indent++;
 
+		// Statement, after the return type, FormalParameter and
+		// VarDeclaration; the last child is the return
+		for (int c = ast.next[ast.child[n]]; c != FlatAst.NIL; c = ast.next[c]) {
+			switch (ast.kind[c]) {
+				case FlatAst.PARAM:
+				case FlatAst.VAR_DECL:
+					break;
+
+				case FlatAst.RETURN:
+					expression(ast.child[c]);
+					printx("ret %s", printVar(lastExp));
+					break;
+
+				default:
+					statement(c);
+			}
+		}
+
+		indent--;
+
+		// End method scope
+		symbolTable.scopeMethod = null;
+	}
+
+	private void statement(int n) {
+		int c = ast.child[n];
+
+		switch (ast.kind[n]) {
+			case FlatAst.BLOCK:
+				for (; c != FlatAst.NIL; c = ast.next[c])
+					statement(c);
+				break;
+
+			case FlatAst.ASSIGN: {
+				LastExp lhs = variable(n);
 
+				expression(c);
+				LastExp rhs = lastExp;
 
+				String val;
+				if (lhs.type == LE.Type.EXP && rhs.type == LE.Type.EXP) {
+					val = varName();
+					assign(val, rhs.string);
+				} else {
+					val = rhs.string;
+				}
+
+				assign(lhs.string, val);
+				break;
+			}
 
+			case FlatAst.ARRAY_ASSIGN: {
+				String baseAddr = printVar(variable(n));
+
+				printNullPointer(baseAddr);
+
+				// Array Index Expression
+				expression(c);
+				String index = printVar(lastExp);
+
+				printOutOfBounds(baseAddr, index);
+
+				String offset = varName();
+				String bytes = varName();
+
+				printx("%s = Add(%s 1)", offset, index);
+				printx("%s = MulS(%s 4)", offset, offset);
+				printx("%s = Add(%s %s)", bytes, baseAddr, offset);
+
+				// Array Elem New Value
+				expression(ast.next[c]);
+
+				printx("[%s] = %s", bytes, printVar(lastExp));
+				break;
+			}
+
+			case FlatAst.IF: {
+				expression(c);
+
+				String elseLabel = elseLabel();
+				String ifEndLabel = ifEndLabel();
+				String condVar = printVar(lastExp);
+
+				branch("if0", condVar, elseLabel);
+				indent++;
+
+				statement(ast.next[c]);
+
+				jump(ifEndLabel);
+				indent--;
+				label(elseLabel);
+				indent++;
+
+				statement(ast.next[ast.next[c]]);
+
+				indent--;
+				label(ifEndLabel);
+				break;
+			}
+
+			case FlatAst.WHILE: {
+				String whileLabel = whileLabel();
+				String elseLabel = whileElseLabel();
+
+				label(whileLabel);
+
+				expression(c);
+
+				branch("if0", printVar(lastExp), elseLabel);
+				indent++;
+
+				statement(ast.next[c]);
+
+				jump(whileLabel);
+				indent--;
+				label(elseLabel);
+				break;
+			}
+
+			case FlatAst.PRINT:
+				expression(c);
+
+				printx("PrintIntS(%s)", printVar(lastExp));
+				break;
+		}
+	}
+
+	// Translate expression n, leaving its value in lastExp
+	private void expression(int n) {
+		int c = ast.child[n];
+
+		switch (ast.kind[n]) {
+			case FlatAst.AND: {
+				expression(c);
+				LastExp lhs = lastExp;
+
+				String andElseLabel = andElseLabel();
+				String andEndLabel = andEndLabel();
+				String vl = printVar(lhs);
+
+				branch("if0", vl, andElseLabel);
+				indent++;
+
+				expression(ast.next[c]);
+				LastExp rhs = lastExp;
+
+				String vr = printVar(rhs);
+				String finalRes = varName();
+
+				assign(finalRes, vr);
+				jump(andEndLabel);
+				indent--;
+				label(andElseLabel);
+				printx("%s = 0", finalRes);
+				label(andEndLabel);
+
+				lastExp = new LastExp(finalRes, LE.Type.ID);
+				break;
+			}
+
+			case FlatAst.LT:
+				binary("LtS", c);
+				break;
+
+			case FlatAst.PLUS:
+				binary("Add", c);
+				break;
+
+			case FlatAst.MINUS:
+				binary("Sub", c);
+				break;
+
+			case FlatAst.TIMES:
+				binary("MulS", c);
+				break;
+
+			case FlatAst.ARRAY_LOOKUP: {
+				expression(c);
+				String baseAddr = printVar(lastExp);
+
+				printNullPointer(baseAddr);
+
+				expression(ast.next[c]);
+				String index = printVar(lastExp);
+
+				printOutOfBounds(baseAddr, index);
+
+				String offset = varName();
+				String bytes = varName();
+
+				printx("%s = Add(%s 1)", offset, index);
+				printx("%s = MulS(%s 4)", offset, offset);
+				printx("%s = Add(%s %s)", bytes, baseAddr, offset);
+
+				lastExp = new LastExp("[" + bytes + "]", LE.Type.EXP);
+				break;
+			}
+
+			case FlatAst.ARRAY_LENGTH: {
+				expression(c);
+				String baseAddr = printVar(lastExp);
+
+				printNullPointer(baseAddr);
+
+				lastExp = new LastExp("[" + baseAddr + "]", LE.Type.EXP);
+				break;
+			}
+
+			case FlatAst.CALL:
+				call(n);
+				break;
+
+			case FlatAst.INT_LITERAL:
+				lastExp = new LastExp(symbolTable.symbols.name(ast.value[n]), LE.Type.INT);
+				break;
+
+			case FlatAst.TRUE:
+				lastExp = new LastExp("1", LE.Type.BOOLEAN);
+				break;
+
+			case FlatAst.FALSE:
+				lastExp = new LastExp("0", LE.Type.BOOLEAN);
+				break;
+
+			case FlatAst.IDENT:
+				lastExp = variable(n);
+				break;
+
+			case FlatAst.THIS:
+				lastExp = new LastExp("this", LE.Type.ID);
+				break;
+
+			case FlatAst.NEW_ARRAY: {
+				allocArray = true;
+
+				expression(c);
+
+				String v1 = printVar(lastExp);
+				String v2 = varName();
+
+				printx("%s = call :ArrayAllocZ(%s)", v2, v1);
+
+				lastExp = new LastExp(v2, LE.Type.ID);
+				break;
+			}
+
+			case FlatAst.NEW: {
+				ClassType ct = symbolTable.classes.get(symbolTable.symbols.name(ast.value[n]));
+
+				String v1 = varName();
+				String nullLabel = nullLabel();
+				int numFields = getNumFields(ct);
+
+				printx("%s = HeapAllocZ(%s)", v1, (numFields + 1)*4);
+				printNullPointer(v1);
+				printx("[%s] = :vmt_%s", v1, ct.name);
+
+				lastExp = new LastExp(v1, LE.Type.ID);
+				break;
+			}
+
+			case FlatAst.NOT: {
+				expression(c);
+
+				String v = printVar(lastExp);
+				String r = varName();
+				String notElseLabel = notElseLabel();
+				String notEndLabel = notEndLabel();
+
+				branch("if", v, notElseLabel);
+				indent++;
+				printx("%s = 1", r);
+				jump(notEndLabel);
+				indent--;
+				label(notElseLabel);
+				printx("%s = 0", r);
+				label(notEndLabel);
+
+				lastExp = new LastExp(r, LE.Type.ID);
+				break;
+			}
+		}
+	}
+
+	// op(left right), for the operands from c on
+	private void binary(String op, int c) {
+		expression(c);
+		LastExp lhs = lastExp;
+
+		expression(ast.next[c]);
+		LastExp rhs = lastExp;
+
+		lastExp = new LastExp(op + "(" + printVar(lhs) + " " + printVar(rhs) + ")", LE.Type.EXP);
+	}
+
+	private void call(int n) {
+		int c = ast.child[n];
+
+		// PrimaryExpression
+		expression(c);
+		ClassType receiver = flat.receivers[n];
+		String callInstance = printVar(lastExp);
+
+		// Check if the class pointer is null
+		if ( !callInstance.equals("this") )
+			printNullPointer(callInstance);
+
+		String params = callInstance;
+
+		// Concat args
+		for (c = ast.next[c]; c != FlatAst.NIL; c = ast.next[c]) {
+			expression(c);
+			params += " " + printVar(lastExp);
+		}
+
+		MethodEntry entry = receiver.methodTable.get(ast.value[n]);
+
+		String funcVar = varName();
+		String v1 = varName();
+
+		// Every method, inherited or not, is at its slot in the receiver's vmt
+		assign(v1, "[" + callInstance + "]");
+		out.indent(indent).append(v1).append(" = ").memory(v1, entry.slot*4).newline();
+		printx("%s = call %s(%s)", funcVar, v1, params);
+
+		lastExp = new LastExp(funcVar, LE.Type.ID);
+	}
+
+	// The variable node n names, where FlatTypeCheck found it
+	private LastExp variable(int n) {
+		int field = flat.fields[n];
+
+		// Locals and params are Vapor variables of the same name
+		if (field < 0)
+			return new LastExp(symbolTable.symbols.name(ast.value[n]), LE.Type.ID);
+
+		// Class field, after the vmt pointer
+		return new LastExp("[this+" + (field+1)*4 + "]", LE.Type.EXP);
+	}
+}
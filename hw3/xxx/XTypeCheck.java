@@ -0,0 +1,583 @@
+package xxx;
+
+import syntaxtree.*;
+import visitor.GJNoArguDepthFirst;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+public class XTypeCheck extends GJNoArguDepthFirst<XType> {
+
+	public boolean typeIdentifierScope = false;
+	public SymbolTable symbolTable;
+
+	// The checker keeps its own scope, so several can share one symbol table
+	private ClassType scopeClass = null;
+	private MethodType scopeMethod = null;
+
+	// Types and bindings found by this pass, for the translator
+	public TypeTable typeTable = new TypeTable();
+
+	public XTypeCheck (SymbolTable st) {
+		symbolTable = st;
+	}
+
+	// *** Visitors ***
+
+	public XType visit(NodeList n) {
+	  for ( Enumeration<Node> e = n.elements(); e.hasMoreElements(); ) {
+	     if (e.nextElement().accept(this) == null)
+	     	return null;
+	  }
+	  return XType.OTHER;
+	}
+
+	public XType visit(NodeListOptional n) {
+	  if ( n.present() ) {
+	     for ( Enumeration<Node> e = n.elements(); e.hasMoreElements(); ) {
+	        if (e.nextElement().accept(this) == null)
+	        	return null;
+	     }
+	  }
+	  return XType.OTHER;
+	}
+
+	public XType visit(NodeOptional n) {
+	  if ( n.present() ) {
+	     if (n.node.accept(this) == null)
+	     	return null;
+	  }
+	  return XType.OTHER;
+	}
+
+	public XType visit(NodeSequence n) {
+	  for ( Enumeration<Node> e = n.elements(); e.hasMoreElements(); ) {
+	     if (e.nextElement().accept(this) == null)
+	     	return null;
+	  }
+	  return XType.OTHER;
+	}
+
+	public XType visit(Goal n) {
+		if (n.f0.accept(this) == null)
+			return null;
+
+		return n.f1.accept(this);	
+	}
+
+	// Methods checked by one task before it stops splitting its range
+	private static final int METHODS_PER_TASK = 16;
+
+	// Like visit(Goal), but each method body is checked by its own
+	// XTypeCheck on the common fork-join pool. The symbol table is frozen by
+	// then and only read. The outcome is the one the sequential walk would
+	// reach: the first method in source order that fails decides it
+	public XType checkParallel(Goal n) {
+		if (n.f0.accept(this) == null)
+			return null;
+
+		// Every method with its class, in source order
+		final ArrayList<ClassType> owners = new ArrayList<ClassType>();
+		final ArrayList<MethodDeclaration> methods = new ArrayList<MethodDeclaration>();
+
+		for (Node node : n.f1.nodes) {
+			Node decl = ((TypeDeclaration)node).f0.choice;
+			Identifier name;
+			NodeListOptional body;
+
+			if (decl instanceof ClassDeclaration) {
+				name = ((ClassDeclaration)decl).f1;
+				body = ((ClassDeclaration)decl).f4;
+			} else {
+				name = ((ClassExtendsDeclaration)decl).f1;
+				body = ((ClassExtendsDeclaration)decl).f6;
+			}
+
+			ClassType ct = symbolTable.classes.get(name.f0.toString());
+			for (Node m : body.nodes) {
+				owners.add(ct);
+				methods.add((MethodDeclaration)m);
+			}
+		}
+
+		final XTypeCheck[] checkers = new XTypeCheck[methods.size()];
+		final XType[] results = new XType[methods.size()];
+		final RuntimeException[] errors = new RuntimeException[methods.size()];
+
+		class MethodTask extends RecursiveAction {
+			private static final long serialVersionUID = 1L;
+
+			int lo, hi;
+
+			MethodTask(int l, int h) {
+				lo = l;
+				hi = h;
+			}
+
+			protected void compute() {
+				if (hi - lo > METHODS_PER_TASK) {
+					int mid = (lo + hi) >>> 1;
+					invokeAll(new MethodTask(lo, mid), new MethodTask(mid, hi));
+					return;
+				}
+
+				for (int i = lo; i < hi; i++) {
+					checkers[i] = new XTypeCheck(symbolTable);
+					checkers[i].scopeClass = owners.get(i);
+
+					try {
+						results[i] = methods.get(i).accept(checkers[i]);
+					} catch (RuntimeException e) {
+						errors[i] = e;
+					}
+				}
+			}
+		}
+
+		ForkJoinPool.commonPool().invoke(new MethodTask(0, methods.size()));
+
+		for (int i = 0; i < methods.size(); i++) {
+			if (errors[i] != null)
+				throw errors[i];
+
+			if (results[i] == null)
+				return null;
+
+			typeTable.putAll(checkers[i].typeTable);
+		}
+
+		return XType.OTHER;
+	}
+
+	public XType visit(MainClass n) {
+		// Begin class scope
+		scopeClass = symbolTable.classes.get(n.f1.f0.toString());
+
+		// Begin method scope
+		scopeMethod = scopeClass.methods.get(symbolTable.symbols.lookup("main"));
+
+		// Statement
+		XType ret = n.f15.accept(this);
+
+		// End method scope
+		scopeMethod = null;
+
+		// End class scope
+		scopeClass = null;
+
+		return ret;
+	}
+
+	public XType visit(TypeDeclaration n) {
+		return n.f0.accept(this);
+	}
+
+	public XType visit(ClassDeclaration n) {
+		// Begin class scope
+		scopeClass = symbolTable.classes.get(n.f1.f0.toString());
+
+		// MethodDeclaration
+		XType ret = n.f4.accept(this);
+
+		// End class scope
+		scopeClass = null;
+
+		return ret;
+	}
+
+	public XType visit(ClassExtendsDeclaration n) {
+		// Begin class scope
+		scopeClass = symbolTable.classes.get(n.f1.f0.toString());
+
+		// MethodDeclaration
+		XType ret = n.f6.accept(this);
+
+		// End class scope
+		scopeClass = null;
+
+		return ret;
+	}
+
+	public XType visit(MethodDeclaration n) {
+		// Begin method scope
+		scopeMethod = scopeClass.methods.get(symbolTable.symbols.lookup(n.f2.f0.toString()));
+
+		// Statement
+		if (n.f8.accept(this) == null)
+			return null;
+
+		// Expression
+		// Checks if the return type equals the expression type
+		XType expType = n.f10.accept(this);
+
+		if (expType == null)
+			return null;
+
+		XType ret = symbolTable.isSubclass(expType, scopeMethod.returnType) ? XType.OTHER : null;
+
+		// End method scope
+		scopeMethod = null;
+
+		return ret;
+	}
+
+	public XType visit(Type n) {
+
+		typeIdentifierScope = true;
+
+		XType ret = n.f0.accept(this);
+
+		typeIdentifierScope = false;
+
+		return ret;
+	}
+
+	public XType visit(ArrayType n) {
+		return XType.ARRAY;
+	}
+
+	public XType visit(BooleanType n) {
+		return XType.BOOLEAN;
+	}
+
+	public XType visit(IntegerType n) {
+		return XType.INTEGER;
+	}
+
+	public XType visit(Statement n) {
+		return n.f0.accept(this);
+	}
+
+	public XType visit(Block n) {
+		return n.f1.accept(this);
+	}
+
+	// TODO: assign statement to exp?
+	public XType visit(AssignmentStatement n) {
+		XType idType = n.f0.accept(this);
+		XType expType = n.f2.accept(this);
+		
+		if (idType != null && expType != null && symbolTable.isSubclass(expType, idType))
+			return XType.OTHER;
+
+		return null;
+	}
+
+	public XType visit(ArrayAssignmentStatement n) {
+		XType idType = n.f0.accept(this);
+		XType indexType = n.f2.accept(this);
+		XType expType = n.f5.accept(this);
+
+		if (idType == XType.ARRAY && indexType == XType.INTEGER && expType == XType.INTEGER)
+			return XType.OTHER;
+
+		return null;
+	}
+
+	public XType visit(IfStatement n) {
+		XType expType = n.f2.accept(this);
+		XType ifStmt = n.f4.accept(this);
+		XType elseStmt = n.f6.accept(this);
+
+		if (expType == XType.BOOLEAN && ifStmt != null && elseStmt != null)
+			return XType.OTHER;
+
+		return null;
+	}
+
+	public XType visit(WhileStatement n) {
+		// Expression
+		XType expType = n.f2.accept(this);
+		XType stmt = n.f4.accept(this);
+
+		if (expType == XType.BOOLEAN && stmt != null)
+			return XType.OTHER;
+
+		return null;
+	}
+
+	public XType visit(PrintStatement n) {
+
+		// Expression
+		if (n.f2.accept(this) != XType.INTEGER)
+			return null;
+
+		return XType.OTHER;
+	}
+
+	public XType visit(Expression n) {
+		XType t = n.f0.accept(this);
+
+		// Record both the wrapper and the expression it chose
+		typeTable.put(n, t);
+		typeTable.put(n.f0.choice, t);
+
+		return t;
+	}
+
+	public XType visit(AndExpression n) {
+		XType lhs = n.f0.accept(this);
+		XType rhs = n.f2.accept(this);
+
+		if (lhs == XType.BOOLEAN && rhs == XType.BOOLEAN)
+			return XType.BOOLEAN;
+
+		return null;
+	}
+
+	public XType visit(CompareExpression n) {
+		XType lhs = n.f0.accept(this);
+		XType rhs = n.f2.accept(this);
+		
+		if (lhs == XType.INTEGER && rhs == XType.INTEGER)
+			return XType.BOOLEAN;
+
+		return null;	
+	}
+
+	public XType visit(PlusExpression n) {
+		XType lhs = n.f0.accept(this);
+		XType rhs = n.f2.accept(this);
+		
+		if (lhs == XType.INTEGER && rhs == XType.INTEGER)
+			return XType.INTEGER;
+
+		return null;	
+	}
+
+	public XType visit(MinusExpression n) {
+		XType lhs = n.f0.accept(this);
+		XType rhs = n.f2.accept(this);
+		
+		if (lhs == XType.INTEGER && rhs == XType.INTEGER)
+			return XType.INTEGER;
+
+		return null;	
+	}
+
+	public XType visit(TimesExpression n) {
+		XType lhs = n.f0.accept(this);
+		XType rhs = n.f2.accept(this);
+		
+		if (lhs == XType.INTEGER && rhs == XType.INTEGER)
+			return XType.INTEGER;
+
+		return null;	
+	}
+
+	public XType visit(ArrayLookup n) {
+		XType array = n.f0.accept(this);
+		XType index = n.f2.accept(this);
+
+		if (array == XType.ARRAY && index == XType.INTEGER)
+			return XType.INTEGER;
+
+		return null;	
+	}
+
+	public XType visit(ArrayLength n) {
+		XType array = n.f0.accept(this);
+
+		if (array == XType.ARRAY)
+			return XType.INTEGER;
+
+		return null;
+	}
+
+	public XType visit(MessageSend n) {
+		XType priExpType = n.f0.accept(this);
+
+		// PrimaryExpression
+		if (priExpType == null || priExpType.type != XType.TYPE.ID)
+			return null;
+
+		MethodEntry entry = priExpType.classType.methodTable.get(symbolTable.symbols.lookup(n.f2.f0.toString()));
+
+		if (entry == null)
+			return null;
+
+		MethodType mt = entry.methodType;
+
+		// Check if the two methods have the same parameters
+		Collection<XType> params = mt.params.values();
+
+		if (n.f4.present()) {
+
+			if (params == null || params.isEmpty())
+				return null;
+
+			LinkedList<XType> queue = new LinkedList<XType>(params);
+			ExpressionList list = (ExpressionList)n.f4.node;
+
+			// IMPORTANT
+			XType argType = list.f0.accept(this);
+			if (argType == null)
+				return null;
+
+			if ( !symbolTable.isSubclass(argType, queue.remove()) )
+				return null;
+
+			for (Node node : list.f1.nodes) {
+				// IMPORTANT
+				argType = node.accept(this);
+				if (argType == null)
+					return null;
+
+				if (queue.isEmpty() || !symbolTable.isSubclass(argType, queue.remove()))
+					return null;
+			}
+
+			if ( !queue.isEmpty() )
+				return null;
+
+		} else if ( !params.isEmpty() ) {
+			return null;
+		}
+
+		return mt.returnType;
+	}
+
+	public XType visit(ExpressionList n) {
+		if (n.f0.accept(this) == null)
+			return null;
+
+		return n.f1.accept(this);
+	}
+
+	public XType visit(ExpressionRest n) {
+		return n.f1.accept(this);
+	}
+
+	public XType visit(PrimaryExpression n) {
+		XType t = n.f0.accept(this);
+
+		// Record both the wrapper and the expression it chose
+		typeTable.put(n, t);
+		typeTable.put(n.f0.choice, t);
+
+		return t;
+	}
+
+	public XType visit(IntegerLiteral n) {
+		return XType.INTEGER;
+	}
+
+	public XType visit(TrueLiteral n) {
+		return XType.BOOLEAN;
+	}
+
+	public XType visit(FalseLiteral n) {
+		return XType.BOOLEAN;
+	}
+
+	public XType visit(Identifier n) {
+		String identifier = n.f0.toString();
+
+		if (typeIdentifierScope) {
+
+			ClassType ct = symbolTable.classes.get(identifier);
+
+			if (ct == null)
+				return null;
+
+			return ct.type;
+
+		} else {
+			int id = symbolTable.symbols.lookup(identifier);
+
+			// Check if id is a local var
+			int slot = scopeMethod.vars.indexOf(id);
+
+			if (slot >= 0)
+				return bind(n, Binding.Kind.LOCAL, scopeMethod.vars.value(slot), null, slot);
+
+			// Check if id is a param
+			slot = scopeMethod.params.indexOf(id);
+
+			if (slot >= 0)
+				return bind(n, Binding.Kind.PARAM, scopeMethod.params.value(slot), null, slot);
+
+			// Check if id is a class field, the nearest one up
+			ClassType ct = scopeClass;
+
+			while (ct != null) {
+				slot = ct.vars.indexOf(id);
+
+				if (slot >= 0)
+					return bind(n, Binding.Kind.FIELD, ct.vars.value(slot), ct, ct.firstField() + slot);
+
+				ct = ct.parent;
+			}
+		}
+
+		// Uninitialized var
+		return null;
+	}
+
+	private XType bind(Identifier n, Binding.Kind kind, XType type, ClassType owner, int slot) {
+		typeTable.bind(n, new Binding(kind, type, owner, slot));
+		return type;
+	}
+
+	public XType visit(ThisExpression n) {
+		return scopeClass.type;
+
+	}
+
+	public XType visit(ArrayAllocationExpression n) {
+
+		if (n.f3.accept(this) != XType.INTEGER)
+			return null;
+
+		return XType.ARRAY;
+	}
+
+	public XType visit(AllocationExpression n) {
+
+		typeIdentifierScope = true;
+
+		XType idType = n.f1.accept(this);
+
+		if (idType == null || idType.type != XType.TYPE.ID)
+			return null;
+
+		typeIdentifierScope = false;
+
+		return idType;
+		
+	}
+
+	public XType visit(NotExpression n) {
+
+		if (n.f1.accept(this) != XType.BOOLEAN)
+			return null;
+
+		return XType.BOOLEAN;
+	}
+
+	public XType visit(BracketExpression n) {
+		return n.f1.accept(this);
+	}
+
+}
+
+
+
+
+
+
+
+
+
+
+
+
+
+
+
+
+
+
+
+
+
@@ -0,0 +1,199 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.Arrays;
+
+/*
+ * Lines of generated code, built in one reusable buffer and written out
+ * through a channel when it fills up or on flush(). Indents are two
+ * spaces a level, cut from one cached prefix, and print() reads only the
+ * %s and %d of its format, so no line goes through String.format.
+ */
+public class Emitter {
+
+	private static final int SIZE = 1 << 16;
+	private static final byte[] NEWLINE = System.lineSeparator().getBytes();
+
+	private final WritableByteChannel channel;
+	private final byte[] buf = new byte[SIZE];
+	private final ByteBuffer wrap = ByteBuffer.wrap(buf);
+	private int pos = 0;
+
+	private byte[] spaces = new byte[64];
+
+	public Emitter(OutputStream out) {
+		this(Channels.newChannel(out));
+	}
+
+	public Emitter(WritableByteChannel channel) {
+		this.channel = channel;
+		Arrays.fill(spaces, (byte)' ');
+	}
+
+	// Start a line depth levels in
+	public Emitter indent(int depth) {
+		int n = depth * 2;
+		if (n > spaces.length) {
+			spaces = new byte[Math.max(n, spaces.length * 2)];
+			Arrays.fill(spaces, (byte)' ');
+		}
+		return append(spaces, n);
+	}
+
+	public Emitter append(String s) {
+		if (s == null)
+			s = "null";
+		return append(s, 0, s.length());
+	}
+
+	public Emitter append(char c) {
+		if (c >= 0x80)
+			return append(String.valueOf(c));
+
+		if (pos == SIZE)
+			drain();
+		buf[pos++] = (byte)c;
+		return this;
+	}
+
+	public Emitter append(int i) {
+		if (i == Integer.MIN_VALUE)
+			return append(Integer.toString(i));
+
+		if (SIZE - pos < 11)
+			drain();
+
+		if (i < 0) {
+			buf[pos++] = '-';
+			i = -i;
+		}
+
+		int end = pos + digits(i);
+		for (int p = end - 1; p >= pos; p--) {
+			buf[p] = (byte)('0' + i % 10);
+			i /= 10;
+		}
+		pos = end;
+		return this;
+	}
+
+	// A label where it is used, :name
+	public Emitter label(String name) {
+		return append(':').append(name);
+	}
+
+	// A Vapor memory reference, [base+offset]
+	public Emitter memory(String base, int offset) {
+		return append('[').append(base).append('+').append(offset).append(']');
+	}
+
+	// A MIPS memory reference, offset(base)
+	public Emitter offset(int offset, String base) {
+		return append(offset).append('(').append(base).append(')');
+	}
+
+	public Emitter newline() {
+		return append(NEWLINE, NEWLINE.length);
+	}
+
+	// One line, depth levels in, with each %s and %d of format replaced
+	// by the next of args as String.format would
+	public Emitter print(int depth, String format, Object... args) {
+		indent(depth);
+
+		int next = 0;
+		int from = 0;
+		int n = format.length();
+
+		for (int i = 0; i < n - 1; i++) {
+			if (format.charAt(i) != '%')
+				continue;
+
+			char c = format.charAt(i + 1);
+			if (c != 's' && c != 'd')
+				throw new IllegalArgumentException("Unsupported format: " + format);
+
+			append(format, from, i);
+			Object arg = args[next++];
+			if (arg instanceof Integer)
+				append(((Integer)arg).intValue());
+			else
+				append(String.valueOf(arg));
+
+			from = i + 2;
+			i++;
+		}
+
+		append(format, from, n);
+		return newline();
+	}
+
+	// Write everything buffered so far
+	public void flush() {
+		drain();
+	}
+
+	// Characters from to to of s
+	private Emitter append(String s, int from, int to) {
+		int n = to - from;
+		if (n > SIZE - pos)
+			drain();
+
+		if (n > SIZE) {
+			byte[] bytes = s.substring(from, to).getBytes();
+			return append(bytes, bytes.length);
+		}
+
+		// Plain ASCII straight into the buffer, anything else as
+		// PrintStream would have encoded it
+		for (int i = from; i < to; i++) {
+			char c = s.charAt(i);
+			if (c >= 0x80) {
+				byte[] bytes = s.substring(i, to).getBytes();
+				pos += i - from;
+				return append(bytes, bytes.length);
+			}
+			buf[pos + i - from] = (byte)c;
+		}
+		pos += n;
+		return this;
+	}
+
+	private Emitter append(byte[] bytes, int n) {
+		if (n > SIZE - pos)
+			drain();
+
+		if (n > SIZE) {
+			write(ByteBuffer.wrap(bytes, 0, n));
+			return this;
+		}
+
+		System.arraycopy(bytes, 0, buf, pos, n);
+		pos += n;
+		return this;
+	}
+
+	private void drain() {
+		wrap.clear().limit(pos);
+		write(wrap);
+		pos = 0;
+	}
+
+	private void write(ByteBuffer b) {
+		try {
+			while (b.hasRemaining())
+				channel.write(b);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static int digits(int i) {
+		int d = 1;
+		while (i >= 10) {
+			i /= 10;
+			d++;
+		}
+		return d;
+	}
+}
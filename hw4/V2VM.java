@@ -4,6 +4,10 @@ import cs132.vapor.ast.VaporProgram;
 import cs132.vapor.ast.VBuiltIn.Op;
 import cs132.vapor.ast.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
 import java.io.InputStreamReader;
 import java.io.IOException;
 import java.io.PrintStream;
@@ -19,7 +23,46 @@ class V2VM extends VInstr.Visitor<Throwable> {
 	private int indent = 0;
 	private int curFuncIndex = 0;
 
-	public static void main(String[] a) throws IOException {
+	// Where the Vapor-M goes
+	private Emitter out;
+
+	// Set by -binary: the input is what VaporBinary wrote, not Vapor
+	// text, and so is the output, for VM2M -binary to read
+	private static boolean binary = false;
+
+	// Set by -fast: the input is read by VaporReader, not VaporParser
+	private static boolean fast = false;
+
+	public static void main(String[] a) throws IOException, InterruptedException {
+		boolean server = false;
+
+		for (String arg : a) {
+			// -server answers framed requests, see CompileServer
+			if (arg.equals("-server"))
+				server = true;
+
+			if (arg.equals("-binary"))
+				binary = true;
+
+			if (arg.equals("-fast"))
+				fast = true;
+		}
+
+		if (server) {
+			CompileServer.serve((name, input, out) -> translate(new ByteArrayInputStream(input), out),
+					System.in, System.out);
+			return;
+		}
+
+		// Both are mapped, so they read from stdin's file itself
+		int status = translate(binary || fast ? new FileInputStream(FileDescriptor.in) : System.in, System.out);
+		if (status != 0)
+			System.exit(status);
+	}
+
+	// Print the Vapor-M for the Vapor program read from in, or why there
+	// is none; with -binary the Vapor-M is written as VaporBinary instead
+	static int translate(InputStream in, PrintStream out) throws IOException {
 		Op[] ops = {
 	    Op.Add, Op.Sub, Op.MulS, Op.Eq, Op.Lt, Op.LtS,
 	    Op.PrintIntS, Op.HeapAllocZ, Op.Error,
@@ -30,27 +73,40 @@ class V2VM extends VInstr.Visitor<Throwable> {
 
 	  VaporProgram program = null;
 	  try {
-	  	program = VaporParser.run(new InputStreamReader(System.in), 1, 1,
+	  	if (binary)
+	  		program = VaporBinary.read(in);
+	  	else if (fast)
+	  		program = VaporReader.run(in, java.util.Arrays.asList(ops), allowLocals, registers, allowStack);
+	  	else
+	  		program = VaporParser.run(new InputStreamReader(in), 1, 1,
 	  														java.util.Arrays.asList(ops),
 	  														allowLocals, registers, allowStack);
 	  }
-	  catch (ProblemException e) {
-	  	System.out.println(e.getMessage());
-	  	System.exit(1);
+	  catch (ProblemException | VaporBinary.FormatException | VaporReader.Problem e) {
+	  	out.println(e.getMessage());
+	  	return 1;
+	  }
+
+	  if (binary) {
+	  	VaporBinary.write(VaporMBuilder.build(program), out);
+	  	return 0;
 	  }
 
 	  LinearScan regAlloc = new LinearScan(program);
 
-	  V2VM v = new V2VM(program);
+	  V2VM v = new V2VM(program, out);
 	  v.regMaps = regAlloc.getRegisterMaps();
 	  v.localTotalList = regAlloc.getLocalTotalList();
 	  v.outTotalList = regAlloc.getOutTotalList();
 
 	  v.translate();
+	  v.out.flush();
+	  return 0;
 	}
 
-	public V2VM(VaporProgram prog) {
+	public V2VM(VaporProgram prog, PrintStream o) {
 		program = prog;		
+		out = new Emitter(o);
 	}
 
 	private void translate() {
@@ -101,10 +157,10 @@ class V2VM extends VInstr.Visitor<Throwable> {
 				// Only print the parameters that are used within the function
 				if (r != null) {
 					if (!isReg(r)) {
-						print("$v0 = %s", getParamReg(paramIndex));
-						print("%s = $v0", r);
+						assign("$v0", getParamReg(paramIndex));
+						assign(r, "$v0");
 					} else {
-						print("%s = %s", r, getParamReg(paramIndex));
+						assign(r, getParamReg(paramIndex));
 					}
 				}
 
@@ -136,11 +192,12 @@ class V2VM extends VInstr.Visitor<Throwable> {
 	}
 
 	private void print(String str, Object... args) {
-		String indentStr = "";
-		for (int i = 0; i < indent; i++) {
-			indentStr += "  ";
-		}
-		System.out.println(indentStr + String.format(str, args));
+		out.print(indent, str, args);
+	}
+
+	// dest = src, the line printed most
+	private void assign(String dest, String src) {
+		out.indent(indent).append(dest).append(" = ").append(src).newline();
 	}
 
 	private void printStoredCalleeRegs(boolean restore) {
@@ -170,7 +227,7 @@ class V2VM extends VInstr.Visitor<Throwable> {
 				return "$a3";
 
 			default:
-				return String.format("in[%d]", index - 4);
+				return "in[" + (index - 4) + "]";
 		}
 	}
 
@@ -202,11 +259,11 @@ class V2VM extends VInstr.Visitor<Throwable> {
 		String src = a.source.toString();
 		String r2 = isVar(a.source) ? getReg(src) : src;
 		if (isVar(a.source) && !isReg(r2)) {
-			print("$v1 = %s", r2);
+			assign("$v1", r2);
 			r2 = "$v1";
 		}
 		
-		print("%s = %s", r, r2);
+		assign(r, r2);
 	}
 
 	@Override
@@ -214,11 +271,11 @@ class V2VM extends VInstr.Visitor<Throwable> {
 		String ifStr = b.positive ? "if" : "if0";
 		String r = getReg(b.value.toString());
 		if (!isReg(r)) {
-			print("$v0 = %s", r);
+			assign("$v0", r);
 			r = "$v0";
 		}
 
-		print("%s %s goto :%s", ifStr, r, b.target.ident);
+		out.indent(indent).append(ifStr).append(' ').append(r).append(" goto ").label(b.target.ident).newline();
 	}
 
 	@Override
@@ -233,7 +290,7 @@ class V2VM extends VInstr.Visitor<Throwable> {
 			String arg0 = c.args[0].toString();
 			String r = isVar(c.args[0]) ? getReg(arg0) : arg0;
 			if (isVar(c.args[0]) && !isReg(r)) {
-				print("$v0 = %s", r);
+				assign("$v0", r);
 				r = "$v0";
 			}
 
@@ -243,18 +300,18 @@ class V2VM extends VInstr.Visitor<Throwable> {
 			String arg0 = c.args[0].toString();
 			String r = isVar(c.args[0]) ? getReg(arg0) : arg0;
 			if (isVar(c.args[0]) && !isReg(r)) {
-				print("$v0 = %s", r);
+				assign("$v0", r);
 				r = "$v0";
 			}
 
 			String arg1 = c.args[1].toString();
 			String r2 = isVar(c.args[1]) ? getReg(arg1) : arg1;
 			if (isVar(c.args[1]) && !isReg(r2)) {
-				print("$v1 = %s", r2);
+				assign("$v1", r2);
 				r2 = "$v1";
 			}
 
-			args = String.format("%s %s", r, r2);
+			args = r + " " + r2;
 		}
 
 		if (c.dest == null) {
@@ -266,7 +323,7 @@ class V2VM extends VInstr.Visitor<Throwable> {
 			String r = getReg(c.dest.toString());
 			if (!isReg(r)) {
 				print("$v0 = %s(%s)", c.op.name, args);
-				print("%s = $v0", r);
+				assign(r, "$v0");
 			} else {
 				print("%s = %s(%s)", r, c.op.name, args);
 			}
@@ -291,25 +348,25 @@ class V2VM extends VInstr.Visitor<Throwable> {
 				break;
 
 			case 1:
-				print("$a0 = %s", getArgVal(c.args[0]));
+				assign("$a0", getArgVal(c.args[0]));
 				break;
 
 			case 2:
-				print("$a0 = %s", getArgVal(c.args[0]));
-				print("$a1 = %s", getArgVal(c.args[1]));
+				assign("$a0", getArgVal(c.args[0]));
+				assign("$a1", getArgVal(c.args[1]));
 				break;
 
 			case 3:
-				print("$a0 = %s", getArgVal(c.args[0]));
-				print("$a1 = %s", getArgVal(c.args[1]));
-				print("$a2 = %s", getArgVal(c.args[2]));
+				assign("$a0", getArgVal(c.args[0]));
+				assign("$a1", getArgVal(c.args[1]));
+				assign("$a2", getArgVal(c.args[2]));
 				break;
 
 			default:
-				print("$a0 = %s", getArgVal(c.args[0]));
-				print("$a1 = %s", getArgVal(c.args[1]));
-				print("$a2 = %s", getArgVal(c.args[2]));
-				print("$a3 = %s", getArgVal(c.args[3]));
+				assign("$a0", getArgVal(c.args[0]));
+				assign("$a1", getArgVal(c.args[1]));
+				assign("$a2", getArgVal(c.args[2]));
+				assign("$a3", getArgVal(c.args[3]));
 				break;
 		}
 
@@ -319,20 +376,20 @@ class V2VM extends VInstr.Visitor<Throwable> {
 
 				String r = isVar(c.args[i]) ? getReg(c.args[i].toString()) : c.args[i].toString();
 				if (isVar(c.args[i]) && !isReg(r)) {
-					print("$v0 = %s", r);
+					assign("$v0", r);
 					r = "$v0";
 				}
-				print("out[%d] = %s", outIndex++, getArgVal(c.args[i]));
+				print("out[%d] = %s", outIndex++, r);
 			}
 		}
 
 		String r = isVar(c.addr) ? getReg(c.addr.toString()) : c.addr.toString();
 		if (isVar(c.addr) && !isReg(r)) {
-			print("$v0 = %s", r);
+			assign("$v0", r);
 			r = "$v0";
 		}
 		print("call %s", r);
-		print("%s = $v0", getReg(c.dest.toString()));
+		assign(getReg(c.dest.toString()), "$v0");
 	}
 
 	@Override
@@ -350,16 +407,16 @@ class V2VM extends VInstr.Visitor<Throwable> {
 
 			String r2 = getReg(src.base.toString());
 			if (!isReg(r2)) {
-				print("$v1 = %s", r2);
+				assign("$v1", r2);
 				r2 = "$v1";
 			}			
 
 			String r = getReg(dest.ident);
 			if (!isReg(r)) {
-				print("$v0 = [%s+%d]", r2, src.byteOffset);
-				print("%s = $v0", r);
+				out.indent(indent).append("$v0 = ").memory(r2, src.byteOffset).newline();
+				assign(r, "$v0");
 			} else {
-				print("%s = [%s+%d]", r, r2, src.byteOffset);
+				out.indent(indent).append(r).append(" = ").memory(r2, src.byteOffset).newline();
 			}
 		}
 	}
@@ -372,18 +429,18 @@ class V2VM extends VInstr.Visitor<Throwable> {
 
 		String r = getReg(dest.base.toString());
 		if (!isReg(r)) {
-			print("$v0 = %s", r);
+			assign("$v0", r);
 			r = "$v0";
 		}
 
 		String src = w.source.toString();
 		String r2 = isVar(w.source) ? getReg(src) : src;
 		if (isVar(w.source) && !isReg(r2)) {
-			print("$v1 = %s", r2);
+			assign("$v1", r2);
 			r2 = "$v1";
 		} 
 
-		print("[%s+%d] = %s", r, dest.byteOffset, r2);	
+		out.indent(indent).memory(r, dest.byteOffset).append(" = ").append(r2).newline();	
 	}
 
 	@Override
@@ -395,11 +452,11 @@ class V2VM extends VInstr.Visitor<Throwable> {
 			String r = isVar(re.value) ? getReg(re.value.toString()) : re.value.toString();
 
 			if (isVar(re.value) && !isReg(r)) {
-				print("$v0 = %s", r);
+				assign("$v0", r);
 				r = "$v0";
 			}
 
-			print("$v0 = %s", r);
+			assign("$v0", r);
 		}
 
 		printStoredCalleeRegs(true);
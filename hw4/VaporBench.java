@@ -0,0 +1,124 @@
+import cs132.util.ProblemException;
+import cs132.vapor.parser.VaporParser;
+import cs132.vapor.ast.VaporProgram;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/*
+ * Parse throughput of VaporParser against VaporReader, and of reading the
+ * same program back from VaporBinary:
+ *
+ *   java VaporBench file.vapor ...
+ *   java VaporBench -vaporm file.vaporm ...
+ *
+ * Each line reports the best of five runs after warming up, and the bytes
+ * the benchmark thread allocated per input byte during those runs. The
+ * programs VaporParser and VaporReader build are compared through their
+ * binary form, so a difference in any node or position shows, and so is
+ * the program VaporBinary reads back with the one it wrote. An input
+ * either of them rejects is not timed; what the two report is compared
+ * instead, as V2VM and VM2M would print it.
+ */
+public class VaporBench {
+
+	interface Run {
+		void run() throws Exception;
+	}
+
+	private static com.sun.management.ThreadMXBean threads =
+			(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	public static void main(String[] args) throws Exception {
+		boolean vaporM = args.length > 0 && args[0].equals("-vaporm");
+
+		for (int i = vaporM ? 1 : 0; i < args.length; i++)
+			bench(args[i], Files.readAllBytes(Paths.get(args[i])), vaporM);
+	}
+
+	static void bench(String name, byte[] input, boolean vaporM) throws Exception {
+		System.out.printf("%s: %.1f MB\n", name, input.length / 1e6);
+
+		VaporProgram parsed = null;
+		VaporProgram read = null;
+		String parserProblem = null;
+		String readerProblem = null;
+
+		try {
+			parsed = parse(input, vaporM);
+		}
+		catch (ProblemException e) {
+			parserProblem = e.getMessage();
+		}
+
+		try {
+			read = read(input, vaporM);
+		}
+		catch (VaporReader.Problem e) {
+			readerProblem = e.getMessage();
+		}
+
+		if (parserProblem != null || readerProblem != null) {
+			if (parserProblem != null && parserProblem.equals(readerProblem)) {
+				System.out.println("  same problem: " + parserProblem + "\n");
+			} else {
+				System.out.println("  PROBLEMS DIFFER");
+				System.out.println("    VaporParser: " + (parserProblem != null ? parserProblem : "none"));
+				System.out.println("    VaporReader: " + (readerProblem != null ? readerProblem : "none") + "\n");
+			}
+			return;
+		}
+
+		byte[] binary = binary(parsed);
+		System.out.println(Arrays.equals(binary, binary(read)) ? "  same program" : "  PROGRAMS DIFFER");
+		System.out.println(Arrays.equals(binary, binary(VaporBinary.read(ByteBuffer.wrap(binary))))
+				? "  same program read back" : "  BINARY READS BACK DIFFERENTLY");
+
+		measure("VaporParser", input.length, () -> parse(input, vaporM));
+		measure("VaporReader", input.length, () -> read(input, vaporM));
+		measure("VaporBinary", input.length, () -> VaporBinary.read(ByteBuffer.wrap(binary)));
+
+		System.out.printf("  binary %.1f MB\n\n", binary.length / 1e6);
+	}
+
+	static VaporProgram parse(byte[] input, boolean vaporM) throws Exception {
+		return VaporParser.run(new InputStreamReader(new ByteArrayInputStream(input)), 1, 1,
+				Arrays.asList(VaporBinary.OPS), !vaporM, vaporM ? VaporBinary.REGISTERS : null, vaporM);
+	}
+
+	static VaporProgram read(byte[] input, boolean vaporM) throws VaporReader.Problem {
+		return VaporReader.run(ByteBuffer.wrap(input), Arrays.asList(VaporBinary.OPS), !vaporM,
+				vaporM ? VaporBinary.REGISTERS : null, vaporM);
+	}
+
+	static byte[] binary(VaporProgram program) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		VaporBinary.write(program, out);
+		return out.toByteArray();
+	}
+
+	static void measure(String name, int bytes, Run run) throws Exception {
+		// Warm up, then time the best of a few runs
+		for (int i = 0; i < 3; i++)
+			run.run();
+
+		long id = Thread.currentThread().getId();
+		long allocated = threads.getThreadAllocatedBytes(id);
+		long best = Long.MAX_VALUE;
+
+		for (int i = 0; i < 5; i++) {
+			long start = System.nanoTime();
+			run.run();
+			best = Math.min(best, System.nanoTime() - start);
+		}
+
+		allocated = threads.getThreadAllocatedBytes(id) - allocated;
+
+		System.out.printf("  %-16s %8.1f MB/s %8.1f ms %8.1f B/byte\n", name,
+				bytes / (best / 1e3), best / 1e6, allocated / 5.0 / bytes);
+	}
+}
@@ -0,0 +1,375 @@
+import cs132.util.SourcePos;
+import cs132.vapor.ast.VaporProgram;
+import cs132.vapor.ast.*;
+
+import java.util.*;
+
+/*
+ * V2VM's translation, building the Vapor-M VaporProgram instead of
+ * printing it, for J2M and V2VM -binary. Each node gets the position
+ * VaporParser would give it in what V2VM prints, since VM2M places
+ * labels by line; VaporPrinter prints it back the same way.
+ */
+class VaporMBuilder extends VInstr.Visitor<Throwable> {
+
+	private ArrayList<HashMap<String,String>> regMaps;
+	private ArrayList<Integer> localTotalList;
+	private ArrayList<Integer> outTotalList;
+	private VaporProgram program;
+	private int curFuncIndex = 0;
+
+	// The Vapor-M function being built, and the line its next
+	// instruction or label is printed on
+	private ArrayList<VInstr> body;
+	private ArrayList<VCodeLabel> labels;
+	private int line = 1;
+
+	// The Vapor-M program for a Vapor one, built in memory; each node
+	// has the position VaporParser gives it in the printed program
+	static VaporProgram build(VaporProgram program) {
+	  LinearScan regAlloc = new LinearScan(program);
+
+	  VaporMBuilder v = new VaporMBuilder(program);
+	  v.regMaps = regAlloc.getRegisterMaps();
+	  v.localTotalList = regAlloc.getLocalTotalList();
+	  v.outTotalList = regAlloc.getOutTotalList();
+
+	  return v.translate();
+	}
+
+	private VaporMBuilder(VaporProgram prog) {
+		program = prog;
+	}
+
+	private VaporProgram translate() {
+		VDataSegment[] dataSegments = new VDataSegment[program.dataSegments.length];
+		VFunction[] functions = new VFunction[program.functions.length];
+
+		// Data segments, each a line, its values and an empty line
+		for (int i = 0; i < dataSegments.length; i++) {
+			VDataSegment ds = program.dataSegments[i];
+
+			dataSegments[i] = new VDataSegment(pos(0), ds.ident, ds.index, ds.mutable, ds.values);
+			line += ds.values.length + 1;
+		}
+
+		// All the functions in the program
+		for (int i = 0; i < functions.length; i++) {
+			VFunction func = program.functions[i];
+			curFuncIndex = func.index;
+
+			int inSize = func.params.length > 4 ? func.params.length - 4 : 0;
+			int outSize = outTotalList.get(curFuncIndex);
+			int localSize = 0;
+
+			// Calculate the number of local spaces need to be allocated
+			for (String reg : regMaps.get(curFuncIndex).values()) {
+				if (reg.charAt(1) == 's') {
+					localSize++;
+				}
+			}
+			localSize += localTotalList.get(curFuncIndex);
+
+			SourcePos pos = pos(0);
+			body = new ArrayList<VInstr>();
+			labels = new ArrayList<VCodeLabel>();
+
+			// Stored s registers
+			printStoredCalleeRegs(false);
+
+			// Parameters
+			int paramIndex = 0;
+			for (VVarRef.Local param : func.params) {
+				String r = getReg(param.toString());
+
+				// Only the parameters that are used within the function
+				if (r != null) {
+					if (!isReg(r)) {
+						assign("$v0", getParamReg(paramIndex));
+						assign(r, "$v0");
+					} else {
+						assign(r, getParamReg(paramIndex));
+					}
+				}
+
+				// Increment param index
+				paramIndex++;
+			}
+
+			LinkedList<VCodeLabel> codeLabels = new LinkedList<VCodeLabel>(Arrays.asList(func.labels));
+
+			// All the instructions in the function
+			for (VInstr instr : func.body) {
+				while (!codeLabels.isEmpty() && (codeLabels.peek().sourcePos.line < instr.sourcePos.line)) {
+					labels.add(new VCodeLabel(pos(0), codeLabels.pop().ident, labels.size(), body.size()));
+				}
+
+				try {
+					instr.accept(this);
+				}
+				catch(Throwable t) {
+					throw new AssertionError(t);
+				}
+			}
+
+			// The empty line after the function
+			line++;
+
+			functions[i] = new VFunction(pos, func.ident, func.index, new VVarRef.Local[0],
+					labels.toArray(new VCodeLabel[0]), body.toArray(new VInstr[0]),
+					new VFunction.Stack(inSize, outSize, localSize), new String[0]);
+		}
+
+		return new VaporProgram(false, VaporBinary.REGISTERS, true, functions, dataSegments);
+	}
+
+	// Where the next line goes, depth levels in
+	private SourcePos pos(int depth) {
+		return new SourcePos(line++, depth * 2 + 1);
+	}
+
+	// A register, $t0, or a stack slot, local[2], as LinearScan and
+	// getParamReg name them
+	private Object location(String reg, SourcePos pos) {
+		if (isReg(reg))
+			return new VVarRef.Register(pos, reg.substring(1));
+
+		VMemRef.Stack.Region region = reg.startsWith("in") ? VMemRef.Stack.Region.In
+				: reg.startsWith("out") ? VMemRef.Stack.Region.Out : VMemRef.Stack.Region.Local;
+		int index = Integer.parseInt(reg.substring(reg.indexOf('[') + 1, reg.length() - 1));
+
+		return new VMemRef.Stack(pos, region, index);
+	}
+
+	private VVarRef.Register register(String reg, SourcePos pos) {
+		return new VVarRef.Register(pos, reg.substring(1));
+	}
+
+	// dest = src, the line printed most: an assignment, or a load or
+	// store when one of them is a stack slot
+	private void assign(String dest, String src) {
+		SourcePos pos = pos(1);
+		Object s = location(src, pos);
+
+		if (s instanceof VMemRef)
+			body.add(new VMemRead(pos, register(dest, pos), (VMemRef)s));
+		else
+			assign(pos, location(dest, pos), (VOperand)s);
+	}
+
+	// dest = a literal or label
+	private void assign(String dest, VOperand src) {
+		SourcePos pos = pos(1);
+		assign(pos, location(dest, pos), src);
+	}
+
+	private void assign(SourcePos pos, Object dest, VOperand src) {
+		if (dest instanceof VMemRef)
+			body.add(new VMemWrite(pos, (VMemRef)dest, src));
+		else
+			body.add(new VAssign(pos, (VVarRef)dest, src));
+	}
+
+	// dest = the value of operand o, a variable or a literal
+	private void assignArg(String dest, VOperand o) {
+		if (isVar(o))
+			assign(dest, getReg(o.toString()));
+		else
+			assign(dest, o);
+	}
+
+	private void printStoredCalleeRegs(boolean restore) {
+		int localIndex = localTotalList.get(curFuncIndex);
+		for (String reg : regMaps.get(curFuncIndex).values()) {
+			if (reg.charAt(1) == 's') {
+				String local = "local[" + localIndex++ + "]";
+				if (restore)
+					assign(reg, local);
+				else
+					assign(local, reg);
+			}
+		}
+	}
+
+	private String getParamReg(int index) {
+		switch (index) {
+			case 0:
+				return "$a0";
+
+			case 1:
+				return "$a1";
+
+			case 2:
+				return "$a2";
+
+			case 3:
+				return "$a3";
+
+			default:
+				return "in[" + (index - 4) + "]";
+		}
+	}
+
+	private String getReg(String reg) {
+		return regMaps.get(curFuncIndex).get(reg);
+	}
+
+	private boolean isReg(String str) {
+		return str.charAt(0) == '$';
+	}
+
+	private boolean isVar(VOperand o) {
+		return o instanceof VVarRef;
+	}
+
+	private boolean isVar(VVarRef v) {
+		return v instanceof VVarRef.Local;
+	}
+
+	private boolean isVar(VAddr<?> a) {
+		return a instanceof VAddr.Var;
+	}
+
+	// The register holding variable o, loaded into temp if it was spilled
+	private String load(VOperand o, String temp) {
+		String r = getReg(o.toString());
+		if (!isReg(r)) {
+			assign(temp, r);
+			r = temp;
+		}
+		return r;
+	}
+
+	// ========================== VISITORS ========================== //
+
+	@Override
+	public void visit(VAssign a) {
+		String r = getReg(a.dest.toString());
+
+		if (isVar(a.source))
+			assign(r, load(a.source, "$v1"));
+		else
+			assign(r, a.source);
+	}
+
+	@Override
+	public void visit(VBranch b) {
+		String r = load(b.value, "$v0");
+
+		SourcePos pos = pos(1);
+		body.add(new VBranch(pos, b.positive, register(r, pos), b.target));
+	}
+
+	@Override
+	public void visit(VBuiltIn c) {
+		// The first argument goes through $v0 if it was spilled, the
+		// second through $v1
+		VOperand[] args = new VOperand[c.args.length];
+		String[] temps = new String[args.length];
+
+		for (int i = 0; i < args.length; i++) {
+			if (isVar(c.args[i]))
+				temps[i] = load(c.args[i], i == 0 ? "$v0" : "$v1");
+		}
+
+		if (c.dest == null) {
+			body.add(new VBuiltIn(builtIn(c, temps, args), c.op, args, null));
+		} else if (isVar(c.dest)) {
+			String r = getReg(c.dest.toString());
+			if (!isReg(r)) {
+				SourcePos pos = builtIn(c, temps, args);
+				body.add(new VBuiltIn(pos, c.op, args, register("$v0", pos)));
+				assign(r, "$v0");
+			} else {
+				SourcePos pos = builtIn(c, temps, args);
+				body.add(new VBuiltIn(pos, c.op, args, register(r, pos)));
+			}
+		}
+	}
+
+	// The position of built-in c, filling in its arguments at it
+	private SourcePos builtIn(VBuiltIn c, String[] temps, VOperand[] args) {
+		SourcePos pos = pos(1);
+		for (int i = 0; i < args.length; i++)
+			args[i] = temps[i] != null ? register(temps[i], pos) : c.args[i];
+		return pos;
+	}
+
+	@Override
+	public void visit(VCall c) {
+		// The first four arguments in $a0 to $a3
+		for (int i = 0; i < c.args.length && i < 4; i++)
+			assignArg("$a" + i, c.args[i]);
+
+		// The rest on the out stack
+		for (int i = 4; i < c.args.length; i++) {
+			if (isVar(c.args[i]))
+				assign("out[" + (i - 4) + "]", load(c.args[i], "$v0"));
+			else
+				assign("out[" + (i - 4) + "]", c.args[i]);
+		}
+
+		VAddr<VFunction> addr = c.addr;
+		String r = null;
+		if (isVar(c.addr))
+			r = load(((VAddr.Var<VFunction>)c.addr).var, "$v0");
+
+		SourcePos pos = pos(1);
+		if (r != null)
+			addr = new VAddr.Var<VFunction>(register(r, pos));
+		body.add(new VCall(pos, addr, new VOperand[0], null));
+
+		assign(getReg(c.dest.toString()), "$v0");
+	}
+
+	@Override
+	public void visit(VGoto g) {
+		body.add(new VGoto(pos(1), g.target));
+	}
+
+	@Override
+	public void visit(VMemRead re) {
+		if (isVar(re.dest)) {
+			VVarRef.Local dest = (VVarRef.Local)re.dest;
+			VMemRef.Global src = (VMemRef.Global)re.source;
+
+			String r2 = load(((VAddr.Var<VDataSegment>)src.base).var, "$v1");
+
+			String r = getReg(dest.ident);
+			String to = isReg(r) ? r : "$v0";
+
+			SourcePos pos = pos(1);
+			VMemRef.Global from = new VMemRef.Global(pos, new VAddr.Var<VDataSegment>(register(r2, pos)), src.byteOffset);
+			body.add(new VMemRead(pos, register(to, pos), from));
+
+			if (!isReg(r))
+				assign(r, "$v0");
+		}
+	}
+
+	@Override
+	public void visit(VMemWrite w) {
+		VMemRef.Global dest = (VMemRef.Global)w.dest;
+
+		String r = load(((VAddr.Var<VDataSegment>)dest.base).var, "$v0");
+		String r2 = isVar(w.source) ? load(w.source, "$v1") : null;
+
+		SourcePos pos = pos(1);
+		VMemRef.Global to = new VMemRef.Global(pos, new VAddr.Var<VDataSegment>(register(r, pos)), dest.byteOffset);
+		body.add(new VMemWrite(pos, to, r2 != null ? register(r2, pos) : w.source));
+	}
+
+	@Override
+	public void visit(VReturn re) {
+		if (re.value != null) {
+			if (isVar(re.value))
+				assign("$v0", load(re.value, "$v0"));
+			else
+				assign("$v0", re.value);
+		}
+
+		printStoredCalleeRegs(true);
+
+		body.add(new VReturn(pos(1), null));
+	}
+}
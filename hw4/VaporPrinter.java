@@ -0,0 +1,144 @@
+import cs132.vapor.ast.*;
+
+import java.io.PrintStream;
+
+/*
+ * Prints a Vapor-M VaporProgram as V2VM has always printed it: data
+ * segments with their values one level in, then each function with its
+ * stack sizes, its labels placed before the instruction they index and
+ * its instructions one level in, each followed by an empty line.
+ */
+class VaporPrinter extends VInstr.Visitor<RuntimeException> {
+
+	private final Emitter out;
+
+	private VaporPrinter(Emitter out) {
+		this.out = out;
+	}
+
+	static void print(VaporProgram program, PrintStream out) {
+		VaporPrinter p = new VaporPrinter(new Emitter(out));
+		p.program(program);
+		p.out.flush();
+	}
+
+	private void program(VaporProgram program) {
+		for (VDataSegment ds : program.dataSegments) {
+			out.append(ds.mutable ? "var " : "const ").append(ds.ident).newline();
+
+			for (VOperand.Static value : ds.values)
+				out.indent(1).append(value.toString()).newline();
+
+			out.newline();
+		}
+
+		for (VFunction func : program.functions) {
+			out.append("func ").append(func.ident)
+					.append(" [in ").append(func.stack.in)
+					.append(", out ").append(func.stack.out)
+					.append(", local ").append(func.stack.local).append(']').newline();
+
+			int l = 0;
+			for (int i = 0; i < func.body.length; i++) {
+				for (; l < func.labels.length && func.labels[l].instrIndex <= i; l++)
+					out.append(func.labels[l].ident).append(':').newline();
+
+				func.body[i].accept(this);
+			}
+
+			for (; l < func.labels.length; l++)
+				out.append(func.labels[l].ident).append(':').newline();
+
+			out.newline();
+		}
+	}
+
+	private Emitter operand(VOperand o) {
+		if (o instanceof VVarRef.Register)
+			return out.append('$').append(((VVarRef.Register)o).ident);
+
+		if (o instanceof VVarRef.Local)
+			return out.append(((VVarRef.Local)o).ident);
+
+		return out.append(o.toString());
+	}
+
+	private Emitter address(VAddr<?> a) {
+		if (a instanceof VAddr.Label)
+			return out.label(((VAddr.Label<?>)a).label.ident);
+
+		return operand(((VAddr.Var<?>)a).var);
+	}
+
+	private Emitter memory(VMemRef m) {
+		if (m instanceof VMemRef.Global) {
+			VMemRef.Global global = (VMemRef.Global)m;
+			out.append('[');
+			return address(global.base).append('+').append(global.byteOffset).append(']');
+		}
+
+		VMemRef.Stack stack = (VMemRef.Stack)m;
+		return out.append(stack.region.name().toLowerCase()).append('[').append(stack.index).append(']');
+	}
+
+	// ========================== VISITORS ========================== //
+
+	@Override
+	public void visit(VAssign a) {
+		out.indent(1);
+		operand(a.dest).append(" = ");
+		operand(a.source).newline();
+	}
+
+	@Override
+	public void visit(VCall c) {
+		out.indent(1).append("call ");
+		address(c.addr).newline();
+	}
+
+	@Override
+	public void visit(VBuiltIn b) {
+		out.indent(1);
+		if (b.dest != null)
+			operand(b.dest).append(" = ");
+
+		out.append(b.op.name).append('(');
+		for (int i = 0; i < b.args.length; i++) {
+			if (i > 0)
+				out.append(' ');
+			operand(b.args[i]);
+		}
+		out.append(')').newline();
+	}
+
+	@Override
+	public void visit(VMemWrite w) {
+		out.indent(1);
+		memory(w.dest).append(" = ");
+		operand(w.source).newline();
+	}
+
+	@Override
+	public void visit(VMemRead r) {
+		out.indent(1);
+		operand(r.dest).append(" = ");
+		memory(r.source).newline();
+	}
+
+	@Override
+	public void visit(VBranch b) {
+		out.indent(1).append(b.positive ? "if " : "if0 ");
+		operand(b.value).append(" goto ").label(b.target.ident).newline();
+	}
+
+	@Override
+	public void visit(VGoto g) {
+		out.indent(1).append("goto ");
+		address(g.target).newline();
+	}
+
+	@Override
+	public void visit(VReturn r) {
+		out.indent(1).append("ret").newline();
+	}
+}
@@ -0,0 +1,702 @@
+import cs132.util.SourcePos;
+import cs132.vapor.ast.*;
+import cs132.vapor.ast.VBuiltIn.Op;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/*
+ * Reads Vapor or Vapor-M into the VaporProgram VaporParser would build,
+ * straight from the bytes: the input is mapped if it is a file and read
+ * in one go if not, and scanned a line at a time with no tokens in
+ * between. Every identifier, label and register is made a String once.
+ *
+ * The mode is VaporParser.run's: locals or registers, and whether in, out
+ * and local stack slots may be used. Problems come back as a Problem with
+ * its SourcePos, and label references are checked but not linked to
+ * their targets, which V2VM and VM2M never follow. Only ASCII input is
+ * accepted.
+ */
+class VaporReader {
+
+	// Worded as ProblemException is, the position as SourcePos prints it
+	public static class Problem extends Exception {
+		private static final long serialVersionUID = 1L;
+
+		public final SourcePos pos;
+
+		public Problem(SourcePos pos, String message) {
+			super(pos + ": " + message);
+			this.pos = pos;
+		}
+	}
+
+	private final ByteBuffer in;
+	private final int end;
+	private int p;
+
+	private int line = 1;
+	private int lineStart = 0;
+
+	private final HashMap<String, Op> ops = new HashMap<String, Op>();
+	private final boolean allowLocals;
+	private final HashSet<String> registers;
+	private final boolean allowStack;
+
+	// Identifiers, made Strings once
+	private String[] names = new String[1024];
+	private int[] hashes = new int[1024];
+	private int nameCount = 0;
+
+	private ArrayList<VDataSegment> dataSegments = new ArrayList<VDataSegment>();
+	private ArrayList<VFunction> functions = new ArrayList<VFunction>();
+
+	// Labels of functions and data segments, checked at the end
+	private ArrayList<VLabelRef<?>> globalRefs = new ArrayList<VLabelRef<?>>();
+
+	// The function being read
+	private HashMap<String, Integer> varIndex;
+	private ArrayList<String> vars;
+	private ArrayList<VCodeLabel> labels;
+	private HashSet<String> labelNames;
+	private ArrayList<VInstr> body;
+	private ArrayList<VLabelRef<?>> codeRefs;
+
+	public static VaporProgram run(InputStream in, List<Op> ops, boolean allowLocals, String[] registers, boolean allowStack) throws IOException, Problem {
+		return run(VaporBinary.map(in), ops, allowLocals, registers, allowStack);
+	}
+
+	public static VaporProgram run(ByteBuffer in, List<Op> ops, boolean allowLocals, String[] registers, boolean allowStack) throws Problem {
+		return new VaporReader(in, ops, allowLocals, registers, allowStack).program(registers);
+	}
+
+	private VaporReader(ByteBuffer in, List<Op> ops, boolean allowLocals, String[] registers, boolean allowStack) {
+		this.in = in;
+		this.p = in.position();
+		this.end = in.limit();
+
+		for (Op op : ops)
+			this.ops.put(op.name, op);
+
+		this.allowLocals = allowLocals;
+		this.registers = registers == null ? null : new HashSet<String>(Arrays.asList(registers));
+		this.allowStack = allowStack;
+	}
+
+	/* === Program === */
+
+	private VaporProgram program(String[] registerNames) throws Problem {
+		HashSet<String> globals = new HashSet<String>();
+
+		while (skip()) {
+			SourcePos pos = pos();
+			String word = identifier("Expecting \"func\", \"const\" or \"var\"");
+
+			if (word.equals("func"))
+				function(pos);
+			else if (word.equals("const") || word.equals("var"))
+				dataSegment(pos, word.equals("var"));
+			else
+				throw problem(pos, "Expecting \"func\", \"const\" or \"var\"");
+		}
+
+		for (VDataSegment ds : dataSegments)
+			if (!globals.add(ds.ident))
+				throw problem(ds.sourcePos, "Duplicate label \"" + ds.ident + "\"");
+
+		for (VFunction f : functions)
+			if (!globals.add(f.ident))
+				throw problem(f.sourcePos, "Duplicate label \"" + f.ident + "\"");
+
+		for (VLabelRef<?> ref : globalRefs)
+			if (!globals.contains(ref.ident))
+				throw problem(ref.sourcePos, "Undefined label \"" + ref.ident + "\"");
+
+		return new VaporProgram(allowLocals, registerNames, allowStack,
+				functions.toArray(new VFunction[functions.size()]),
+				dataSegments.toArray(new VDataSegment[dataSegments.size()]));
+	}
+
+	// const name, then its values on the lines below
+	private void dataSegment(SourcePos pos, boolean mutable) throws Problem {
+		skipSpaces();
+		String ident = identifier("Expecting a data segment name");
+		lineEnd();
+
+		ArrayList<VOperand.Static> values = new ArrayList<VOperand.Static>();
+
+		// Values run until the next line starting with a word
+		while (skip() && !isIdentStart(peek())) {
+			while (true) {
+				SourcePos vpos = pos();
+				VOperand value = operand();
+				if (!(value instanceof VOperand.Static))
+					throw problem(vpos, "Expecting a label or a literal");
+				values.add((VOperand.Static)value);
+
+				if (atLineEnd())
+					break;
+			}
+			lineEnd();
+		}
+
+		dataSegments.add(new VDataSegment(pos, ident, dataSegments.size(), mutable,
+				values.toArray(new VOperand.Static[values.size()])));
+	}
+
+	/* === Functions === */
+
+	private void function(SourcePos pos) throws Problem {
+		skipSpaces();
+		String ident = identifier("Expecting a function name");
+
+		varIndex = new HashMap<String, Integer>();
+		vars = new ArrayList<String>();
+		labels = new ArrayList<VCodeLabel>();
+		labelNames = new HashSet<String>();
+		body = new ArrayList<VInstr>();
+		codeRefs = new ArrayList<VLabelRef<?>>();
+
+		// Vapor-M gives the stack, Vapor the parameters
+		VFunction.Stack stack = new VFunction.Stack(0, 0, 0);
+		ArrayList<VVarRef.Local> params = new ArrayList<VVarRef.Local>();
+
+		skipSpaces();
+		if (peek() == '[') {
+			p++;
+			int inSize = stackSize("in");
+			expect(',');
+			int outSize = stackSize("out");
+			expect(',');
+			int localSize = stackSize("local");
+			expect(']');
+			stack = new VFunction.Stack(inSize, outSize, localSize);
+		} else {
+			expect('(');
+			skipSpaces();
+			while (peek() != ')') {
+				SourcePos ppos = pos();
+				VOperand param = operand();
+				if (!(param instanceof VVarRef.Local))
+					throw problem(ppos, "Expecting a parameter name");
+				params.add((VVarRef.Local)param);
+				skipSpaces();
+			}
+			p++;
+		}
+		lineEnd();
+
+		// The body runs until the next func, const or var
+		while (skip() && !atTopLevel())
+			line();
+
+		for (VLabelRef<?> ref : codeRefs)
+			if (!labelNames.contains(ref.ident))
+				throw problem(ref.sourcePos, "Undefined label \"" + ref.ident + "\"");
+
+		functions.add(new VFunction(pos, ident, functions.size(),
+				params.toArray(new VVarRef.Local[params.size()]),
+				labels.toArray(new VCodeLabel[labels.size()]),
+				body.toArray(new VInstr[body.size()]),
+				stack,
+				vars.toArray(new String[vars.size()])));
+	}
+
+	private int stackSize(String name) throws Problem {
+		skipSpaces();
+		SourcePos pos = pos();
+		if (!identifier("Expecting \"" + name + "\"").equals(name))
+			throw problem(pos, "Expecting \"" + name + "\"");
+		skipSpaces();
+		return integer();
+	}
+
+	// One label or instruction
+	private void line() throws Problem {
+		SourcePos pos = pos();
+		int start = p;
+
+		if (isIdentStart(peek())) {
+			String word = identifier(null);
+
+			if (peek() == ':') {
+				p++;
+				if (!labelNames.add(word))
+					throw problem(pos, "Duplicate label \"" + word + "\"");
+				labels.add(new VCodeLabel(pos, word, labels.size(), body.size()));
+				lineEnd();
+				return;
+			}
+
+			skipSpaces();
+			if (word.equals("if") || word.equals("if0")) {
+				VOperand value = operand();
+				keyword("goto");
+				skipSpaces();
+				SourcePos tpos = pos();
+				expect(':');
+				VLabelRef<VCodeLabel> target = new VLabelRef<VCodeLabel>(tpos, identifier("Expecting a label"));
+				codeRefs.add(target);
+				add(new VBranch(pos, word.equals("if"), value, target));
+				return;
+			}
+
+			if (word.equals("goto")) {
+				VAddr<VCodeLabel> target = address(true);
+				add(new VGoto(pos, target));
+				return;
+			}
+
+			if (word.equals("ret")) {
+				add(new VReturn(pos, atLineEnd() ? null : operand()));
+				return;
+			}
+
+			if (word.equals("call")) {
+				add(call(pos, null));
+				return;
+			}
+
+			if (peek() == '(') {
+				add(builtIn(pos, word, null));
+				return;
+			}
+
+			if (peek() == '[' && isRegion(word)) {
+				VMemRef dest = stackRef(pos, word);
+				add(new VMemWrite(pos, dest, source()));
+				return;
+			}
+
+			// Not a keyword, so the destination of an assignment
+			p = start;
+		}
+
+		if (peek() == '[') {
+			VMemRef dest = memory();
+			add(new VMemWrite(pos, dest, source()));
+			return;
+		}
+
+		SourcePos dpos = pos();
+		VOperand d = operand();
+		if (!(d instanceof VVarRef))
+			throw problem(dpos, "Expecting a variable or register");
+		VVarRef dest = (VVarRef)d;
+
+		skipSpaces();
+		expect('=');
+		skipSpaces();
+
+		SourcePos rpos = pos();
+		if (peek() == '[') {
+			add(new VMemRead(pos, dest, memory()));
+			return;
+		}
+
+		if (isIdentStart(peek())) {
+			int r = p;
+			String word = identifier(null);
+
+			if (word.equals("call")) {
+				if (!(dest instanceof VVarRef.Local))
+					throw problem(dpos, "Expecting a variable");
+				skipSpaces();
+				add(call(pos, (VVarRef.Local)dest));
+				return;
+			}
+
+			if (peek() == '(') {
+				add(builtIn(pos, word, dest));
+				return;
+			}
+
+			if (peek() == '[' && isRegion(word)) {
+				add(new VMemRead(pos, dest, stackRef(rpos, word)));
+				return;
+			}
+
+			p = r;
+		}
+
+		add(new VAssign(pos, dest, operand()));
+	}
+
+	private void add(VInstr instr) throws Problem {
+		body.add(instr);
+		lineEnd();
+	}
+
+	// = operand, after a memory reference
+	private VOperand source() throws Problem {
+		skipSpaces();
+		expect('=');
+		skipSpaces();
+		return operand();
+	}
+
+	// call addr, with (args) in Vapor
+	private VCall call(SourcePos pos, VVarRef.Local dest) throws Problem {
+		VAddr<VFunction> addr = address(false);
+
+		VOperand[] args = new VOperand[0];
+		if (peek() == '(') {
+			p++;
+			args = arguments();
+		}
+
+		return new VCall(pos, addr, args, dest);
+	}
+
+	private VBuiltIn builtIn(SourcePos pos, String name, VVarRef dest) throws Problem {
+		Op op = ops.get(name);
+		if (op == null)
+			throw problem(pos, "Unknown built-in \"" + name + "\"");
+
+		p++;
+		return new VBuiltIn(pos, op, arguments(), dest);
+	}
+
+	// Operands up to and past the closing parenthesis
+	private VOperand[] arguments() throws Problem {
+		ArrayList<VOperand> args = new ArrayList<VOperand>();
+
+		skipSpaces();
+		while (peek() != ')') {
+			args.add(operand());
+			skipSpaces();
+		}
+		p++;
+
+		return args.toArray(new VOperand[args.size()]);
+	}
+
+	/* === Operands === */
+
+	private VOperand operand() throws Problem {
+		skipSpaces();
+		SourcePos pos = pos();
+		int c = peek();
+
+		if (c == '$')
+			return register(pos);
+
+		if (c == ':') {
+			p++;
+			VLabelRef<VTarget> ref = new VLabelRef<VTarget>(pos, identifier("Expecting a label"));
+			globalRefs.add(ref);
+			return ref;
+		}
+
+		if (c == '"')
+			return new VLitStr(pos, string());
+
+		if (c == '-' || isDigit(c))
+			return new VLitInt(pos, integer());
+
+		if (isIdentStart(c))
+			return local(pos, identifier(null));
+
+		throw problem(pos, "Expecting an operand");
+	}
+
+	private VVarRef.Register register(SourcePos pos) throws Problem {
+		p++;
+		String name = identifier("Expecting a register name");
+
+		if (registers == null || !registers.contains(name))
+			throw problem(pos, "Unknown register \"$" + name + "\"");
+
+		return new VVarRef.Register(pos, name);
+	}
+
+	private VVarRef.Local local(SourcePos pos, String name) throws Problem {
+		if (!allowLocals)
+			throw problem(pos, "Local variables are not allowed");
+
+		Integer index = varIndex.get(name);
+		if (index == null) {
+			index = vars.size();
+			varIndex.put(name, index);
+			vars.add(name);
+		}
+
+		return new VVarRef.Local(pos, name, index);
+	}
+
+	// A label or a variable to jump to; code labels for goto
+	private <T extends VTarget> VAddr<T> address(boolean code) throws Problem {
+		skipSpaces();
+		SourcePos pos = pos();
+
+		if (peek() != ':') {
+			VOperand o = operand();
+			if (!(o instanceof VVarRef))
+				throw problem(pos, "Expecting a label or a variable");
+			return new VAddr.Var<T>((VVarRef)o);
+		}
+
+		p++;
+		VLabelRef<T> ref = new VLabelRef<T>(pos, identifier("Expecting a label"));
+		(code ? codeRefs : globalRefs).add(ref);
+		return new VAddr.Label<T>(ref);
+	}
+
+	// [base], [base+offset] or [base-offset]
+	private VMemRef memory() throws Problem {
+		SourcePos pos = pos();
+		expect('[');
+
+		VAddr<VDataSegment> base = address(false);
+
+		int offset = 0;
+		skipSpaces();
+		if (peek() == '+' || peek() == '-') {
+			boolean negative = peek() == '-';
+			p++;
+			skipSpaces();
+			offset = negative ? -integer() : integer();
+			skipSpaces();
+		}
+
+		expect(']');
+		return new VMemRef.Global(pos, base, offset);
+	}
+
+	// in[i], out[i] or local[i]
+	private VMemRef stackRef(SourcePos pos, String region) throws Problem {
+		if (!allowStack)
+			throw problem(pos, "Stack references are not allowed");
+
+		expect('[');
+		skipSpaces();
+		int index = integer();
+		skipSpaces();
+		expect(']');
+
+		VMemRef.Stack.Region r = region.equals("in") ? VMemRef.Stack.Region.In
+				: region.equals("out") ? VMemRef.Stack.Region.Out
+				: VMemRef.Stack.Region.Local;
+
+		return new VMemRef.Stack(pos, r, index);
+	}
+
+	private boolean isRegion(String word) {
+		return word.equals("in") || word.equals("out") || word.equals("local");
+	}
+
+	/* === Lexing === */
+
+	private int integer() throws Problem {
+		SourcePos pos = pos();
+		boolean negative = peek() == '-';
+		if (negative)
+			p++;
+
+		if (!isDigit(peek()))
+			throw problem(pos, "Expecting an integer");
+
+		long value = 0;
+		while (isDigit(peek())) {
+			value = value * 10 + (peek() - '0');
+			if (value > (negative ? 1L << 31 : Integer.MAX_VALUE))
+				throw problem(pos, "Integer out of range");
+			p++;
+		}
+
+		return (int)(negative ? -value : value);
+	}
+
+	// A string literal, unescaped
+	private String string() throws Problem {
+		SourcePos pos = pos();
+		p++;
+
+		StringBuilder sb = new StringBuilder();
+		while (true) {
+			int c = peek();
+			if (c < 0 || c == '\n' || c == '\r')
+				throw problem(pos, "Unterminated string");
+
+			p++;
+			if (c == '"')
+				return sb.toString();
+
+			if (c == '\\') {
+				c = peek();
+				p++;
+				if (c == 'n')
+					c = '\n';
+				else if (c == 't')
+					c = '\t';
+				else if (c != '\\' && c != '"')
+					throw problem(pos, "Bad escape in string");
+			}
+			sb.append((char)c);
+		}
+	}
+
+	// An identifier, made a String once however often it appears
+	private String identifier(String expecting) throws Problem {
+		if (!isIdentStart(peek()))
+			throw problem(pos(), expecting);
+
+		int start = p;
+		int hash = 0;
+		while (isIdentPart(peek())) {
+			hash = 31 * hash + in.get(p);
+			p++;
+		}
+
+		int mask = names.length - 1;
+		for (int i = slot(hash) & mask; ; i = (i + 1) & mask) {
+			String name = names[i];
+			if (name == null) {
+				byte[] bytes = new byte[p - start];
+				for (int j = 0; j < bytes.length; j++)
+					bytes[j] = in.get(start + j);
+				name = new String(bytes, StandardCharsets.ISO_8859_1);
+
+				names[i] = name;
+				hashes[i] = hash;
+				if (++nameCount * 2 > names.length)
+					rehash();
+				return name;
+			}
+
+			if (hashes[i] == hash && matches(name, start))
+				return name;
+		}
+	}
+
+	private boolean matches(String name, int start) {
+		if (name.length() != p - start)
+			return false;
+		for (int j = 0; j < name.length(); j++)
+			if (name.charAt(j) != in.get(start + j))
+				return false;
+		return true;
+	}
+
+	private void rehash() {
+		String[] oldNames = names;
+		int[] oldHashes = hashes;
+
+		names = new String[oldNames.length * 2];
+		hashes = new int[oldNames.length * 2];
+		int mask = names.length - 1;
+
+		for (int i = 0; i < oldNames.length; i++) {
+			if (oldNames[i] == null)
+				continue;
+			int j = slot(oldHashes[i]) & mask;
+			while (names[j] != null)
+				j = (j + 1) & mask;
+			names[j] = oldNames[i];
+			hashes[j] = oldHashes[i];
+		}
+	}
+
+	// Names like t.12 and null34 differ in their last few characters
+	private static int slot(int hash) {
+		return hash ^ (hash >>> 16) ^ (hash >>> 8);
+	}
+
+	private void keyword(String word) throws Problem {
+		skipSpaces();
+		SourcePos pos = pos();
+		if (!isIdentStart(peek()) || !identifier(null).equals(word))
+			throw problem(pos, "Expecting \"" + word + "\"");
+	}
+
+	private void expect(char c) throws Problem {
+		if (peek() != c)
+			throw problem(pos(), "Expecting \"" + c + "\"");
+		p++;
+	}
+
+	// Nothing but a comment may follow on the line
+	private void lineEnd() throws Problem {
+		if (!atLineEnd())
+			throw problem(pos(), "Expecting the end of the line");
+	}
+
+	private boolean atLineEnd() {
+		skipSpaces();
+		int c = peek();
+		return c < 0 || c == '\n' || c == '\r' || (c == '/' && p + 1 < end && in.get(p + 1) == '/');
+	}
+
+	// At a func, const or var that starts a line
+	private boolean atTopLevel() {
+		int start = p;
+		while (isIdentPart(peek()))
+			p++;
+
+		int n = p - start;
+		boolean top = (n == 4 && word(start, "func")) || (n == 5 && word(start, "const")) || (n == 3 && word(start, "var"));
+		top = top && peek() != ':';
+
+		p = start;
+		return top;
+	}
+
+	private boolean word(int start, String w) {
+		for (int i = 0; i < w.length(); i++)
+			if (in.get(start + i) != w.charAt(i))
+				return false;
+		return true;
+	}
+
+	// Past blank lines and comments to the next token; false at the end
+	private boolean skip() {
+		while (p < end) {
+			int c = in.get(p);
+
+			if (c == '\n') {
+				p++;
+				line++;
+				lineStart = p;
+			} else if (c == ' ' || c == '\t' || c == '\r') {
+				p++;
+			} else if (c == '/' && p + 1 < end && in.get(p + 1) == '/') {
+				while (p < end && in.get(p) != '\n')
+					p++;
+			} else {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void skipSpaces() {
+		while (p < end && (in.get(p) == ' ' || in.get(p) == '\t'))
+			p++;
+	}
+
+	private int peek() {
+		return p < end ? in.get(p) & 0xff : -1;
+	}
+
+	private SourcePos pos() {
+		return new SourcePos(line, p - lineStart + 1);
+	}
+
+	private Problem problem(SourcePos pos, String message) {
+		return new Problem(pos, message);
+	}
+
+	private static boolean isDigit(int c) {
+		return c >= '0' && c <= '9';
+	}
+
+	private static boolean isIdentStart(int c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_';
+	}
+
+	private static boolean isIdentPart(int c) {
+		return isIdentStart(c) || isDigit(c) || c == '.';
+	}
+}
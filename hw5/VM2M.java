@@ -4,6 +4,10 @@ import cs132.vapor.ast.VaporProgram;
 import cs132.vapor.ast.VBuiltIn.Op;
 import cs132.vapor.ast.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
 import java.io.InputStreamReader;
 import java.io.IOException;
 import java.io.PrintStream;
@@ -18,7 +22,44 @@ class VM2M extends VInstr.Visitor<Throwable> {
 	private int outTotal;
 	private LinkedHashMap<String, Integer> stringMap;
 
-	public static void main(String[] a) throws IOException {
+	// Where the MIPS goes
+	private Emitter out;
+
+	// Set by -binary: the input is what VaporBinary wrote, not Vapor-M text
+	private static boolean binary = false;
+
+	// Set by -fast: the input is read by VaporReader, not VaporParser
+	private static boolean fast = false;
+
+	public static void main(String[] a) throws IOException, InterruptedException {
+		boolean server = false;
+
+		for (String arg : a) {
+			// -server answers framed requests, see CompileServer
+			if (arg.equals("-server"))
+				server = true;
+
+			if (arg.equals("-binary"))
+				binary = true;
+
+			if (arg.equals("-fast"))
+				fast = true;
+		}
+
+		if (server) {
+			CompileServer.serve((name, input, out) -> translate(new ByteArrayInputStream(input), out),
+					System.in, System.out);
+			return;
+		}
+
+		// Both are mapped, so they read from stdin's file itself
+		int status = translate(binary || fast ? new FileInputStream(FileDescriptor.in) : System.in, System.out);
+		if (status != 0)
+			System.exit(status);
+	}
+
+	// Print the MIPS for the Vapor-M program read from in, or why there is none
+	static int translate(InputStream in, PrintStream out) throws IOException {
 		Op[] ops = {
 	    Op.Add, Op.Sub, Op.MulS, Op.Eq, Op.Lt, Op.LtS,
 	    Op.PrintIntS, Op.HeapAllocZ, Op.Error,
@@ -35,21 +76,34 @@ class VM2M extends VInstr.Visitor<Throwable> {
 
 	  VaporProgram program = null;
 	  try {
-	  	program = VaporParser.run(new InputStreamReader(System.in), 1, 1,
+	  	if (binary)
+	  		program = VaporBinary.read(in);
+	  	else if (fast)
+	  		program = VaporReader.run(in, java.util.Arrays.asList(ops), allowLocals, registers, allowStack);
+	  	else
+	  		program = VaporParser.run(new InputStreamReader(in), 1, 1,
 	  														java.util.Arrays.asList(ops),
 	  														allowLocals, registers, allowStack);
 	  }
-	  catch (ProblemException e) {
-	  	System.out.println(e.getMessage());
-	  	System.exit(1);
+	  catch (ProblemException | VaporBinary.FormatException | VaporReader.Problem e) {
+	  	out.println(e.getMessage());
+	  	return 1;
 	  }
 
-	  VM2M v = new VM2M(program);
+	  return translate(program, out);
+	}
+
+	// Print the MIPS for a Vapor-M program already in memory
+	static int translate(VaporProgram program, PrintStream out) {
+	  VM2M v = new VM2M(program, out);
 	  v.translate();
+	  v.out.flush();
+	  return 0;
 	}
 
-	public VM2M(VaporProgram prog) {
+	public VM2M(VaporProgram prog, PrintStream o) {
 		program = prog;
+		out = new Emitter(o);
 		indent = 0;
 		stringMap = new LinkedHashMap<String, Integer>();
 	}
@@ -150,11 +204,24 @@ class VM2M extends VInstr.Visitor<Throwable> {
 	}
 
 	private void print(String str, Object... args) {
-		String spaces = "";
-		for (int i = 0; i < indent; i++) {
-			spaces += "  ";
-		}
-		System.out.println(spaces + String.format(str, args));
+		out.print(indent, str, args);
+	}
+
+	// The lines printed most, without a format
+
+	// op a b
+	private void instr(String op, String a, String b) {
+		out.indent(indent).append(op).append(' ').append(a).append(' ').append(b).newline();
+	}
+
+	// op a b c
+	private void instr(String op, String a, String b, String c) {
+		out.indent(indent).append(op).append(' ').append(a).append(' ').append(b).append(' ').append(c).newline();
+	}
+
+	// op reg offset(base)
+	private void memory(String op, String reg, int offset, String base) {
+		out.indent(indent).append(op).append(' ').append(reg).append(' ').offset(offset, base).newline();
 	}
 
 	// Assume that Arg has been assigned before this is called
@@ -217,14 +284,14 @@ class VM2M extends VInstr.Visitor<Throwable> {
 			instr = "move";
 		}
 
-		print("%s %s %s", instr, dest, src);
+		instr(instr, dest, src);
 	}
 
 	@Override
 	public void visit(VBranch b) {
 		String branchStr = b.positive ? "bnez" : "beqz";
 
-		print("%s %s %s", branchStr, b.value.toString(), b.target.ident);
+		instr(branchStr, b.value.toString(), b.target.ident);
 	}
 
 	@Override
@@ -265,7 +332,7 @@ class VM2M extends VInstr.Visitor<Throwable> {
 
 			}
 
-			print("%s %s %s %s", instr, b.dest.toString(), arg1Str, arg2Str);
+			instr(instr, b.dest.toString(), arg1Str, arg2Str);
 
 		} else if (b.op == Op.Sub) {
 
@@ -276,7 +343,7 @@ class VM2M extends VInstr.Visitor<Throwable> {
 				arg1Str = "$t9";
 			}
 
-			print("subu %s %s %s", b.dest.toString(), arg1Str, arg2.toString());
+			instr("subu", b.dest.toString(), arg1Str, arg2.toString());
 
 		} else if (b.op == Op.MulS) {
 
@@ -287,7 +354,7 @@ class VM2M extends VInstr.Visitor<Throwable> {
 				arg1Str = "$t9";
 			}
 
-			print("mul %s %s %s", b.dest.toString(), arg1Str, arg2.toString());
+			instr("mul", b.dest.toString(), arg1Str, arg2.toString());
 
 		} else if (b.op == Op.Eq) {
 
@@ -298,7 +365,7 @@ class VM2M extends VInstr.Visitor<Throwable> {
 				arg1Str = "$t9";
 			}
 
-			print("seq %s %s %s", b.dest.toString(), arg1Str, arg2.toString());
+			instr("seq", b.dest.toString(), arg1Str, arg2.toString());
 
 		} else if (b.op == Op.Lt) {
 
@@ -330,7 +397,7 @@ class VM2M extends VInstr.Visitor<Throwable> {
 				
 			}
 
-			print("%s %s %s %s", instr, b.dest.toString(), arg1Str, arg2Str);
+			instr(instr, b.dest.toString(), arg1Str, arg2Str);
 
 		} else if (b.op == Op.LtS) {
 
@@ -362,7 +429,7 @@ class VM2M extends VInstr.Visitor<Throwable> {
 				
 			}
 
-			print("%s %s %s %s", instr, b.dest.toString(), arg1Str, arg2Str);
+			instr(instr, b.dest.toString(), arg1Str, arg2Str);
 
 		} else if (b.op == Op.PrintIntS) {
 
@@ -449,7 +516,7 @@ class VM2M extends VInstr.Visitor<Throwable> {
 			base = global.base.toString();
 		}
 
-		print("lw %s %d(%s)", r.dest.toString(), offset, base);
+		memory("lw", r.dest.toString(), offset, base);
 	}
 
 	@Override
@@ -500,7 +567,7 @@ class VM2M extends VInstr.Visitor<Throwable> {
 			src = w.source.toString();
 		}
 
-		print("sw %s %d(%s)", src, offset, base);
+		memory("sw", src, offset, base);
 	}
 
 	@Override
@@ -0,0 +1,547 @@
+import cs132.util.ProblemException;
+import cs132.util.SourcePos;
+import cs132.vapor.parser.VaporParser;
+import cs132.vapor.ast.*;
+import cs132.vapor.ast.VBuiltIn.Op;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/*
+ * A VaporProgram in binary, so a stage that reads the same program again
+ * does not go through VaporParser:
+ *
+ *   java VaporBinary [-vaporm] < Prog.vapor > Prog.vb
+ *   java V2VM -binary < Prog.vb > Prog.vmb
+ *   java VM2M -binary < Prog.vmb > Prog.s
+ *
+ * Magic and version, the mode the program was parsed in, a table of
+ * every identifier, label and string, then the data segments and
+ * functions, which refer to the table by index. An instruction is a tag
+ * byte, its source position and its operands. Numbers are zigzag
+ * varints, and a line is written as the change from the line before.
+ * Positions are kept since V2VM and VM2M place labels by line.
+ */
+class VaporBinary {
+
+	static final int MAGIC = 0x56415042; // VAPB
+	static final int VERSION = 2;
+
+	// The built-ins V2VM and VM2M accept, by their index here
+	static final Op[] OPS = {
+		Op.Add, Op.Sub, Op.MulS, Op.Eq, Op.Lt, Op.LtS,
+		Op.PrintIntS, Op.HeapAllocZ, Op.Error,
+	};
+
+	// The registers of Vapor-M
+	static final String[] REGISTERS = {
+		"v0", "v1",
+		"a0", "a1", "a2", "a3",
+		"t0", "t1", "t2", "t3", "t4", "t5", "t6", "t7",
+		"s0", "s1", "s2", "s3", "s4", "s5", "s6", "s7",
+		"t8",
+	};
+
+	// Instructions
+	private static final int ASSIGN = 0;
+	private static final int CALL = 1;
+	private static final int BUILTIN = 2;
+	private static final int MEM_READ = 3;
+	private static final int MEM_WRITE = 4;
+	private static final int BRANCH = 5;
+	private static final int GOTO = 6;
+	private static final int RETURN = 7;
+
+	// Operands, and the two kinds of address
+	private static final int NONE = 0;
+	private static final int LOCAL = 1;
+	private static final int REGISTER = 2;
+	private static final int INT = 3;
+	private static final int STRING = 4;
+	private static final int LABEL = 5;
+
+	// Memory references
+	private static final int GLOBAL = 0;
+	private static final int STACK = 1;
+
+	public static class FormatException extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		public FormatException(String message) {
+			super(message);
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		boolean vaporM = args.length > 0 && args[0].equals("-vaporm");
+
+		VaporProgram program;
+		try {
+			program = VaporParser.run(new InputStreamReader(System.in), 1, 1,
+					Arrays.asList(OPS), !vaporM, vaporM ? REGISTERS : null, vaporM);
+		}
+		catch (ProblemException e) {
+			System.out.println(e.getMessage());
+			System.exit(1);
+			return;
+		}
+
+		BufferedOutputStream out = new BufferedOutputStream(System.out, 1 << 16);
+		write(program, out);
+		out.flush();
+	}
+
+	/* === Writer === */
+
+	private final DataOutputStream data;
+	private final HashMap<String, Integer> ids = new HashMap<String, Integer>();
+	private final ArrayList<String> strings = new ArrayList<String>();
+
+	// The line of the last position, written or read
+	private int line = 0;
+
+	private VaporBinary(DataOutputStream data) {
+		this.data = data;
+		this.buf = null;
+	}
+
+	public static void write(VaporProgram p, OutputStream out) throws IOException {
+		// The table goes first but is only known at the end
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		VaporBinary w = new VaporBinary(new DataOutputStream(body));
+		w.program(p);
+
+		DataOutputStream head = new DataOutputStream(out);
+		head.writeInt(MAGIC);
+		head.writeInt(VERSION);
+
+		number(head, w.strings.size());
+		for (String s : w.strings) {
+			byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+			number(head, bytes.length);
+			head.write(bytes);
+		}
+
+		body.writeTo(head);
+		head.flush();
+	}
+
+	private void program(VaporProgram p) throws IOException {
+		data.writeBoolean(p.allowLocals);
+		data.writeBoolean(p.allowStack);
+		strings(p.registers);
+
+		number(data, p.dataSegments.length);
+		for (VDataSegment ds : p.dataSegments) {
+			pos(ds.sourcePos);
+			string(ds.ident);
+			number(data, ds.index);
+			data.writeBoolean(ds.mutable);
+
+			number(data, ds.values.length);
+			for (VOperand.Static v : ds.values)
+				operand(v);
+		}
+
+		number(data, p.functions.length);
+		for (VFunction f : p.functions) {
+			pos(f.sourcePos);
+			string(f.ident);
+			number(data, f.index);
+			number(data, f.stack.in);
+			number(data, f.stack.out);
+			number(data, f.stack.local);
+
+			number(data, f.params.length);
+			for (VVarRef.Local param : f.params) {
+				pos(param.sourcePos);
+				string(param.ident);
+				number(data, param.index);
+			}
+
+			strings(f.vars);
+
+			number(data, f.labels.length);
+			for (VCodeLabel l : f.labels) {
+				pos(l.sourcePos);
+				string(l.ident);
+				number(data, l.instrIndex);
+			}
+
+			number(data, f.body.length);
+			for (VInstr instr : f.body)
+				instr(instr);
+		}
+	}
+
+	private void instr(VInstr instr) throws IOException {
+		if (instr instanceof VAssign) {
+			VAssign a = (VAssign)instr;
+			head(ASSIGN, a.sourcePos);
+			operand(a.dest);
+			operand(a.source);
+		} else if (instr instanceof VCall) {
+			VCall c = (VCall)instr;
+			head(CALL, c.sourcePos);
+			address(c.addr);
+			operands(c.args);
+			operand(c.dest);
+		} else if (instr instanceof VBuiltIn) {
+			VBuiltIn b = (VBuiltIn)instr;
+			head(BUILTIN, b.sourcePos);
+			data.writeByte(op(b.op));
+			operands(b.args);
+			operand(b.dest);
+		} else if (instr instanceof VMemRead) {
+			VMemRead r = (VMemRead)instr;
+			head(MEM_READ, r.sourcePos);
+			operand(r.dest);
+			memory(r.source);
+		} else if (instr instanceof VMemWrite) {
+			VMemWrite w = (VMemWrite)instr;
+			head(MEM_WRITE, w.sourcePos);
+			memory(w.dest);
+			operand(w.source);
+		} else if (instr instanceof VBranch) {
+			VBranch b = (VBranch)instr;
+			head(BRANCH, b.sourcePos);
+			data.writeBoolean(b.positive);
+			operand(b.value);
+			string(b.target.ident);
+		} else if (instr instanceof VGoto) {
+			VGoto g = (VGoto)instr;
+			head(GOTO, g.sourcePos);
+			address(g.target);
+		} else {
+			VReturn r = (VReturn)instr;
+			head(RETURN, r.sourcePos);
+			operand(r.value);
+		}
+	}
+
+	private void head(int tag, SourcePos pos) throws IOException {
+		data.writeByte(tag);
+		pos(pos);
+	}
+
+	private void operands(VOperand[] operands) throws IOException {
+		number(data, operands.length);
+		for (VOperand o : operands)
+			operand(o);
+	}
+
+	private void operand(VOperand o) throws IOException {
+		if (o == null) {
+			data.writeByte(NONE);
+		} else if (o instanceof VVarRef.Local) {
+			data.writeByte(LOCAL);
+			string(((VVarRef.Local)o).ident);
+			number(data, ((VVarRef.Local)o).index);
+		} else if (o instanceof VVarRef.Register) {
+			data.writeByte(REGISTER);
+			string(((VVarRef.Register)o).ident);
+		} else if (o instanceof VLitInt) {
+			data.writeByte(INT);
+			number(data, ((VLitInt)o).value);
+		} else if (o instanceof VLitStr) {
+			data.writeByte(STRING);
+			string(((VLitStr)o).value);
+		} else {
+			data.writeByte(LABEL);
+			string(((VLabelRef<?>)o).ident);
+		}
+	}
+
+	private void address(VAddr<?> a) throws IOException {
+		if (a instanceof VAddr.Label) {
+			data.writeByte(LABEL);
+			string(((VAddr.Label<?>)a).label.ident);
+		} else {
+			operand(((VAddr.Var<?>)a).var);
+		}
+	}
+
+	private void memory(VMemRef m) throws IOException {
+		if (m instanceof VMemRef.Global) {
+			data.writeByte(GLOBAL);
+			address(((VMemRef.Global)m).base);
+			number(data, ((VMemRef.Global)m).byteOffset);
+		} else {
+			data.writeByte(STACK);
+			data.writeByte(((VMemRef.Stack)m).region.ordinal());
+			number(data, ((VMemRef.Stack)m).index);
+		}
+	}
+
+	private int op(Op op) throws IOException {
+		for (int i = 0; i < OPS.length; i++)
+			if (OPS[i] == op)
+				return i;
+		throw new FormatException("No binary form for built-in " + op.name);
+	}
+
+	// Lines as the change from the last position written
+	private void pos(SourcePos pos) throws IOException {
+		number(data, pos.line - line);
+		number(data, pos.column);
+		line = pos.line;
+	}
+
+	// Zigzag, then seven bits a byte, low bits first
+	private static void number(DataOutputStream out, int n) throws IOException {
+		int z = (n << 1) ^ (n >> 31);
+		while ((z & ~0x7f) != 0) {
+			out.writeByte((z & 0x7f) | 0x80);
+			z >>>= 7;
+		}
+		out.writeByte(z);
+	}
+
+	private void strings(String[] s) throws IOException {
+		if (s == null) {
+			number(data, -1);
+			return;
+		}
+
+		number(data, s.length);
+		for (String each : s)
+			string(each);
+	}
+
+	// Each distinct string is written once, in the table
+	private void string(String s) throws IOException {
+		Integer id = ids.get(s);
+		if (id == null) {
+			id = strings.size();
+			ids.put(s, id);
+			strings.add(s);
+		}
+		number(data, id);
+	}
+
+	/* === Reader === */
+
+	private final ByteBuffer buf;
+	private String[] table;
+
+	private VaporBinary(ByteBuffer buf) {
+		this.data = null;
+		this.buf = buf;
+	}
+
+	// The program in in, mapped rather than read if in is a file
+	public static VaporProgram read(InputStream in) throws IOException {
+		return read(map(in));
+	}
+
+	public static VaporProgram read(ByteBuffer buf) throws FormatException {
+		try {
+			if (buf.remaining() < 8 || buf.getInt() != MAGIC)
+				throw new FormatException("Not a binary Vapor program");
+
+			int version = buf.getInt();
+			if (version != VERSION)
+				throw new FormatException("Binary Vapor version " + version + ", expected " + VERSION);
+
+			return new VaporBinary(buf).program();
+		}
+		catch (BufferUnderflowException | IndexOutOfBoundsException | ClassCastException e) {
+			throw new FormatException("Corrupt binary Vapor program");
+		}
+	}
+
+	static ByteBuffer map(InputStream in) throws IOException {
+		if (in instanceof FileInputStream) {
+			FileChannel channel = ((FileInputStream)in).getChannel();
+			try {
+				long size = channel.size() - channel.position();
+				if (size > 0)
+					return channel.map(FileChannel.MapMode.READ_ONLY, channel.position(), size);
+			}
+			catch (IOException e) {
+				// Not a file after all, a pipe say
+			}
+		}
+
+		byte[] bytes = new byte[Math.max(in.available(), 1 << 16)];
+		int n = 0;
+		int k;
+		while ((k = in.read(bytes, n, bytes.length - n)) > 0) {
+			n += k;
+			if (n == bytes.length)
+				bytes = Arrays.copyOf(bytes, n * 2);
+		}
+
+		return ByteBuffer.wrap(bytes, 0, n);
+	}
+
+	private VaporProgram program() {
+		table = new String[number()];
+		for (int i = 0; i < table.length; i++) {
+			byte[] bytes = new byte[number()];
+			buf.get(bytes);
+			table[i] = new String(bytes, StandardCharsets.UTF_8);
+		}
+
+		boolean allowLocals = buf.get() != 0;
+		boolean allowStack = buf.get() != 0;
+		String[] registers = strings();
+
+		VDataSegment[] dataSegments = new VDataSegment[number()];
+		for (int i = 0; i < dataSegments.length; i++) {
+			SourcePos pos = pos();
+			String ident = string();
+			int index = number();
+			boolean mutable = buf.get() != 0;
+
+			VOperand.Static[] values = new VOperand.Static[number()];
+			for (int j = 0; j < values.length; j++)
+				values[j] = (VOperand.Static)operand(pos);
+
+			dataSegments[i] = new VDataSegment(pos, ident, index, mutable, values);
+		}
+
+		VFunction[] functions = new VFunction[number()];
+		for (int i = 0; i < functions.length; i++) {
+			SourcePos pos = pos();
+			String ident = string();
+			int index = number();
+			VFunction.Stack stack = new VFunction.Stack(number(), number(), number());
+
+			VVarRef.Local[] params = new VVarRef.Local[number()];
+			for (int j = 0; j < params.length; j++)
+				params[j] = new VVarRef.Local(pos(), string(), number());
+
+			String[] vars = strings();
+
+			VCodeLabel[] labels = new VCodeLabel[number()];
+			for (int j = 0; j < labels.length; j++)
+				labels[j] = new VCodeLabel(pos(), string(), j, number());
+
+			VInstr[] body = new VInstr[number()];
+			for (int j = 0; j < body.length; j++)
+				body[j] = instr();
+
+			functions[i] = new VFunction(pos, ident, index, params, labels, body, stack, vars);
+		}
+
+		return new VaporProgram(allowLocals, registers, allowStack, functions, dataSegments);
+	}
+
+	private VInstr instr() {
+		int tag = buf.get();
+		SourcePos pos = pos();
+
+		switch (tag) {
+			case ASSIGN:
+				return new VAssign(pos, (VVarRef)operand(pos), operand(pos));
+
+			case CALL:
+				return new VCall(pos, address(pos), operands(pos), (VVarRef.Local)operand(pos));
+
+			case BUILTIN:
+				return new VBuiltIn(pos, OPS[buf.get()], operands(pos), (VVarRef)operand(pos));
+
+			case MEM_READ:
+				return new VMemRead(pos, (VVarRef)operand(pos), memory(pos));
+
+			case MEM_WRITE:
+				return new VMemWrite(pos, memory(pos), operand(pos));
+
+			case BRANCH:
+				return new VBranch(pos, buf.get() != 0, operand(pos), new VLabelRef<VCodeLabel>(pos, string()));
+
+			case GOTO:
+				return new VGoto(pos, address(pos));
+
+			case RETURN:
+				return new VReturn(pos, operand(pos));
+
+			default:
+				throw new IndexOutOfBoundsException();
+		}
+	}
+
+	private VOperand[] operands(SourcePos pos) {
+		VOperand[] operands = new VOperand[number()];
+		for (int i = 0; i < operands.length; i++)
+			operands[i] = operand(pos);
+		return operands;
+	}
+
+	// Operands take the position of what they are in
+	private VOperand operand(SourcePos pos) {
+		switch (buf.get()) {
+			case NONE:
+				return null;
+
+			case LOCAL:
+				return new VVarRef.Local(pos, string(), number());
+
+			case REGISTER:
+				return new VVarRef.Register(pos, string());
+
+			case INT:
+				return new VLitInt(pos, number());
+
+			case STRING:
+				return new VLitStr(pos, string());
+
+			case LABEL:
+				return new VLabelRef<VTarget>(pos, string());
+
+			default:
+				throw new IndexOutOfBoundsException();
+		}
+	}
+
+	private <T extends VTarget> VAddr<T> address(SourcePos pos) {
+		if (buf.get(buf.position()) != LABEL)
+			return new VAddr.Var<T>((VVarRef)operand(pos));
+
+		buf.get();
+		return new VAddr.Label<T>(new VLabelRef<T>(pos, string()));
+	}
+
+	private VMemRef memory(SourcePos pos) {
+		if (buf.get() == GLOBAL)
+			return new VMemRef.Global(pos, this.<VDataSegment>address(pos), number());
+
+		VMemRef.Stack.Region region = VMemRef.Stack.Region.values()[buf.get()];
+		return new VMemRef.Stack(pos, region, number());
+	}
+
+	private SourcePos pos() {
+		line += number();
+		return new SourcePos(line, number());
+	}
+
+	private int number() {
+		int z = 0;
+		for (int shift = 0; ; shift += 7) {
+			int b = buf.get();
+			z |= (b & 0x7f) << shift;
+			if (b >= 0)
+				return (z >>> 1) ^ -(z & 1);
+		}
+	}
+
+	private String string() {
+		return table[number()];
+	}
+
+	private String[] strings() {
+		int n = number();
+		if (n < 0)
+			return null;
+
+		String[] s = new String[n];
+		for (int i = 0; i < n; i++)
+			s[i] = string();
+		return s;
+	}
+}
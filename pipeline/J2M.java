@@ -0,0 +1,114 @@
+import cs132.vapor.ast.VaporProgram;
+import xxx.*;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/*
+ * MiniJava to MIPS in one JVM: J2V, V2VM and VM2M run one after the
+ * other, each handing its program to the next in memory instead of
+ * through a pipe to a new process. Compile hw3, hw4 and hw5 each on its
+ * own, then:
+ *
+ *   javac -cp hw3:hw4:hw5 -d pipeline pipeline/J2M.java
+ *   java -cp hw3:hw4:hw5:pipeline J2M [-fast] [-parallel] [-vapor] [-vaporm] < Prog.java > Prog.s
+ *
+ * (with the JTB and vapor classes on both class paths). -vapor and
+ * -vaporm copy the Vapor and Vapor-M to stderr for debugging, and
+ * -server answers framed requests, see CompileServer.
+ *
+ * J2V's translator prints Vapor, which VaporReader reads once, from
+ * memory, into a VaporProgram. VaporMBuilder, V2VM's translation, turns
+ * that into the Vapor-M VaporProgram VM2M compiles, so the Vapor-M is
+ * never printed unless -vaporm asks for it. What goes is the process
+ * start-up, the pipes, one of the two parses and the cold JIT of every
+ * stage.
+ *
+ * The Vapor stays text because the translator composes it as text: an
+ * expression is a string such as LtS(t.1 t.2) that goes into the next
+ * line, so anything building nodes from it would be a parser too. Built
+ * into hw3 instead, it would tie J2V, which runs without the vapor
+ * classes, to them. Reading it costs about a quarter of J2V's own time,
+ * and VaporReader reads it where J2V left it, without a copy.
+ */
+public class J2M {
+
+	private static boolean dumpVapor = false;
+	private static boolean dumpVaporM = false;
+
+	// The server's classes from the last compile of each file
+	private static Map<String, ClassCache> caches = CompileServer.perFile();
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		boolean server = false;
+
+		for (String arg : args) {
+			if (arg.equals("-parallel"))
+				J2V.parallel = true;
+
+			if (arg.equals("-fast"))
+				J2V.fast = true;
+
+			if (arg.equals("-vapor"))
+				dumpVapor = true;
+
+			if (arg.equals("-vaporm"))
+				dumpVaporM = true;
+
+			if (arg.equals("-server"))
+				server = true;
+		}
+
+		if (server) {
+			// MiniJavaParser may be static, see CompileServer
+			J2V.fast = true;
+			CompileServer.serve((name, input, out) ->
+					compile(new ByteArrayInputStream(input), out, caches.computeIfAbsent(name, k -> new ClassCache())),
+					System.in, System.out);
+			return;
+		}
+
+		int status = compile(System.in, System.out, null);
+		if (status != 0)
+			System.exit(status);
+	}
+
+	// Print the MIPS for the MiniJava program read from in; a stage that
+	// fails prints what it would have printed on its own, and stops there
+	static int compile(InputStream in, PrintStream out, ClassCache cache) throws IOException {
+		Buffer vapor = new Buffer();
+		int status = J2V.translate(in, new PrintStream(vapor), cache);
+
+		if (dumpVapor)
+			vapor.writeTo(System.err);
+
+		if (status != 0) {
+			vapor.writeTo(out);
+			return status;
+		}
+
+		VaporProgram program;
+		try {
+			program = VaporReader.run(vapor.bytes(), Arrays.asList(VaporBinary.OPS), true, null, false);
+		}
+		catch (VaporReader.Problem e) {
+			out.println(e.getMessage());
+			return 1;
+		}
+
+		VaporProgram vaporM = VaporMBuilder.build(program);
+
+		if (dumpVaporM)
+			VaporPrinter.print(vaporM, System.err);
+
+		return VM2M.translate(vaporM, out);
+	}
+
+	// What J2V printed, readable in place
+	private static class Buffer extends ByteArrayOutputStream {
+		ByteBuffer bytes() {
+			return ByteBuffer.wrap(buf, 0, count);
+		}
+	}
+}